@@ -0,0 +1,105 @@
+/* *****************************************************************************
+ * Copyright (c) 2009 The Bioclipse Project and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * <http://www.eclipse.org/legal/epl-v10.html>
+ *
+ * Contact: http://www.bioclipse.net/
+ ******************************************************************************/
+package net.bioclipse.align.kalign.ws.tests;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.util.List;
+
+import net.bioclipse.align.kalign.ws.util.ClustalWParser;
+import net.bioclipse.core.domain.IDNA;
+import net.bioclipse.core.domain.IProtein;
+import net.bioclipse.core.domain.ISequence;
+
+import org.biojava.bio.seq.DNATools;
+import org.biojava.bio.seq.ProteinTools;
+import org.junit.Test;
+
+public class ClustalWParserTest {
+
+    @Test
+    public void testBlocksAreJoined() throws IOException {
+        String alignment
+            = "Kalign (2.0) alignment in ClustalW format\n"
+            + "\n\n"
+            + "seq1      MKV-LA  5\n"
+            + "seq2      MKVQLA  6\n"
+            + "          *** **\n"
+            + "\n"
+            + "seq1      GIV  8\n"
+            + "seq2      G-V  8\n"
+            + "          * *\n";
+        List<ISequence> sequences = ClustalWParser.parse(
+            alignment.getBytes(), ProteinTools.getAlphabet() );
+
+        assertEquals( 2, sequences.size() );
+        assertTrue( sequences.get(0) instanceof IProtein );
+        assertEquals( "seq1", sequences.get(0).getName() );
+        assertEquals( "MKV-LAGIV", sequences.get(0).getPlainSequence() );
+        assertEquals( "seq2", sequences.get(1).getName() );
+        assertEquals( "MKVQLAG-V", sequences.get(1).getPlainSequence() );
+    }
+
+    @Test
+    public void testWindowsLineEndings() throws IOException {
+        String alignment
+            = "CLUSTAL W (1.83) multiple sequence alignment\r\n"
+            + "\r\n"
+            + "a    acgt\r\n"
+            + "b    ac-t\r\n"
+            + "\r\n"
+            + "a    ta\r\n"
+            + "b    tt\r\n";
+        List<ISequence> sequences = ClustalWParser.parse(
+            alignment.getBytes(), DNATools.getDNA() );
+
+        assertTrue( sequences.get(1) instanceof IDNA );
+        assertEquals( "acgtta",
+                      sequences.get(0).getPlainSequence().toLowerCase() );
+        assertEquals( "ac-ttt",
+                      sequences.get(1).getPlainSequence().toLowerCase() );
+    }
+
+    @Test
+    public void testManyBlocks() throws IOException {
+        StringBuilder alignment = new StringBuilder("CLUSTAL\n\n");
+        for ( int block = 0; block < 100; ++block ) {
+            for ( int seq = 0; seq < 50; ++seq )
+                alignment.append("s").append(seq)
+                         .append("  MKVLAAGIVG\n");
+            alignment.append("\n");
+        }
+        List<ISequence> sequences = ClustalWParser.parse(
+            alignment.toString().getBytes(), ProteinTools.getAlphabet() );
+
+        assertEquals( 50, sequences.size() );
+        assertEquals( "s49", sequences.get(49).getName() );
+        assertEquals( 1000, sequences.get(49).getPlainSequence().length() );
+    }
+
+    @Test(expected = IOException.class)
+    public void testUnexpectedSequence() throws IOException {
+        String alignment = "CLUSTAL\n\n"
+                         + "a    MKV\nb    MKV\n\n"
+                         + "a    LAG\nc    LAG\n";
+        ClustalWParser.parse( alignment.getBytes(),
+                              ProteinTools.getAlphabet() );
+    }
+
+    @Test(expected = IOException.class)
+    public void testMissingSequence() throws IOException {
+        String alignment = "CLUSTAL\n\n"
+                         + "a    MKV\nb    MKV\n\n"
+                         + "a    LAG\n\n";
+        ClustalWParser.parse( alignment.getBytes(),
+                              ProteinTools.getAlphabet() );
+    }
+}
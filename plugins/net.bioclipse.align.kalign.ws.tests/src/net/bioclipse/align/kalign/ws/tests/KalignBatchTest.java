@@ -0,0 +1,195 @@
+/* *****************************************************************************
+ * Copyright (c) 2009 The Bioclipse Project and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * <http://www.eclipse.org/legal/epl-v10.html>
+ *
+ * Contact: http://www.bioclipse.net/
+ ******************************************************************************/
+package net.bioclipse.align.kalign.ws.tests;
+
+import static org.junit.Assert.*;
+
+import java.rmi.RemoteException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.bioclipse.align.kalign.ws.business.KalignBatch;
+import net.bioclipse.align.kalign.ws.business.KalignJobScheduler;
+import net.bioclipse.align.kalign.ws.business.KalignManager;
+import net.bioclipse.biojava.business.IBiojavaManager;
+import net.bioclipse.core.business.BioclipseException;
+import net.bioclipse.core.domain.IDNA;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import uk.ac.ebi.jdispatcher.soap.InputParameters;
+import uk.ac.ebi.jdispatcher.soap.JDispatcherService_PortType;
+import uk.ac.ebi.jdispatcher.soap.WsParameterDetails;
+import uk.ac.ebi.jdispatcher.soap.WsRawOutputParameter;
+import uk.ac.ebi.jdispatcher.soap.WsResultType;
+
+/**
+ * Runs batches of alignments through a {@link KalignManager} on a local
+ * stub of the JDispatcher service, so no network is needed.
+ */
+public class KalignBatchTest {
+
+    private final IBiojavaManager biojava
+        = net.bioclipse.biojava.business.Activator.getDefault()
+                                                  .getJavaBiojavaManager();
+
+    private StubService service;
+    private KalignManager kalign;
+
+    @Before
+    public void setUp() {
+        service = new StubService();
+        kalign = new KalignManager(service);
+    }
+
+    @Test
+    public void testAlignmentsComeBackInSubmissionOrder() throws Exception {
+        List<List<IDNA>> groups = new ArrayList<List<IDNA>>();
+        groups.add( group("slow", "acgt") );
+        groups.add( group("fast1", "ggcc") );
+        groups.add( group("fast2", "ttaa") );
+
+        KalignBatch<List<IDNA>> batch = kalign.alignDNABatch(groups);
+        assertEquals( 3, batch.size() );
+
+        KalignBatch.Result<List<IDNA>> first = batch.next();
+        assertTrue( first.getIndex() != 0 );
+
+        List<List<IDNA>> aligned = batch.getAlignments();
+        assertEquals( 3, aligned.size() );
+        assertEquals( "slow", aligned.get(0).get(0).getName() );
+        assertEquals( "fast1", aligned.get(1).get(0).getName() );
+        assertEquals( "fast2", aligned.get(2).get(0).getName() );
+        assertEquals( "ggcc", aligned.get(1).get(0).getPlainSequence() );
+    }
+
+    @Test
+    public void testFailedAlignmentDoesNotFailTheRest() throws Exception {
+        List<List<IDNA>> groups = new ArrayList<List<IDNA>>();
+        groups.add( group("ok1", "acgt") );
+        groups.add( group("fail", "acgt") );
+        groups.add( group("ok2", "ggcc") );
+
+        KalignBatch<List<IDNA>> batch = kalign.alignDNABatch(groups);
+        boolean[] successful = new boolean[3];
+        while ( batch.hasNext() ) {
+            KalignBatch.Result<List<IDNA>> result = batch.next();
+            successful[result.getIndex()] = result.isSuccessful();
+        }
+        assertTrue( successful[0] );
+        assertFalse( successful[1] );
+        assertTrue( successful[2] );
+
+        try {
+            batch.getAlignments();
+            fail( "The failed alignment should be reported" );
+        } catch (BioclipseException e) {
+            assertTrue( e.getMessage().contains("ERROR") );
+        }
+    }
+
+    @Test
+    public void testFailedSubmitCancelsQueuedAlignments() throws Exception {
+        // Enough never ending jobs to take every slot of the scheduler
+        List<List<IDNA>> groups = new ArrayList<List<IDNA>>();
+        for ( int i = 0; i < KalignJobScheduler.DEFAULT_MAX_JOBS; ++i )
+            groups.add( group("stuck" + i, "acgt") );
+        groups.add( new ArrayList<IDNA>() );
+
+        try {
+            kalign.alignDNABatch(groups);
+            fail( "An empty group should not be submitted" );
+        } catch (BioclipseException e) {
+            // Expected
+        }
+
+        // The slots are only free again if the stuck jobs were cancelled
+        List<IDNA> aligned = kalign.alignDNAAsync( group("after", "acgt") )
+                                   .get(10, TimeUnit.SECONDS);
+        assertEquals( "after", aligned.get(0).getName() );
+    }
+
+    private List<IDNA> group(String name, String residues) {
+        List<IDNA> group = new ArrayList<IDNA>();
+        group.add( biojava.DNAfromPlainSequence(residues, name) );
+        group.add( biojava.DNAfromPlainSequence(residues, name + "b") );
+        return group;
+    }
+
+    /**
+     * A JDispatcher service that returns its input as a ClustalW
+     * alignment. The name of the first sequence of a job decides how it
+     * runs: "slow" jobs keep running for one status request, "fail" jobs
+     * end with an error, and "stuck" jobs never end.
+     */
+    private static class StubService implements JDispatcherService_PortType {
+
+        final AtomicInteger submitted = new AtomicInteger();
+        final Map<String, String> inputs
+            = new ConcurrentHashMap<String, String>();
+        final Map<String, AtomicInteger> polls
+            = new ConcurrentHashMap<String, AtomicInteger>();
+
+        public String run( String email,
+                           String title,
+                           InputParameters parameters ) {
+            String jobId = "job-" + submitted.incrementAndGet();
+            inputs.put( jobId, parameters.getSequence() );
+            polls.put( jobId, new AtomicInteger() );
+            return jobId;
+        }
+
+        public String getStatus(String jobId) {
+            String name = inputs.get(jobId).substring(1);
+            int poll = polls.get(jobId).incrementAndGet();
+            if ( name.startsWith("stuck")
+                 || name.startsWith("slow") && poll < 2 )
+                return "RUNNING";
+            if ( name.startsWith("fail") )
+                return "ERROR";
+            return "FINISHED";
+        }
+
+        public byte[] getResult( String jobId,
+                                 String type,
+                                 WsRawOutputParameter[] parameters ) {
+            StringBuilder clustal = new StringBuilder(
+                "Kalign (2.0) alignment in ClustalW format\n\n\n" );
+            String name = null;
+            for ( String line : inputs.get(jobId).split("\n") ) {
+                if ( line.startsWith(">") )
+                    name = line.substring(1).trim();
+                else if ( line.trim().length() > 0 )
+                    clustal.append( name ).append( "      " )
+                           .append( line.trim() ).append( '\n' );
+            }
+            return clustal.append( '\n' ).toString().getBytes();
+        }
+
+        public WsResultType[] getResultTypes(String jobId)
+            throws RemoteException {
+            throw new RemoteException("Not supported by the stub");
+        }
+
+        public String[] getParameters() throws RemoteException {
+            throw new RemoteException("Not supported by the stub");
+        }
+
+        public WsParameterDetails getParameterDetails(String parameterId)
+            throws RemoteException {
+            throw new RemoteException("Not supported by the stub");
+        }
+    }
+}
@@ -0,0 +1,328 @@
+/* *****************************************************************************
+ * Copyright (c) 2009 The Bioclipse Project and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * <http://www.eclipse.org/legal/epl-v10.html>
+ *
+ * Contact: http://www.bioclipse.net/
+ ******************************************************************************/
+package net.bioclipse.align.kalign.ws.tests;
+
+import static org.junit.Assert.*;
+
+import java.rmi.RemoteException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.bioclipse.align.kalign.ws.business.KalignJobScheduler;
+import net.bioclipse.bioinformatics.util.OperationMetrics;
+import net.bioclipse.core.business.BioclipseException;
+
+import org.junit.After;
+import org.junit.Test;
+
+import uk.ac.ebi.jdispatcher.soap.InputParameters;
+import uk.ac.ebi.jdispatcher.soap.JDispatcherService_PortType;
+import uk.ac.ebi.jdispatcher.soap.WsParameterDetails;
+import uk.ac.ebi.jdispatcher.soap.WsRawOutputParameter;
+import uk.ac.ebi.jdispatcher.soap.WsResultType;
+
+/**
+ * Runs the {@link KalignJobScheduler} against a local stub of the
+ * JDispatcher service, so no network is needed.
+ */
+public class KalignJobSchedulerTest {
+
+    private static final KalignJobScheduler.ResultHandler<String> AS_STRING
+        = new KalignJobScheduler.ResultHandler<String>() {
+            public String handle(byte[] result) {
+                return new String(result);
+            }
+        };
+
+    private KalignJobScheduler scheduler;
+
+    @After
+    public void shutdown() {
+        if (scheduler != null)
+            scheduler.shutdown();
+    }
+
+    @Test
+    public void testJobsFinish() throws Exception {
+        StubService service = new StubService(3);
+        scheduler = new KalignJobScheduler(service, 4, 5, 20);
+
+        List<Future<String>> results = new ArrayList<Future<String>>();
+        for ( int i = 0; i < 10; ++i )
+            results.add( submit("seq" + i) );
+
+        for ( int i = 0; i < 10; ++i )
+            assertEquals( "aligned seq" + i,
+                          results.get(i).get(10, TimeUnit.SECONDS) );
+        assertEquals( 10, service.submitted.get() );
+        assertEquals( 0, scheduler.getJobsInFlight() );
+    }
+
+    @Test
+    public void testCallsAreMeasured() throws Exception {
+        StubService service = new StubService(2);
+        scheduler = new KalignJobScheduler(service, 4, 5, 20);
+
+        for ( int i = 0; i < 3; ++i )
+            submit("seq" + i).get(10, TimeUnit.SECONDS);
+
+        OperationMetrics metrics = scheduler.getMetrics();
+        assertEquals( 3, metrics.get("submit").getCount() );
+        assertEquals( 3 * "seq0".length(), metrics.get("submit").getBytes() );
+        assertEquals( 9, metrics.get("poll").getCount() );
+        assertEquals( 3, metrics.get("fetch").getCount() );
+        assertEquals( 3 * "aligned seq0".length(),
+                      metrics.get("fetch").getBytes() );
+        assertEquals( 0, metrics.get("fetch").getFailures() );
+    }
+
+    @Test
+    public void testSubmissionsAreCapped() throws Exception {
+        StubService service = new StubService(5);
+        scheduler = new KalignJobScheduler(service, 3, 5, 20);
+
+        List<Future<String>> results = new ArrayList<Future<String>>();
+        for ( int i = 0; i < 12; ++i )
+            results.add( submit("seq" + i) );
+        for (Future<String> result : results)
+            result.get(10, TimeUnit.SECONDS);
+
+        assertEquals( 3, service.maxRunning.get() );
+    }
+
+    @Test
+    public void testPollingBacksOff() throws Exception {
+        StubService service = new StubService(6);
+        scheduler = new KalignJobScheduler(service, 1, 10, 40);
+
+        submit("seq").get(10, TimeUnit.SECONDS);
+
+        List<Long> polls = service.polls.values().iterator().next();
+        assertEquals( 7, polls.size() );
+        long first = polls.get(1) - polls.get(0),
+             last  = polls.get(6) - polls.get(5);
+        assertTrue( "Polling did not back off: " + polls,
+                    last >= 35 && last > first );
+    }
+
+    @Test
+    public void testFailedJob() throws Exception {
+        StubService service = new StubService(1);
+        service.finalStatus = "FAILURE";
+        scheduler = new KalignJobScheduler(service, 2, 5, 20);
+
+        try {
+            submit("seq").get(10, TimeUnit.SECONDS);
+            fail("The job should have failed");
+        } catch (ExecutionException e) {
+            assertTrue( e.getCause() instanceof BioclipseException );
+        }
+        assertEquals( 0, scheduler.getJobsInFlight() );
+    }
+
+    @Test
+    public void testCancelFreesSlot() throws Exception {
+        StubService service = new StubService(2);
+        scheduler = new KalignJobScheduler(service, 1, 5, 20);
+
+        Future<String> stuck = submit("stuck");
+        Future<String> queued = submit("queued");
+        try {
+            queued.get(200, TimeUnit.MILLISECONDS);
+            fail("The second job should wait for the first");
+        } catch (TimeoutException e) {
+            // expected
+        }
+
+        assertTrue( stuck.cancel(true) );
+        assertEquals( "aligned queued", queued.get(10, TimeUnit.SECONDS) );
+    }
+
+    @Test
+    public void testSlowHandlersDoNotHoldUpOtherJobs() throws Exception {
+        StubService service = new StubService(1);
+        scheduler = new KalignJobScheduler(service, 3, 5, 20);
+        final CountDownLatch release = new CountDownLatch(1);
+        KalignJobScheduler.ResultHandler<String> slow
+            = new KalignJobScheduler.ResultHandler<String>() {
+                public String handle(byte[] result) throws Exception {
+                    release.await();
+                    return new String(result);
+                }
+            };
+
+        List<Future<String>> slowResults = new ArrayList<Future<String>>();
+        for ( int i = 0; i < 2; ++i ) {
+            InputParameters params = new InputParameters();
+            params.setSequence("slow" + i);
+            slowResults.add( scheduler.submit( "test@bioclipse.net", "test",
+                                               params, "out", slow ) );
+        }
+        try {
+            assertEquals( "aligned fast",
+                          submit("fast").get(10, TimeUnit.SECONDS) );
+        } finally {
+            release.countDown();
+        }
+        for (Future<String> result : slowResults)
+            result.get(10, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void testListenerIsToldOfCompletedJobs() throws Exception {
+        StubService service = new StubService(1);
+        scheduler = new KalignJobScheduler(service, 2, 5, 20);
+        final BlockingQueue<Future<String>> completed
+            = new LinkedBlockingQueue<Future<String>>();
+        KalignJobScheduler.CompletionListener<String> listener
+            = new KalignJobScheduler.CompletionListener<String>() {
+                public void completed(Future<String> job) {
+                    completed.add(job);
+                }
+            };
+
+        Future<String> stuck = submit("stuck", listener),
+                       done  = submit("done", listener);
+        assertSame( done, completed.poll(10, TimeUnit.SECONDS) );
+        assertEquals( "aligned done", done.get() );
+        assertTrue( completed.isEmpty() );
+
+        stuck.cancel(true);
+        assertSame( stuck, completed.poll(10, TimeUnit.SECONDS) );
+    }
+
+    @Test
+    public void testResultTypeIsChosenWhenFinished() throws Exception {
+        StubService service = new StubService(2);
+        scheduler = new KalignJobScheduler(service, 1, 5, 20);
+        final List<String> finished = new CopyOnWriteArrayList<String>();
+
+        InputParameters params = new InputParameters();
+        params.setSequence("seq");
+        Future<String> result = scheduler.submit(
+            "test@bioclipse.net", "test", params,
+            new KalignJobScheduler.ResultTypeChooser() {
+                public String choose( JDispatcherService_PortType service,
+                                      String jobId ) {
+                    finished.add(jobId);
+                    return "aln-fasta";
+                }
+            },
+            AS_STRING );
+
+        assertEquals( "aligned seq", result.get(10, TimeUnit.SECONDS) );
+        assertEquals( 1, finished.size() );
+        assertEquals( "aln-fasta", service.resultTypes.get( finished.get(0) ) );
+    }
+
+    private Future<String> submit(String sequence) {
+        InputParameters params = new InputParameters();
+        params.setSequence(sequence);
+        return scheduler.submit( "test@bioclipse.net", "test", params,
+                                 "out", AS_STRING );
+    }
+
+    private Future<String> submit(
+        String sequence,
+        KalignJobScheduler.CompletionListener<String> listener ) {
+
+        InputParameters params = new InputParameters();
+        params.setSequence(sequence);
+        return scheduler.submit( "test@bioclipse.net", "test", params,
+                                 new KalignJobScheduler.ResultTypeChooser() {
+                                     public String choose(
+                                         JDispatcherService_PortType service,
+                                         String jobId ) {
+                                         return "out";
+                                     }
+                                 },
+                                 AS_STRING, listener );
+    }
+
+    /**
+     * A JDispatcher service whose jobs keep running for a number of status
+     * requests, or forever for sequences starting with "stuck", and which
+     * keeps track of how it is called.
+     */
+    private static class StubService implements JDispatcherService_PortType {
+
+        final int pollsUntilFinished;
+        volatile String finalStatus = "FINISHED";
+
+        final AtomicInteger submitted = new AtomicInteger();
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger maxRunning = new AtomicInteger();
+        final Map<String, String> sequences
+            = new ConcurrentHashMap<String, String>();
+        final Map<String, List<Long>> polls
+            = new ConcurrentHashMap<String, List<Long>>();
+        final Map<String, String> resultTypes
+            = new ConcurrentHashMap<String, String>();
+
+        StubService(int pollsUntilFinished) {
+            this.pollsUntilFinished = pollsUntilFinished;
+        }
+
+        public String run( String email,
+                           String title,
+                           InputParameters parameters ) {
+            String jobId = "job-" + submitted.incrementAndGet();
+            sequences.put( jobId, parameters.getSequence() );
+            polls.put( jobId, new CopyOnWriteArrayList<Long>() );
+            int now = running.incrementAndGet();
+            for ( int max = maxRunning.get(); now > max;
+                  max = maxRunning.get() )
+                maxRunning.compareAndSet(max, now);
+            return jobId;
+        }
+
+        public String getStatus(String jobId) {
+            List<Long> times = polls.get(jobId);
+            times.add( System.currentTimeMillis() );
+            if ( times.size() <= pollsUntilFinished
+                 || sequences.get(jobId).startsWith("stuck") )
+                return "RUNNING";
+            running.decrementAndGet();
+            return finalStatus;
+        }
+
+        public byte[] getResult( String jobId,
+                                 String type,
+                                 WsRawOutputParameter[] parameters ) {
+            resultTypes.put(jobId, type);
+            return ( "aligned " + sequences.get(jobId) ).getBytes();
+        }
+
+        public WsResultType[] getResultTypes(String jobId)
+            throws RemoteException {
+            throw new RemoteException("Not supported by the stub");
+        }
+
+        public String[] getParameters() throws RemoteException {
+            throw new RemoteException("Not supported by the stub");
+        }
+
+        public WsParameterDetails getParameterDetails(String parameterId)
+            throws RemoteException {
+            throw new RemoteException("Not supported by the stub");
+        }
+    }
+}
@@ -0,0 +1,122 @@
+/* *****************************************************************************
+ * Copyright (c) 2009 The Bioclipse Project and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * <http://www.eclipse.org/legal/epl-v10.html>
+ *
+ * Contact: http://www.bioclipse.net/
+ ******************************************************************************/
+package net.bioclipse.align.kalign.ws.tests;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+
+import net.bioclipse.align.kalign.ws.business.KalignResultCache;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import uk.ac.ebi.jdispatcher.soap.InputParameters;
+
+public class KalignResultCacheTest {
+
+    private File directory;
+
+    @Before
+    public void createDirectory() throws IOException {
+        directory = File.createTempFile("kalign", "cache");
+        assertTrue( directory.delete() );
+    }
+
+    @After
+    public void deleteDirectory() {
+        File[] files = directory.listFiles();
+        if (files != null)
+            for (File file : files)
+                file.delete();
+        directory.delete();
+    }
+
+    @Test
+    public void testKeyIgnoresLineEndings() {
+        String unix = KalignResultCache.key(
+                          params( "protein", ">a\nMKV\n>b\nMKA\n" ) ),
+               dos  = KalignResultCache.key(
+                          params( "protein", ">a\r\nMKV \r\n>b\r\nMKA" ) );
+        assertEquals( unix, dos );
+        assertEquals( 40, unix.length() );
+    }
+
+    @Test
+    public void testKeyDependsOnParameters() {
+        InputParameters protein = params("protein", ">a\nACGT\n"),
+                        dna     = params("dna", ">a\nACGT\n"),
+                        gapped  = params("protein", ">a\nACGT\n");
+        gapped.setGapopen( 11f );
+        assertFalse( KalignResultCache.key(protein)
+                     .equals( KalignResultCache.key(dna) ) );
+        assertFalse( KalignResultCache.key(protein)
+                     .equals( KalignResultCache.key(gapped) ) );
+    }
+
+    @Test
+    public void testHitsAndMisses() {
+        KalignResultCache cache = new KalignResultCache(null, 2);
+        assertNull( cache.get("a") );
+        cache.put( "a", "result".getBytes() );
+        assertEquals( "result", new String( cache.get("a") ) );
+        assertEquals( 1, cache.getHits() );
+        assertEquals( 1, cache.getMisses() );
+    }
+
+    @Test
+    public void testLeastRecentlyUsedIsEvicted() {
+        KalignResultCache cache = new KalignResultCache(null, 2);
+        cache.put( "a", new byte[] { 1 } );
+        cache.put( "b", new byte[] { 2 } );
+        cache.get("a");
+        cache.put( "c", new byte[] { 3 } );
+        assertNotNull( cache.get("a") );
+        assertNull( cache.get("b") );
+        assertNotNull( cache.get("c") );
+    }
+
+    @Test
+    public void testResultsSurviveOnDisk() {
+        new KalignResultCache(directory, 2).put( "a", "result".getBytes() );
+
+        KalignResultCache cache = new KalignResultCache(directory, 2);
+        assertEquals( "result", new String( cache.get("a") ) );
+        assertEquals( 1, cache.getHits() );
+
+        cache.clear();
+        assertNull( new KalignResultCache(directory, 2).get("a") );
+    }
+
+    @Test
+    public void testOldestResultsLeaveTheDisk() {
+        KalignResultCache cache = new KalignResultCache(directory, 8, 10);
+        cache.put( "a", new byte[4] );
+        cache.put( "b", new byte[4] );
+        assertEquals( 8, cache.getDiskSize() );
+        cache.put( "c", new byte[4] );
+        assertEquals( 8, cache.getDiskSize() );
+
+        KalignResultCache reopened = new KalignResultCache(directory, 8, 10);
+        assertEquals( 8, reopened.getDiskSize() );
+        assertNull( reopened.get("a") );
+        assertNotNull( reopened.get("b") );
+        assertNotNull( reopened.get("c") );
+    }
+
+    private static InputParameters params(String type, String sequences) {
+        InputParameters params = new InputParameters();
+        params.setStype(type);
+        params.setSequence(sequences);
+        return params;
+    }
+}
@@ -0,0 +1,86 @@
+/* *****************************************************************************
+ * Copyright (c) 2009 The Bioclipse Project and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * <http://www.eclipse.org/legal/epl-v10.html>
+ *
+ * Contact: http://www.bioclipse.net/
+ ******************************************************************************/
+package net.bioclipse.align.kalign.ws.tests;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+
+import net.bioclipse.align.kalign.ws.business.LocalAligner;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class LocalAlignerTest {
+
+    private final LocalAligner aligner = new LocalAligner(2);
+
+    @After
+    public void shutdown() {
+        aligner.shutdown();
+    }
+
+    @Test
+    public void testAlignProteins() throws InterruptedException {
+        String[] aligned = aligner.align(
+            new String[] { "ASAMPLESEQ", "ANOTHERSAMPLESEQ" }, true );
+        assertEquals( "A------SAMPLESEQ", aligned[0] );
+        assertEquals( "ANOTHERSAMPLESEQ", aligned[1] );
+    }
+
+    @Test
+    public void testAlignDNA() throws InterruptedException {
+        String[] aligned = aligner.align(
+            new String[] { "ctcttcgg", "ctcaattcggaaa" }, false );
+        assertEquals( "ctc--ttcgg---", aligned[0] );
+        assertEquals( "ctcaattcggaaa", aligned[1] );
+    }
+
+    @Test
+    public void testAlignInLinearSpace() throws InterruptedException {
+        LocalAligner split = new LocalAligner(2, 4);
+        try {
+            String[][] pairs = { { "ASAMPLESEQ", "ANOTHERSAMPLESEQ" },
+                                 { "MKVLAAGIVGLLLA", "MKTAYIAKQRQISFVKSHFSRQ" },
+                                 { "ANOTHERSAMPLESEQ", "ASAMPLESEQ" } };
+            for (String[] pair : pairs)
+                assertEquals( Arrays.asList( aligner.align(pair, true) ),
+                              Arrays.asList( split.align(pair, true) ) );
+            String[] dna = { "ctcttcgg", "ctcaattcggaaa" };
+            assertEquals( Arrays.asList( aligner.align(dna, false) ),
+                          Arrays.asList( split.align(dna, false) ) );
+        } finally {
+            split.shutdown();
+        }
+    }
+
+    @Test
+    public void testKeepsInputOrder() throws InterruptedException {
+        String[] sequences = { "MKVLAAGIVGLLLA",
+                               "MKTAYIAKQRQISFVKSHFSRQ",
+                               "MKVLAAGIVALLLA",
+                               "MKTAYIAKQRQISFVKAHFSRQ",
+                               "MKVLSAGIVGLLLA" };
+        String[] aligned = aligner.align(sequences, true);
+
+        assertEquals( sequences.length, aligned.length );
+        for ( int i = 0; i < sequences.length; ++i ) {
+            assertEquals( aligned[0].length(), aligned[i].length() );
+            assertEquals( sequences[i], aligned[i].replace("-", "") );
+        }
+    }
+
+    @Test
+    public void testSingleSequence() throws InterruptedException {
+        String[] aligned = aligner.align( new String[] { "MKV" }, true );
+        assertEquals( 1, aligned.length );
+        assertEquals( "MKV", aligned[0] );
+    }
+}
@@ -11,9 +11,11 @@
 package net.bioclipse.align.kalign.ws.business;
 
 import java.util.List;
+import java.util.concurrent.Future;
 
 import org.eclipse.core.runtime.IProgressMonitor;
 
+import net.bioclipse.bioinformatics.util.OperationMetrics;
 import net.bioclipse.core.PublishedClass;
 import net.bioclipse.core.PublishedMethod;
 import net.bioclipse.core.Recorded;
@@ -47,6 +49,20 @@ public interface IKalignManager extends IBioclipseManager {
     public List<IDNA> alignDNA(List<IDNA> dnaList) throws BioclipseException;
     public List<IDNA> alignDNA(List<IDNA> dnaList, IProgressMonitor monitor) throws BioclipseException;
 
+    /**
+     * Submits a list of DNA for alignment and returns without waiting for
+     * the result. Jobs are run by a scheduler shared by all alignments, 
+     * which limits the number of jobs running at EBI at a time.
+     * @param dnaList List of DNA sequences to align
+     * @return a future for the list of aligned DNA
+     * @throws BioclipseException if the input is not a list of DNA
+     */
+    @PublishedMethod(params="List<IDNA> dnaList",
+                     methodSummary="Starts aligning a list of DNA sequences " +
+                             "using the KAlign Web service at EBI. Returns " +
+                             "a future giving the aligned sequences.")
+    public Future<List<IDNA>> alignDNAAsync(List<IDNA> dnaList) throws BioclipseException;
+
     
     /**
      * Accepts a list of proteins and delegates to generic alignment method.
@@ -64,6 +80,91 @@ public interface IKalignManager extends IBioclipseManager {
                              "the KAlign Web service at EBI.")
     public List<IProtein> alignProteins(List<IProtein> proteinList) throws BioclipseException;
     public List<IProtein> alignProteins(List<IProtein> proteinList, IProgressMonitor monitor) throws BioclipseException;
-    
-    
+
+    /**
+     * Submits a list of proteins for alignment and returns without waiting
+     * for the result. Jobs are run by a scheduler shared by all alignments, 
+     * which limits the number of jobs running at EBI at a time.
+     * @param proteinList List of protein sequences to align
+     * @return a future for the list of aligned proteins
+     * @throws BioclipseException if the input is not a list of proteins
+     */
+    @PublishedMethod(params="List<IProtein> proteinList",
+                     methodSummary="Starts aligning a list of protein " +
+                             "sequences using the KAlign Web service at " +
+                             "EBI. Returns a future giving the aligned " +
+                             "sequences.")
+    public Future<List<IProtein>> alignProteinsAsync(List<IProtein> proteinList) throws BioclipseException;
+
+    /**
+     * Aligns a number of independent groups of DNA. All groups are
+     * submitted at once, and the batch gives the aligned groups as they
+     * complete.
+     * @param dnaGroups groups of DNA sequences, each aligned on its own
+     * @return a batch giving the aligned groups
+     * @throws BioclipseException if a group is not a list of DNA
+     *         or cannot be submitted. The groups submitted before it are
+     *         cancelled.
+     */
+    @PublishedMethod(params="List<List<IDNA>> dnaGroups",
+                     methodSummary="Starts aligning a number of groups of " +
+                             "DNA sequences using the KAlign Web service " +
+                             "at EBI. Returns a batch giving the aligned " +
+                             "groups as they complete.")
+    public KalignBatch<List<IDNA>> alignDNABatch(List<List<IDNA>> dnaGroups) throws BioclipseException;
+
+    /**
+     * Aligns a number of independent groups of proteins. All groups are
+     * submitted at once, and the batch gives the aligned groups as they
+     * complete.
+     * @param proteinGroups groups of protein sequences, each aligned on its
+     * own
+     * @return a batch giving the aligned groups
+     * @throws BioclipseException if a group is not a list of proteins
+     *         or cannot be submitted. The groups submitted before it are
+     *         cancelled.
+     */
+    @PublishedMethod(params="List<List<IProtein>> proteinGroups",
+                     methodSummary="Starts aligning a number of groups of " +
+                             "protein sequences using the KAlign Web " +
+                             "service at EBI. Returns a batch giving the " +
+                             "aligned groups as they complete.")
+    public KalignBatch<List<IProtein>> alignProteinsBatch(List<List<IProtein>> proteinGroups) throws BioclipseException;
+
+    /**
+     * Returns the number of alignments that were found in the result cache
+     * instead of being run again.
+     * @return the number of cache hits
+     */
+    @PublishedMethod(methodSummary="Returns the number of alignments that " +
+                             "were found in the result cache.")
+    public long getCacheHits();
+
+    /**
+     * Returns the number of alignments that were not found in the result
+     * cache.
+     * @return the number of cache misses
+     */
+    @PublishedMethod(methodSummary="Returns the number of alignments that " +
+                             "were not found in the result cache.")
+    public long getCacheMisses();
+
+    /**
+     * Removes all alignments from the result cache, in memory and on disk.
+     */
+    @PublishedMethod(methodSummary="Removes all alignments from the result " +
+                             "cache.")
+    public void clearCache();
+
+    /**
+     * Returns counters and latency histograms of the calls to the KAlign
+     * service (submit, poll and fetch) and of parsing the results (parse)
+     * and aligning locally (align-local), with the sizes of their payloads.
+     * @return the metrics of the manager
+     */
+    @PublishedMethod(methodSummary="Returns counters, latencies and " +
+                             "payload sizes of the calls to the KAlign " +
+                             "service.")
+    public OperationMetrics getMetrics();
+
 }
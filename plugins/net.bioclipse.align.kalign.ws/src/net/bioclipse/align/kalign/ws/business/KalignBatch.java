@@ -0,0 +1,193 @@
+/* *****************************************************************************
+ * Copyright (c) 2009 The Bioclipse Project and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * <http://www.eclipse.org/legal/epl-v10.html>
+ *
+ * Contact: http://www.bioclipse.net/
+ ******************************************************************************/
+package net.bioclipse.align.kalign.ws.business;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import net.bioclipse.core.business.BioclipseException;
+
+/**
+ * A number of independent alignments running at the same time. The
+ * alignments can be taken one by one in the order they complete, with
+ * {@link #hasNext()} and {@link #next()}, or all at once in the order they
+ * were given, with {@link #getAlignments()}. Each alignment queues its
+ * result when it completes, so no thread waits for the alignments that
+ * have not been taken.
+ */
+public class KalignBatch<T> {
+
+    /**
+     * The outcome of one alignment of a batch.
+     */
+    public static class Result<T> {
+
+        private final int index;
+        private final T alignment;
+        private final BioclipseException error;
+
+        Result(int index, T alignment, BioclipseException error) {
+            this.index = index;
+            this.alignment = alignment;
+            this.error = error;
+        }
+
+        /**
+         * Returns the position of the aligned group in the batch.
+         */
+        public int getIndex() {
+            return index;
+        }
+
+        /**
+         * Returns whether the alignment succeeded.
+         */
+        public boolean isSuccessful() {
+            return error == null;
+        }
+
+        /**
+         * Returns the alignment.
+         * @throws BioclipseException if the alignment failed
+         */
+        public T getAlignment() throws BioclipseException {
+            if (error != null)
+                throw error;
+            return alignment;
+        }
+    }
+
+    private final List<Future<T>> alignments
+        = new CopyOnWriteArrayList<Future<T>>();
+    private final BlockingQueue<Result<T>> completed
+        = new LinkedBlockingQueue<Result<T>>();
+    private int taken;
+
+    /**
+     * Creates an empty batch, to which the manager adds the alignments.
+     */
+    KalignBatch() {
+    }
+
+    /**
+     * Returns the listener to submit the next alignment of the batch with,
+     * which queues its result for {@link #next()} when it completes. The
+     * alignment must then be given to {@link #add(Future)}.
+     */
+    KalignJobScheduler.CompletionListener<T> listener() {
+        final int index = alignments.size();
+        return new KalignJobScheduler.CompletionListener<T>() {
+            public void completed(Future<T> alignment) {
+                completed.add( result(index, alignment) );
+            }
+        };
+    }
+
+    /**
+     * Adds an alignment submitted with the last listener from
+     * {@link #listener()}.
+     */
+    void add(Future<T> alignment) {
+        alignments.add(alignment);
+    }
+
+    /**
+     * Returns the outcome of a completed alignment.
+     */
+    private static <T> Result<T> result(int index, Future<T> alignment) {
+        try {
+            return new Result<T>( index, alignment.get(), null );
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return new Result<T>( index, null,
+                new BioclipseException("KAlign interrupted.") );
+        } catch (CancellationException e) {
+            return new Result<T>( index, null,
+                new BioclipseException("KAlign interrupted.") );
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            return new Result<T>( index, null,
+                cause instanceof BioclipseException
+                    ? (BioclipseException) cause
+                    : new BioclipseException( "KAlign service error: "
+                                              + cause.getMessage() ) );
+        }
+    }
+
+    /**
+     * Returns the number of alignments in the batch.
+     */
+    public int size() {
+        return alignments.size();
+    }
+
+    /**
+     * Returns whether there are alignments that have not been taken with
+     * {@link #next()}.
+     */
+    public synchronized boolean hasNext() {
+        return taken < alignments.size();
+    }
+
+    /**
+     * Waits for the next alignment to complete and returns it.
+     * @throws NoSuchElementException if all alignments have been taken
+     * @throws BioclipseException if interrupted while waiting
+     */
+    public synchronized Result<T> next() throws BioclipseException {
+        if ( !hasNext() )
+            throw new NoSuchElementException();
+        try {
+            Result<T> result = completed.take();
+            ++taken;
+            return result;
+        } catch (InterruptedException e) {
+            throw new BioclipseException("KAlign interrupted.");
+        }
+    }
+
+    /**
+     * Waits for all alignments to complete and returns them in the order
+     * their groups were given.
+     * @throws BioclipseException if an alignment failed
+     */
+    public List<T> getAlignments() throws BioclipseException {
+        List<T> aligned = new ArrayList<T>( alignments.size() );
+        for ( int i = 0; i < alignments.size(); ++i ) {
+            Future<T> alignment = alignments.get(i);
+            try {
+                alignment.get();
+            } catch (InterruptedException e) {
+                throw new BioclipseException("KAlign interrupted.");
+            } catch (CancellationException e) {
+                // Reported by the result below
+            } catch (ExecutionException e) {
+                // Reported by the result below
+            }
+            aligned.add( result(i, alignment).getAlignment() );
+        }
+        return aligned;
+    }
+
+    /**
+     * Cancels the alignments that have not completed.
+     */
+    public void cancel() {
+        for (Future<T> alignment : alignments)
+            alignment.cancel(true);
+    }
+}
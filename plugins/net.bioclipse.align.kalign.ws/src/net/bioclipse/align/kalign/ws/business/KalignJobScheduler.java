@@ -0,0 +1,410 @@
+/* *****************************************************************************
+ * Copyright (c) 2009 The Bioclipse Project and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * <http://www.eclipse.org/legal/epl-v10.html>
+ *
+ * Contact: http://www.bioclipse.net/
+ ******************************************************************************/
+package net.bioclipse.align.kalign.ws.business;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.log4j.Logger;
+
+import uk.ac.ebi.jdispatcher.soap.InputParameters;
+import uk.ac.ebi.jdispatcher.soap.JDispatcherService_PortType;
+
+import net.bioclipse.bioinformatics.util.OperationMetrics;
+import net.bioclipse.biojava.business.DaemonThreadFactory;
+import net.bioclipse.core.business.BioclipseException;
+
+/**
+ * Runs jobs on an EBI JDispatcher service without holding a thread per job.
+ * At most a fixed number of jobs are in flight at a time; further jobs are
+ * queued and submitted as earlier ones finish. All jobs in flight are polled
+ * from one shared scheduler, each with a delay that doubles from the
+ * minimum to the maximum poll delay for as long as the job keeps running,
+ * so that short jobs are picked up quickly and long ones do not flood the
+ * service with status requests.
+ * <p>
+ * The shared scheduler only keeps time. The calls to the service and the
+ * handling of results run on a pool with one thread per job in flight, so
+ * that a slow call or a large result never holds up the other jobs.
+ */
+public class KalignJobScheduler {
+
+    /**
+     * Turns the result of a finished job into the value of its future.
+     */
+    public interface ResultHandler<T> {
+
+        public T handle(byte[] result) throws Exception;
+    }
+
+    /**
+     * Picks the type of result to fetch for a finished job.
+     */
+    public interface ResultTypeChooser {
+
+        public String choose( JDispatcherService_PortType service,
+                              String jobId ) throws Exception;
+    }
+
+    /**
+     * Is told when a job completes, whether it finished, failed or was
+     * cancelled.
+     */
+    public interface CompletionListener<T> {
+
+        public void completed(Future<T> job);
+    }
+
+    /** The default number of jobs in flight at a time. */
+    public static final int DEFAULT_MAX_JOBS = 8;
+
+    /** The default delay in milliseconds before the first poll of a job. */
+    public static final long DEFAULT_MIN_POLL_DELAY = 500;
+
+    /** The default longest delay in milliseconds between two polls. */
+    public static final long DEFAULT_MAX_POLL_DELAY = 10000;
+
+    private static final Logger logger
+        = Logger.getLogger(KalignJobScheduler.class);
+
+    private static final Runnable NOTHING = new Runnable() {
+        public void run() {
+        }
+    };
+
+    private final JDispatcherService_PortType service;
+    private final int maxJobs;
+    private final long minPollDelay;
+    private final long maxPollDelay;
+    private final Semaphore slots;
+    private final Queue<Job<?>> pending = new ConcurrentLinkedQueue<Job<?>>();
+    private final ScheduledExecutorService timer;
+    private final ExecutorService io;
+    private final OperationMetrics metrics;
+
+    /**
+     * Creates a scheduler with the default settings.
+     *
+     * @param service the service to run jobs on
+     */
+    public KalignJobScheduler(JDispatcherService_PortType service) {
+        this( service, DEFAULT_MAX_JOBS,
+              DEFAULT_MIN_POLL_DELAY, DEFAULT_MAX_POLL_DELAY );
+    }
+
+    /**
+     * @param service      the service to run jobs on
+     * @param maxJobs      the number of jobs in flight at a time
+     * @param minPollDelay the delay in milliseconds before the first poll
+     *                     of a job
+     * @param maxPollDelay the longest delay in milliseconds between two
+     *                     polls of a job
+     */
+    public KalignJobScheduler( JDispatcherService_PortType service,
+                               int maxJobs,
+                               long minPollDelay,
+                               long maxPollDelay ) {
+        this( service, maxJobs, minPollDelay, maxPollDelay,
+              new OperationMetrics() );
+    }
+
+    /**
+     * @param service      the service to run jobs on
+     * @param maxJobs      the number of jobs in flight at a time
+     * @param minPollDelay the delay in milliseconds before the first poll
+     *                     of a job
+     * @param maxPollDelay the longest delay in milliseconds between two
+     *                     polls of a job
+     * @param metrics      records the submit, poll and fetch calls to the
+     *                     service
+     */
+    public KalignJobScheduler( JDispatcherService_PortType service,
+                               int maxJobs,
+                               long minPollDelay,
+                               long maxPollDelay,
+                               OperationMetrics metrics ) {
+        if (maxJobs < 1)
+            throw new IllegalArgumentException(
+                "There must be room for at least one job: " + maxJobs );
+        if (minPollDelay < 1 || maxPollDelay < minPollDelay)
+            throw new IllegalArgumentException(
+                "Bad poll delays: " + minPollDelay + ", " + maxPollDelay );
+        this.service = service;
+        this.maxJobs = maxJobs;
+        this.minPollDelay = minPollDelay;
+        this.maxPollDelay = maxPollDelay;
+        this.metrics = metrics;
+        this.slots = new Semaphore(maxJobs);
+        this.timer = new ScheduledThreadPoolExecutor(
+            1, new DaemonThreadFactory("KAlign job scheduler") );
+        this.io = Executors.newFixedThreadPool(
+            maxJobs, new DaemonThreadFactory("KAlign job") );
+    }
+
+    /**
+     * Queues a job and returns at once. Cancelling the returned future
+     * stops the polling of the job and frees its slot, but cannot stop a
+     * job that has already been submitted from running on the service.
+     *
+     * @param email      the e-mail address to submit the job with
+     * @param title      the title of the job
+     * @param params     the input of the job
+     * @param resultType the type of result to fetch when the job is done
+     * @param handler    turns the result into the value of the future
+     * @return a future for the handled result. It fails with a
+     *         {@link BioclipseException} if the job does not finish, and
+     *         with the exception thrown by the service or the handler if
+     *         there is one.
+     */
+    public <T> Future<T> submit( String email,
+                                 String title,
+                                 InputParameters params,
+                                 final String resultType,
+                                 ResultHandler<T> handler ) {
+        return submit( email, title, params,
+                       new ResultTypeChooser() {
+                           public String choose(
+                               JDispatcherService_PortType service,
+                               String jobId ) {
+                               return resultType;
+                           }
+                       },
+                       handler );
+    }
+
+    /**
+     * Queues a job and returns at once, like
+     * {@link #submit(String, String, InputParameters, String, ResultHandler)},
+     * but picks the type of result to fetch once the job has finished.
+     *
+     * @param email      the e-mail address to submit the job with
+     * @param title      the title of the job
+     * @param params     the input of the job
+     * @param resultType picks the type of result to fetch
+     * @param handler    turns the result into the value of the future
+     * @return a future for the handled result
+     */
+    public <T> Future<T> submit( String email,
+                                 String title,
+                                 InputParameters params,
+                                 ResultTypeChooser resultType,
+                                 ResultHandler<T> handler ) {
+        return submit( email, title, params, resultType, handler, null );
+    }
+
+    /**
+     * Queues a job and returns at once, like
+     * {@link #submit(String, String, InputParameters, ResultTypeChooser,
+     * ResultHandler)}, and tells a listener when the job completes.
+     *
+     * @param email      the e-mail address to submit the job with
+     * @param title      the title of the job
+     * @param params     the input of the job
+     * @param resultType picks the type of result to fetch
+     * @param handler    turns the result into the value of the future
+     * @param listener   is told when the job completes, on the thread that
+     *                   completes it, or <code>null</code>
+     * @return a future for the handled result
+     */
+    public <T> Future<T> submit( String email,
+                                 String title,
+                                 InputParameters params,
+                                 ResultTypeChooser resultType,
+                                 ResultHandler<T> handler,
+                                 CompletionListener<T> listener ) {
+        Job<T> job = new Job<T>( email, title, params, resultType, handler,
+                                 listener );
+        pending.add(job);
+        startPending();
+        return job;
+    }
+
+    /**
+     * Returns the number of jobs that have been submitted to the service
+     * and have not finished yet.
+     */
+    public int getJobsInFlight() {
+        return maxJobs - slots.availablePermits();
+    }
+
+    /**
+     * Returns the metrics of the submit, poll and fetch calls to the
+     * service.
+     */
+    public OperationMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Stops polling. Jobs that have not finished will never finish.
+     */
+    public void shutdown() {
+        timer.shutdownNow();
+        io.shutdownNow();
+    }
+
+    /**
+     * Starts queued jobs for as long as there are free slots.
+     */
+    private void startPending() {
+        while ( !pending.isEmpty() && slots.tryAcquire() ) {
+            Job<?> job = pending.poll();
+            if (job == null) {
+                slots.release();
+                continue;
+            }
+            job.holdSlot();
+            io.execute( job.submitter );
+        }
+    }
+
+    private class Job<T> extends FutureTask<T> {
+
+        private final String email;
+        private final String title;
+        private final InputParameters params;
+        private final ResultTypeChooser resultType;
+        private final ResultHandler<T> handler;
+        private final CompletionListener<T> listener;
+        private final AtomicBoolean holdsSlot = new AtomicBoolean();
+
+        private volatile String jobId;
+        private long delay = minPollDelay;
+
+        private final Runnable submitter = new Runnable() {
+            public void run() {
+                if ( isDone() )
+                    return;
+                long start = metrics.start();
+                try {
+                    jobId = service.run(email, title, params);
+                    String sequence = params.getSequence();
+                    metrics.record( "submit", start,
+                                    sequence == null ? 0 : sequence.length() );
+                    logger.debug("KAlign WS invoked. Job id is: " + jobId);
+                    schedulePoll();
+                } catch (Throwable t) {
+                    metrics.failed("submit", start);
+                    releaseSlot();
+                    setException(t);
+                }
+            }
+        };
+
+        private final Runnable pollLater = new Runnable() {
+            public void run() {
+                if ( !isDone() )
+                    io.execute(poller);
+            }
+        };
+
+        private final Runnable poller = new Runnable() {
+            public void run() {
+                if ( isDone() )
+                    return;
+                String operation = "poll";
+                long start = metrics.start();
+                try {
+                    String status = service.getStatus(jobId);
+                    metrics.record("poll", start, 0);
+                    operation = null;
+                    if (logger.isDebugEnabled())
+                        logger.debug("KAlign job " + jobId + " status: "
+                                     + status);
+                    if ( "RUNNING".equals(status)
+                         || "PENDING".equals(status)
+                         || "QUEUED".equals(status) ) {
+                        delay = Math.min(delay * 2, maxPollDelay);
+                        schedulePoll();
+                    }
+                    else if ( "FINISHED".equals(status) ) {
+                        operation = "fetch";
+                        start = metrics.start();
+                        byte[] result = service.getResult(
+                            jobId, resultType.choose(service, jobId), null );
+                        metrics.record( "fetch", start,
+                                        result == null ? 0 : result.length );
+                        operation = null;
+                        releaseSlot();
+                        set( handler.handle(result) );
+                    }
+                    else {
+                        releaseSlot();
+                        setException( new BioclipseException(
+                            "KAlign job " + jobId + " ended with status "
+                            + status ) );
+                    }
+                } catch (Throwable t) {
+                    if (operation != null)
+                        metrics.failed(operation, start);
+                    releaseSlot();
+                    setException(t);
+                }
+            }
+        };
+
+        Job( String email,
+             String title,
+             InputParameters params,
+             ResultTypeChooser resultType,
+             ResultHandler<T> handler,
+             CompletionListener<T> listener ) {
+            super(NOTHING, null);
+            this.email = email;
+            this.title = title;
+            this.params = params;
+            this.resultType = resultType;
+            this.handler = handler;
+            this.listener = listener;
+        }
+
+        private void schedulePoll() {
+            timer.schedule(pollLater, delay, TimeUnit.MILLISECONDS);
+        }
+
+        /**
+         * Records that the job holds a slot, giving it back at once if the
+         * job was cancelled in the meantime.
+         */
+        void holdSlot() {
+            holdsSlot.set(true);
+            if ( isDone() )
+                releaseSlot();
+        }
+
+        /**
+         * Gives back the slot of the job, if it holds one. This is done
+         * before the job completes, so that anyone waiting for it sees the
+         * slot free.
+         */
+        private void releaseSlot() {
+            if ( holdsSlot.getAndSet(false) )
+                slots.release();
+        }
+
+        @Override
+        protected void done() {
+            releaseSlot();
+            pending.remove(this);
+            startPending();
+            if (listener != null)
+                listener.completed(this);
+        }
+    }
+}
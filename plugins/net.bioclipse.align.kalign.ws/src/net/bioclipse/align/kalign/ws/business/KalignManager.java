@@ -10,32 +10,41 @@
  ******************************************************************************/
 package net.bioclipse.align.kalign.ws.business;
 
-import java.io.BufferedReader;
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
-import java.io.InputStreamReader;
+import java.io.File;
+import java.nio.ByteBuffer;
 import java.rmi.RemoteException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import javax.xml.rpc.ServiceException;
 
 import org.apache.log4j.Logger;
-import org.biojava.bio.program.sax.ClustalWAlignmentSAXParser;
 import org.biojava.bio.seq.DNATools;
 import org.biojava.bio.seq.ProteinTools;
 import org.biojava.bio.symbol.Alphabet;
 import org.eclipse.core.runtime.IProgressMonitor;
-import org.xml.sax.InputSource;
-import org.xml.sax.SAXException;
 
 import uk.ac.ebi.jdispatcher.soap.InputParameters;
 import uk.ac.ebi.jdispatcher.soap.JDispatcherService_PortType;
 import uk.ac.ebi.jdispatcher.soap.JDispatcherService_ServiceLocator;
+import uk.ac.ebi.jdispatcher.soap.WsResultType;
 
 
-import net.bioclipse.align.kalign.ws.util.SequenceCollectionContentHandler;
+import net.bioclipse.align.kalign.ws.preferences.PreferenceConstants;
+import net.bioclipse.align.kalign.ws.util.ClustalWParser;
+import net.bioclipse.bioinformatics.util.OperationMetrics;
 import net.bioclipse.biojava.business.Activator;
+import net.bioclipse.biojava.business.DaemonThreadFactory;
+import net.bioclipse.biojava.business.FastaParser;
 import net.bioclipse.biojava.business.IBiojavaManager;
 import net.bioclipse.core.business.BioclipseException;
 import net.bioclipse.core.domain.IDNA;
@@ -49,6 +58,13 @@ import net.bioclipse.managers.business.IBioclipseManager;
  * A manager for invoking KALign at EBI using SOAP
  * with client stub call generated using Axis 1.4.
  *
+ * Alignments run as asynchronous jobs on a {@link KalignJobScheduler}
+ * shared by all calls. Their results are kept in a
+ * {@link KalignResultCache} in the state location of the plug-in, so that
+ * aligning the same sequences again needs no new job. If the local backend
+ * is chosen in the preferences, sequences are aligned in process by a
+ * {@link LocalAligner} instead.
+ *
  * KAlign@EBI Web site: http://www.ebi.ac.uk/Tools/webservices/services/kalign
  * WSDL: http://www.ebi.ac.uk/Tools/webservices/wsdl/WSKalign.wsdl
  *
@@ -59,6 +75,47 @@ public class KalignManager implements IBioclipseManager {
 
 	private static final Logger logger = Logger.getLogger(KalignManager.class);
 
+	private static final String EMAIL = "bioclipse@bioclipse.net";
+	private static final String TITLE = "kalign with Bioclipse";
+
+	/** The result type of the tool output, an alignment in ClustalW format. */
+	private static final String CLUSTALW_RESULT = "out";
+	/** The result type of the alignment in FASTA format, where available. */
+	private static final String FASTA_RESULT = "aln-fasta";
+
+	/** How often, in milliseconds, a waiting call checks for cancellation. */
+	private static final long CANCEL_CHECK_INTERVAL = 200;
+
+	private KalignJobScheduler scheduler;
+	private KalignResultCache cache;
+	private LocalAligner localAligner;
+	private ExecutorService localJobs;
+	/** The result type to fetch, once the service has told. */
+	private volatile String resultType;
+	private final Object resultTypeLock = new Object();
+	private final OperationMetrics metrics = new OperationMetrics();
+
+	/**
+	 * Creates a manager running its jobs on the backend chosen in the
+	 * preferences: the KAlign Web service at EBI, or the local aligner.
+	 */
+	public KalignManager() {
+	}
+
+	/**
+	 * Creates a manager running its Web service jobs on the given service,
+	 * such as a local stub, and caching results in memory only.
+	 * @param service the service to run jobs on
+	 */
+	public KalignManager(JDispatcherService_PortType service) {
+		scheduler = new KalignJobScheduler(service,
+				KalignJobScheduler.DEFAULT_MAX_JOBS,
+				KalignJobScheduler.DEFAULT_MIN_POLL_DELAY,
+				KalignJobScheduler.DEFAULT_MAX_POLL_DELAY,
+				metrics);
+		cache = new KalignResultCache(null, KalignResultCache.DEFAULT_CAPACITY);
+	}
+
 	public String getManagerName() {
 		return "kalignws";
 	}
@@ -77,6 +134,26 @@ public class KalignManager implements IBioclipseManager {
 			IProgressMonitor monitor)
 					throws BioclipseException{
 
+		return waitFor(alignDNAAsync(dnalist), monitor);
+	}
+
+	/**
+	 * Accepts a list of DNA and submits it for alignment without waiting
+	 * for the result.
+	 * @param dnaList List of DNA sequences to align
+	 * @return a future for the list of aligned DNA
+	 * @throws BioclipseException if the input is not a list of DNA
+	 */
+	public Future<List<IDNA>> alignDNAAsync(List<IDNA> dnalist)
+			throws BioclipseException{
+
+		return alignDNAAsync(dnalist, null);
+	}
+
+	private Future<List<IDNA>> alignDNAAsync(List<IDNA> dnalist,
+			KalignJobScheduler.CompletionListener<List<IDNA>> listener)
+					throws BioclipseException{
+
 		//Assert DNA is input
 		for (Object obj : dnalist){
 			if (!( obj instanceof IDNA )) {
@@ -84,21 +161,7 @@ public class KalignManager implements IBioclipseManager {
 			}
 		}
 
-
-		List<IDNA> returnList=new RecordableList<IDNA>();
-		List<? extends ISequence> alist = align(dnalist, "N", monitor);
-		for (ISequence seq : alist){
-			if ( seq instanceof IDNA ) {
-				IDNA dna = (IDNA) seq;
-				returnList.add( dna );
-			}else{
-				throw new BioclipseException("Not all results of Kalign " +
-						"WS are DNA.");
-			}
-		}
-
-		return returnList;
-
+		return align(dnalist, "N", IDNA.class, "DNA", listener);
 	}
 
 	/**
@@ -114,42 +177,112 @@ public class KalignManager implements IBioclipseManager {
 			IProgressMonitor monitor)
 					throws BioclipseException{
 
-		//Assert DNA is input
+		return waitFor(alignProteinsAsync(proteinList), monitor);
+	}
+
+	/**
+	 * Accepts a list of proteins and submits it for alignment without
+	 * waiting for the result.
+	 * @param proteinList List of protein sequences to align
+	 * @return a future for the list of aligned proteins
+	 * @throws BioclipseException if the input is not a list of proteins
+	 */
+	public Future<List<IProtein>> alignProteinsAsync(List<IProtein> proteinList)
+			throws BioclipseException{
+
+		return alignProteinsAsync(proteinList, null);
+	}
+
+	private Future<List<IProtein>> alignProteinsAsync(
+			List<IProtein> proteinList,
+			KalignJobScheduler.CompletionListener<List<IProtein>> listener)
+					throws BioclipseException{
+
+		//Assert proteins are input
 		for (Object obj : proteinList){
 			if (!( obj instanceof IProtein )) {
 				throw new BioclipseException("Input must be list of proteins only");
 			}
 		}
 
+		return align(proteinList, "P", IProtein.class, "proteins", listener);
+	}
 
-		List<IProtein> returnList=new RecordableList<IProtein>();
-		List<? extends ISequence> alist = align(proteinList, "P", monitor);
-		for (ISequence seq : alist){
-			if ( seq instanceof IProtein ) {
-				IProtein protein = (IProtein) seq;
-				returnList.add( protein );
-			}else{
-				throw new BioclipseException("Not all results of Kalign " +
-						"WS are proteins.");
+	/**
+	 * Aligns a number of independent groups of DNA at the same time. All
+	 * groups are submitted at once and share the scheduler and the stub of
+	 * single alignments.
+	 * @param dnaGroups groups of DNA sequences, each aligned on its own
+	 * @return a batch giving the aligned groups as they complete
+	 * @throws BioclipseException if a group is not a list of DNA
+	 */
+	public KalignBatch<List<IDNA>> alignDNABatch(List<List<IDNA>> dnaGroups)
+			throws BioclipseException{
+
+		KalignBatch<List<IDNA>> batch = new KalignBatch<List<IDNA>>();
+		boolean submitted = false;
+		try {
+			for (List<IDNA> group : dnaGroups){
+				batch.add( alignDNAAsync( group, batch.listener() ) );
 			}
+			submitted = true;
+		} finally {
+			// Do not leave the groups already queued running for nobody
+			if (!submitted)
+				batch.cancel();
 		}
+		return batch;
+	}
 
-		return returnList;
+	/**
+	 * Aligns a number of independent groups of proteins at the same time.
+	 * All groups are submitted at once and share the scheduler and the stub
+	 * of single alignments.
+	 * @param proteinGroups groups of protein sequences, each aligned on its
+	 * own
+	 * @return a batch giving the aligned groups as they complete
+	 * @throws BioclipseException if a group is not a list of proteins
+	 */
+	public KalignBatch<List<IProtein>> alignProteinsBatch(
+			List<List<IProtein>> proteinGroups)
+					throws BioclipseException{
+
+		KalignBatch<List<IProtein>> batch = new KalignBatch<List<IProtein>>();
+		boolean submitted = false;
+		try {
+			for (List<IProtein> group : proteinGroups){
+				batch.add( alignProteinsAsync( group, batch.listener() ) );
+			}
+			submitted = true;
+		} finally {
+			// Do not leave the groups already queued running for nobody
+			if (!submitted)
+				batch.cancel();
+		}
+		return batch;
 	}
 
 	/**
-	 * A generic implementation of KALign WEb service at EBI.
+	 * A generic implementation of KALign WEb service at EBI. Submits the
+	 * job to the shared scheduler and returns at once, or handles the
+	 * cached result if the same job has been run before. Aligns with the
+	 * {@link LocalAligner} instead if the local backend is chosen in the
+	 * preferences.
 	 * @param sequenceList List of sequences to align
 	 * @param type 'P' for protein, 'N' for nucleotide
-	 * @param monitor for reporting progress
-	 * @return List of ISequence with aligned sequences
-	 * @throws BioclipseException if aligning fails
+	 * @param resultType the type of the aligned sequences
+	 * @param typeName the name of the type, for error messages
+	 * @param listener is told when the alignment completes, or null
+	 * @return a future for the aligned sequences
+	 * @throws BioclipseException if the job could not be submitted
 	 */
-	private List<? extends ISequence> align(List<? extends ISequence>
-	sequenceList,
-	String type,
-	IProgressMonitor monitor)
-			throws BioclipseException{
+	private <S extends ISequence> Future<List<S>> align(
+			final List<? extends ISequence> sequenceList,
+			final String type,
+			final Class<S> resultType,
+			final String typeName,
+			KalignJobScheduler.CompletionListener<List<S>> listener)
+					throws BioclipseException{
 
 		if (sequenceList==null || sequenceList.isEmpty())
 			throw new BioclipseException("SequenceList must not be empty.");
@@ -159,14 +292,32 @@ public class KalignManager implements IBioclipseManager {
 					"(for protein)" +
 					" or 'N' (for nucleotide).");
 
+		if (isLocalBackend()) {
+			logger.debug( "Starting local KAlign" );
+			FutureTask<List<S>> result = task(new Callable<List<S>>() {
+				public List<S> call() throws BioclipseException {
+					return cast(alignLocally(sequenceList, type.equals( "P" )),
+							resultType, typeName);
+				}
+			}, listener);
+			getLocalJobs().execute( result );
+			return result;
+		}
+
 		logger.debug( "Starting Kalign WS" );
-		monitor.beginTask( "Aligning sequences using KAlign Web service at EBI", 5 );
-		monitor.worked( 1 );
+		final Alphabet alphabet = type.equals( "P" )
+				? ProteinTools.getAlphabet() : DNATools.getDNA();
+		final KalignJobScheduler.ResultHandler<List<S>> handler
+		= new KalignJobScheduler.ResultHandler<List<S>>() {
+
+			public List<S> handle(byte[] result) throws BioclipseException {
+				return cast(parseResult(result, alphabet), resultType, typeName);
+			}
+		};
 
 		//=============================
 		//Set up the input to KAlign WS
 		//=============================
-		monitor.subTask( "Preparing input" );
 		InputParameters params = new InputParameters();
 		IBiojavaManager biojava
 		= Activator.getDefault().getJavaBiojavaManager();
@@ -189,121 +340,313 @@ public class KalignManager implements IBioclipseManager {
 			params.setStype( "dna" );
 		}
 
-		System.out.println("Sequences to align:\n" + fastastring);
+		if (logger.isDebugEnabled())
+			logger.debug("Sequences to align: " + fastastring.length()
+					+ " characters of FASTA");
 		params.setSequence( fastastring );
 
-
-
 		//=============================
-		// Start KAlign WS and wait for completion
+		// Use the cached result, if any
 		//=============================
+		final KalignResultCache cache = getCache();
+		final String key = KalignResultCache.key( params );
+		final byte[] cached = cache.get( key );
+		if (cached != null) {
+			logger.debug( "KAlign result " + key + " found in cache" );
+			FutureTask<List<S>> result = task(new Callable<List<S>>() {
+				public List<S> call() throws Exception {
+					return handler.handle( cached );
+				}
+			}, listener);
+			result.run();
+			return result;
+		}
 
-		monitor.subTask( "Submitting job..." );
+		//=============================
+		// Queue the job with the scheduler
+		//=============================
 		logger.debug("Sending request to Kalign...");
-		monitor.worked( 1 );
+		return getScheduler().submit(EMAIL, TITLE, params,
+				new KalignJobScheduler.ResultTypeChooser() {
 
-		JDispatcherService_ServiceLocator loc = new JDispatcherService_ServiceLocator();
-
-		JDispatcherService_PortType kalign;
-		String resstr="";
-		try {
-			kalign = loc.getJDispatcherServiceHttpPort();
-			String jobid = kalign.run("bioclipse@bioclipse.net", "kalign with Bioclipse", params);
-			logger.debug("Kalign WS invoked. Job id is: " + jobid);
+			public String choose(JDispatcherService_PortType service,
+					String jobId) {
+				return getResultType( service, jobId );
+			}
+		},
+				new KalignJobScheduler.ResultHandler<List<S>>() {
 
-			monitor.subTask( "KAlign running remotely" );
-			monitor.worked( 1 );
-			logger.debug("KAlign running...");
-
-			// Poll until job has finished
-			String status = "RUNNING";
-			while (status.equals("RUNNING")) {
-				Thread.sleep(2000); 				// Wait 2 seconds
-				status = kalign.getStatus(jobid);  // check job status
-				logger.debug("KAlign job status: " + status);
+			public List<S> handle(byte[] result) throws Exception {
+				List<S> aligned = handler.handle( result );
+				cache.put( key, result );
+				return aligned;
 			}
-			// If the job completed successfully...
-			if (status.equals("FINISHED")) {
-				// Get the text result
-				byte[] resultbytes = kalign.getResult(jobid, "out", null);
-				resstr = new String(resultbytes);
-
-				// Output the result
-				logger.debug("KAlign results:\n" + resstr);
+		}, listener);
+	}
+
+	/**
+	 * Returns a task that tells the listener, if any, when it completes.
+	 */
+	private static <T> FutureTask<T> task(Callable<T> callable,
+			final KalignJobScheduler.CompletionListener<T> listener) {
+
+		return new FutureTask<T>(callable) {
+			@Override
+			protected void done() {
+				if (listener != null)
+					listener.completed( this );
 			}
-		} catch (ServiceException e) {
-			throw new BioclipseException("KAlign service error: " + 
-					e.getMessage());
-		} catch (RemoteException e) {
-			throw new BioclipseException("KAlign service error: " + 
-					e.getMessage());
-		} catch (InterruptedException e) {
-			throw new BioclipseException("KAlign WS interrupted.");
-		}        
+		};
+	}
 
+	/**
+	 * Returns the number of alignments that were found in the result cache.
+	 * @return the number of cache hits
+	 */
+	public long getCacheHits() {
+		return getCache().getHits();
+	}
 
-		//=============================
-		// Parse KAlign results
-		//=============================
-		monitor.subTask( "Parsing results..." );
-		logger.debug( "Parsing KAlign results..." );
-		monitor.worked( 1 );
+	/**
+	 * Returns the number of alignments that were not found in the result
+	 * cache.
+	 * @return the number of cache misses
+	 */
+	public long getCacheMisses() {
+		return getCache().getMisses();
+	}
 
-		//We remove the first line since it caused erorrs with BioJava's
-		//ClustalW format parsing, and we know this is the format
-		resstr=resstr.substring( 42 );
+	/**
+	 * Removes all alignments from the result cache.
+	 */
+	public void clearCache() {
+		getCache().clear();
+	}
+
+	/**
+	 * Returns the metrics of the calls to the KAlign service: submit, poll
+	 * and fetch, and of parse and align-local.
+	 * @return the metrics of this manager
+	 */
+	public OperationMetrics getMetrics() {
+		return metrics;
+	}
 
-		//Set up a buffered reader for the contents
-		ByteArrayInputStream ins=new ByteArrayInputStream(
-				resstr.getBytes());
-		BufferedReader contents = new BufferedReader(
-				new InputStreamReader(ins));
+	/**
+	 * Waits for a job to finish, cancelling it if the monitor is cancelled.
+	 */
+	private <T> T waitFor(Future<T> job, IProgressMonitor monitor)
+			throws BioclipseException{
 
+		if (isLocalBackend()) {
+			monitor.beginTask( "Aligning sequences using the local KAlign",
+					IProgressMonitor.UNKNOWN );
+			monitor.subTask( "KAlign running locally" );
+		}
+		else {
+			monitor.beginTask( "Aligning sequences using KAlign Web service at EBI",
+					IProgressMonitor.UNKNOWN );
+			monitor.subTask( "KAlign running remotely" );
+		}
 		try {
+			while (true) {
+				if (monitor.isCanceled()) {
+					job.cancel( true );
+					throw new BioclipseException("KAlign interrupted.");
+				}
+				try {
+					return job.get( CANCEL_CHECK_INTERVAL, TimeUnit.MILLISECONDS );
+				} catch (TimeoutException e) {
+					// Still running, check the monitor again
+				}
+			}
+		} catch (InterruptedException e) {
+			job.cancel( true );
+			throw new BioclipseException("KAlign interrupted.");
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof BioclipseException)
+				throw (BioclipseException) cause;
+			throw new BioclipseException("KAlign service error: " + 
+					cause.getMessage());
+		} finally {
+			monitor.done();
+		}
+	}
 
-			if (type.equals( "P" )){
-				List<? extends ISequence> res;
-				res = parseKalignResult(contents,
-						ProteinTools.getAlphabet());
-				monitor.done();
-				return res;
+	/**
+	 * Returns the result type to fetch: the alignment in FASTA format if
+	 * the service offers it, and in ClustalW format otherwise. The service
+	 * is asked until it has answered once. If it cannot tell, ClustalW is
+	 * used for this job only. The service is asked under a lock of its own,
+	 * so that the other calls on the manager do not wait for it.
+	 */
+	private String getResultType(
+			JDispatcherService_PortType service,
+			String jobId) {
+
+		String known = resultType;
+		if (known != null)
+			return known;
+		synchronized (resultTypeLock) {
+			if (resultType != null)
+				return resultType;
+			WsResultType[] types;
+			try {
+				types = service.getResultTypes( jobId );
+			} catch (RemoteException e) {
+				logger.warn( "Could not get the KAlign result types", e );
+				return CLUSTALW_RESULT;
 			}
-			else {
-				List<? extends ISequence> res = parseKalignResult(contents,
-						DNATools.getDNA());
-				monitor.done();
-				return res;
+			String chosen = CLUSTALW_RESULT;
+			if (types != null) {
+				for (WsResultType type : types){
+					if (FASTA_RESULT.equals( type.getIdentifier() ))
+						chosen = FASTA_RESULT;
+				}
 			}
+			logger.debug( "Fetching KAlign results of type " + chosen );
+			resultType = chosen;
+			return chosen;
+		}
+	}
 
-		} catch (IOException e) {
-			throw new BioclipseException("KAlign results could not be parsed: " 
-		+ e.getMessage());
-		} catch (SAXException e) {
-			throw new BioclipseException("KAlign results could not be parsed: " 
-		+ e.getMessage());
+	private synchronized KalignJobScheduler getScheduler()
+			throws BioclipseException{
+
+		if (scheduler == null) {
+			try {
+				scheduler = new KalignJobScheduler(
+						new JDispatcherService_ServiceLocator()
+						.getJDispatcherServiceHttpPort(),
+						KalignJobScheduler.DEFAULT_MAX_JOBS,
+						KalignJobScheduler.DEFAULT_MIN_POLL_DELAY,
+						KalignJobScheduler.DEFAULT_MAX_POLL_DELAY,
+						metrics );
+			} catch (ServiceException e) {
+				throw new BioclipseException("KAlign service error: " + 
+						e.getMessage());
+			}
 		}
+		return scheduler;
+	}
 
+	private synchronized KalignResultCache getCache() {
+		if (cache == null) {
+			net.bioclipse.align.kalign.ws.Activator plugin
+			= net.bioclipse.align.kalign.ws.Activator.getDefault();
+			File directory = plugin == null ? null
+					: new File(plugin.getStateLocation().toFile(), "results");
+			cache = new KalignResultCache(directory,
+					KalignResultCache.DEFAULT_CAPACITY);
+		}
+		return cache;
+	}
 
-}
+	/**
+	 * Returns whether the local aligner is chosen in the preferences.
+	 */
+	private boolean isLocalBackend() {
+		net.bioclipse.align.kalign.ws.Activator plugin
+		= net.bioclipse.align.kalign.ws.Activator.getDefault();
+		return plugin != null && PreferenceConstants.BACKEND_LOCAL.equals(
+				plugin.getPreferenceStore().getString(
+						PreferenceConstants.BACKEND ) );
+	}
+
+	private synchronized ExecutorService getLocalJobs() {
+		if (localJobs == null) {
+			localAligner = new LocalAligner();
+			localJobs = Executors.newCachedThreadPool(
+					new DaemonThreadFactory("KAlign local job"));
+		}
+		return localJobs;
+	}
+
+	/**
+	 * Aligns sequences with the local aligner, keeping their names.
+	 */
+	private List<? extends ISequence> alignLocally(
+			List<? extends ISequence> sequenceList,
+			boolean protein)
+					throws BioclipseException{
 
+		String[] residues = new String[sequenceList.size()];
+		for (int i = 0; i < residues.length; i++){
+			residues[i] = sequenceList.get( i ).getPlainSequence();
+		}
 
-private List<? extends ISequence> parseKalignResult( BufferedReader contents,
-		Alphabet alphabet)
-				throws IOException, SAXException, BioclipseException {
+		String[] aligned;
+		long started = metrics.start();
+		try {
+			aligned = localAligner.align( residues, protein );
+			metrics.record( "align-local", started, 0 );
+		} catch (InterruptedException e) {
+			metrics.failed( "align-local", started );
+			throw new BioclipseException("KAlign interrupted.");
+		}
 
-	List<ISequence> sequences=new RecordableList<ISequence>();
+		IBiojavaManager biojava
+		= Activator.getDefault().getJavaBiojavaManager();
+		List<ISequence> sequences=new RecordableList<ISequence>();
+		for (int i = 0; i < aligned.length; i++){
+			String name = sequenceList.get( i ).getName();
+			sequences.add( protein
+					? biojava.proteinFromPlainSequence( aligned[i], name )
+					: biojava.DNAfromPlainSequence( aligned[i], name ) );
+		}
+		return sequences;
+	}
 
-	ClustalWAlignmentSAXParser parser =
-			new ClustalWAlignmentSAXParser();
+	/**
+	 * Checks that all aligned sequences are of the expected type.
+	 */
+	private static <S extends ISequence> List<S> cast(
+			List<? extends ISequence> sequences,
+			Class<S> resultType,
+			String typeName)
+					throws BioclipseException{
 
-	SequenceCollectionContentHandler handler =
-			new SequenceCollectionContentHandler(sequences, alphabet);
+		List<S> returnList=new RecordableList<S>();
+		for (ISequence seq : sequences){
+			if ( resultType.isInstance( seq ) ) {
+				returnList.add( resultType.cast( seq ) );
+			}else{
+				throw new BioclipseException("Not all results of Kalign " +
+						"WS are " + typeName + ".");
+			}
+		}
+		return returnList;
+	}
 
-	parser.setContentHandler(handler);
-	parser.parse(new InputSource(contents));
+	/**
+	 * Parses the result of a KAlign job, which is in FASTA format if it
+	 * starts with a '&gt;' and in ClustalW format otherwise.
+	 */
+	private List<? extends ISequence> parseResult(byte[] resultbytes,
+			Alphabet alphabet)
+					throws BioclipseException{
 
-	return sequences;
+		if (logger.isDebugEnabled())
+			logger.debug("KAlign results: " + resultbytes.length + " bytes");
 
-}
+		int start = 0;
+		while (start < resultbytes.length
+				&& Character.isWhitespace( (char) resultbytes[start] ))
+			start++;
+		long started = metrics.start();
+		try {
+			List<? extends ISequence> sequences
+			= start < resultbytes.length && resultbytes[start] == '>'
+			? FastaParser.parse( ByteBuffer.wrap( resultbytes ), alphabet )
+					: ClustalWParser.parse(resultbytes, alphabet);
+			metrics.record( "parse", started, resultbytes.length );
+			return sequences;
+		} catch (IOException e) {
+			metrics.failed( "parse", started );
+			throw new BioclipseException("KAlign results could not be parsed: " 
+		+ e.getMessage());
+		}
+	}
 }
 
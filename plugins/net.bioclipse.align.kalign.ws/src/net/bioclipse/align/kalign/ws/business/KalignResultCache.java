@@ -0,0 +1,322 @@
+/* *****************************************************************************
+ * Copyright (c) 2009 The Bioclipse Project and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * <http://www.eclipse.org/legal/epl-v10.html>
+ *
+ * Contact: http://www.bioclipse.net/
+ ******************************************************************************/
+package net.bioclipse.align.kalign.ws.business;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Logger;
+
+import uk.ac.ebi.jdispatcher.soap.InputParameters;
+
+/**
+ * Keeps the results of KAlign jobs by a hash of their input, so that
+ * aligning the same sequences with the same parameters again does not need
+ * a new job. The most recently used results are kept in memory, and all
+ * results are kept on disk if a directory is given, one file per result,
+ * up to a total size beyond which the results written first are removed.
+ * The cache is best effort: a result that cannot be read from or written to
+ * disk is only logged.
+ */
+public class KalignResultCache {
+
+    /** The default number of results kept in memory. */
+    public static final int DEFAULT_CAPACITY = 64;
+
+    /** The default largest total size in bytes of the results on disk. */
+    public static final long DEFAULT_MAX_DISK_SIZE = 64L * 1024 * 1024;
+
+    private static final String SUFFIX = ".aln";
+
+    private static final Logger logger
+        = Logger.getLogger(KalignResultCache.class);
+
+    private final File directory;
+    private final long maxDiskSize;
+    private final Map<String, byte[]> memory;
+    /** The sizes of the files on disk, those written first first. */
+    private final Map<String, Long> disk = new LinkedHashMap<String, Long>();
+    private long diskSize;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * Creates a cache that keeps at most {@link #DEFAULT_MAX_DISK_SIZE}
+     * bytes on disk.
+     *
+     * @param directory the directory to keep results in, or
+     *                  <code>null</code> to keep them in memory only
+     * @param capacity  the number of results kept in memory
+     */
+    public KalignResultCache(File directory, int capacity) {
+        this(directory, capacity, DEFAULT_MAX_DISK_SIZE);
+    }
+
+    /**
+     * @param directory   the directory to keep results in, or
+     *                    <code>null</code> to keep them in memory only
+     * @param capacity    the number of results kept in memory
+     * @param maxDiskSize the largest total size in bytes of the results on
+     *                    disk
+     */
+    public KalignResultCache( File directory,
+                              final int capacity,
+                              long maxDiskSize ) {
+        this.directory = directory;
+        this.maxDiskSize = maxDiskSize;
+        this.memory = new LinkedHashMap<String, byte[]>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            protected boolean removeEldestEntry(
+                                          Map.Entry<String, byte[]> eldest ) {
+                return size() > capacity;
+            }
+        };
+        if (directory != null) {
+            if ( !directory.isDirectory() && !directory.mkdirs() )
+                logger.warn( "Could not create KAlign cache directory "
+                             + directory );
+            index();
+        }
+    }
+
+    /**
+     * Returns the key of a job: the SHA-1 of its parameters and of its
+     * sequences with line endings and trailing white space normalised, as
+     * a hex string.
+     */
+    public static String key(InputParameters params) {
+        StringBuilder input = new StringBuilder();
+        input.append( params.getStype() ).append('\n')
+             .append( params.getFormat() ).append('\n')
+             .append( params.getGapopen() ).append('\n')
+             .append( params.getGapext() ).append('\n')
+             .append( params.getTermgap() ).append('\n')
+             .append( params.getBonus() ).append('\n');
+        String sequence = params.getSequence();
+        if (sequence != null)
+            for ( String line : sequence.split("\r?\n|\r") ) {
+                int end = line.length();
+                while ( end > 0
+                        && Character.isWhitespace( line.charAt(end - 1) ) )
+                    --end;
+                if (end > 0)
+                    input.append( line, 0, end ).append('\n');
+            }
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1")
+                                .digest( input.toString().getBytes("UTF-8") );
+            StringBuilder hex = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                hex.append( Character.forDigit(b >> 4 & 0xf, 16) )
+                   .append( Character.forDigit(b & 0xf, 16) );
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Returns the result kept for a key, or <code>null</code> if there is
+     * none.
+     */
+    public byte[] get(String key) {
+        byte[] result;
+        synchronized (memory) {
+            result = memory.get(key);
+        }
+        if (result == null && directory != null) {
+            result = read( file(key) );
+            if (result != null) {
+                synchronized (memory) {
+                    memory.put(key, result);
+                }
+            }
+        }
+        (result == null ? misses : hits).incrementAndGet();
+        return result;
+    }
+
+    /**
+     * Keeps a result.
+     */
+    public void put(String key, byte[] result) {
+        synchronized (memory) {
+            memory.put(key, result);
+        }
+        if ( directory != null && write( file(key), result ) ) {
+            synchronized (disk) {
+                remove(key);
+                disk.put( key, (long) result.length );
+                diskSize += result.length;
+                for ( Iterator<Map.Entry<String, Long>> oldest
+                          = disk.entrySet().iterator();
+                      diskSize > maxDiskSize && oldest.hasNext(); ) {
+                    Map.Entry<String, Long> evicted = oldest.next();
+                    oldest.remove();
+                    diskSize -= evicted.getValue();
+                    synchronized (memory) {
+                        memory.remove( evicted.getKey() );
+                    }
+                    delete( file( evicted.getKey() ) );
+                }
+            }
+        }
+    }
+
+    /**
+     * Removes all results, from memory and from disk.
+     */
+    public void clear() {
+        synchronized (memory) {
+            memory.clear();
+        }
+        if (directory != null) {
+            synchronized (disk) {
+                File[] files = directory.listFiles();
+                if (files != null)
+                    for (File file : files)
+                        if ( file.getName().endsWith(SUFFIX) )
+                            delete(file);
+                disk.clear();
+                diskSize = 0;
+            }
+        }
+    }
+
+    /**
+     * Returns the total size in bytes of the results on disk.
+     */
+    public long getDiskSize() {
+        synchronized (disk) {
+            return diskSize;
+        }
+    }
+
+    /**
+     * Returns the number of lookups that found a result.
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * Returns the number of lookups that found no result.
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * Reads the sizes of the results already on disk, oldest first.
+     */
+    private void index() {
+        File[] files = directory.listFiles();
+        if (files == null)
+            return;
+        Arrays.sort( files, new Comparator<File>() {
+            public int compare(File a, File b) {
+                long x = a.lastModified(), y = b.lastModified();
+                return x < y ? -1 : x > y ? 1 : 0;
+            }
+        });
+        for (File file : files) {
+            String name = file.getName();
+            if ( name.endsWith(SUFFIX) ) {
+                disk.put( name.substring( 0, name.length() - SUFFIX.length() ),
+                          file.length() );
+                diskSize += file.length();
+            }
+        }
+    }
+
+    private void remove(String key) {
+        Long size = disk.remove(key);
+        if (size != null)
+            diskSize -= size;
+    }
+
+    private File file(String key) {
+        return new File(directory, key + SUFFIX);
+    }
+
+    private static void delete(File file) {
+        if ( file.exists() && !file.delete() )
+            logger.warn( "Could not delete " + file );
+    }
+
+    private static byte[] read(File file) {
+        if ( !file.isFile() )
+            return null;
+        try {
+            InputStream in = new FileInputStream(file);
+            try {
+                byte[] result = new byte[(int) file.length()];
+                int read = 0;
+                while (read < result.length) {
+                    int n = in.read(result, read, result.length - read);
+                    if (n < 0)
+                        return null;
+                    read += n;
+                }
+                return result;
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            logger.warn( "Could not read cached KAlign result " + file, e );
+            return null;
+        }
+    }
+
+    /**
+     * Writes to a temporary file first, so that a result that is only
+     * partly written is never read.
+     */
+    private static boolean write(File file, byte[] result) {
+        File temp = new File( file.getParentFile(),
+                              file.getName() + ".tmp"
+                              + Thread.currentThread().getId() );
+        try {
+            OutputStream out = new FileOutputStream(temp);
+            try {
+                out.write(result);
+            } finally {
+                out.close();
+            }
+            if ( !temp.renameTo(file) ) {
+                file.delete();
+                if ( !temp.renameTo(file) )
+                    throw new IOException( "Could not rename " + temp );
+            }
+            return true;
+        } catch (IOException e) {
+            logger.warn( "Could not cache KAlign result in " + file, e );
+            temp.delete();
+            return false;
+        }
+    }
+}
@@ -0,0 +1,807 @@
+/* *****************************************************************************
+ * Copyright (c) 2009 The Bioclipse Project and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * <http://www.eclipse.org/legal/epl-v10.html>
+ *
+ * Contact: http://www.bioclipse.net/
+ ******************************************************************************/
+package net.bioclipse.align.kalign.ws.business;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import net.bioclipse.biojava.business.DaemonThreadFactory;
+
+/**
+ * A progressive multiple sequence aligner in the style of KAlign, for
+ * aligning without the Web service. It works in three stages:
+ * <ol>
+ *   <li>the distances between all pairs of sequences are estimated from the
+ *       fraction of short words they share,</li>
+ *   <li>a guide tree is built from the distances by UPGMA, and</li>
+ *   <li>the sequences are aligned to each other as profiles following the
+ *       guide tree, from the leaves up, with affine gap penalties.</li>
+ * </ol>
+ * The rows of the distance matrix are computed in parallel, and so are the
+ * profile alignments of the guide tree nodes that do not depend on each
+ * other. An instance may be shared between threads.
+ */
+public class LocalAligner {
+
+    private static final char GAP = '-';
+
+    private static final String PROTEIN_ALPHABET = "ARNDCQEGHILKMFPSTWYVBZX*";
+
+    /**
+     * The lower triangle of BLOSUM62 for the alphabet without the stop,
+     * which scores 1 against itself and -4 against anything else.
+     */
+    private static final String[] BLOSUM62 = {
+        " 4",
+        "-1  5",
+        "-2  0  6",
+        "-2 -2  1  6",
+        " 0 -3 -3 -3  9",
+        "-1  1  0  0 -3  5",
+        "-1  0  0  2 -4  2  5",
+        " 0 -2  0 -1 -3 -2 -2  6",
+        "-2  0  1 -1 -3  0  0 -2  8",
+        "-1 -3 -3 -3 -1 -3 -3 -4 -3  4",
+        "-1 -2 -3 -4 -1 -2 -3 -4 -3  2  4",
+        "-1  2  0 -1 -3  1  1 -2 -1 -3 -2  5",
+        "-1 -1 -2 -3 -1  0 -2 -3 -2  1  2 -1  5",
+        "-2 -3 -3 -3 -2 -3 -3 -3 -1  0  0 -3  0  6",
+        "-1 -2 -2 -1 -3 -1 -1 -2 -2 -3 -3 -1 -2 -4  7",
+        " 1 -1  1  0 -1  0  0  0 -1 -2 -2  0 -1 -2 -1  4",
+        " 0 -1  0 -1 -1 -1 -1 -2 -2 -1 -1 -1 -1 -2 -1  1  5",
+        "-3 -3 -4 -4 -2 -2 -3 -2 -2 -3 -2 -3 -1  1 -4 -3 -2 11",
+        "-2 -2 -2 -3 -2 -1 -2 -3  2 -1 -1 -2 -1  3 -3 -2 -2  2  7",
+        " 0 -3 -3 -3 -1 -2 -2 -3 -3  3  1 -2  1 -1 -2 -2  0 -3 -1  4",
+        "-2 -1  3  4 -3  0  1 -1  0 -3 -4  0 -3 -3 -2  0 -1 -4 -3 -3  4",
+        "-1  0  0  1 -3  3  4 -2  0 -3 -3  1 -1 -3 -1  0 -1 -3 -2 -2  1  4",
+        " 0 -1 -1 -1 -2 -1 -1 -1 -1 -1 -1 -1 -1 -1 -2  0  0 -2 -1 -1 -1 -1 -1"
+    };
+
+    private static final String DNA_ALPHABET = "ACGTN";
+
+    private static final Scoring PROTEIN
+        = new Scoring( PROTEIN_ALPHABET, 'X', blosum62(), 11, 1, 2 );
+
+    private static final Scoring DNA
+        = new Scoring( DNA_ALPHABET, 'N', dnaMatrix(), 10, 1, 4 );
+
+    private static final float NONE = -1e30f;
+
+    /**
+     * The default largest number of cells of the dynamic programming of a
+     * pair of profiles kept for the traceback, one byte per state each.
+     */
+    public static final long DEFAULT_MAX_TRACEBACK_CELLS = 1L << 22;
+
+    /** The states of the dynamic programming, see {@link #align}. */
+    private static final byte M = 0, X = 1, Y = 2;
+
+    private final ExecutorService executor;
+    private final long maxTracebackCells;
+
+    /**
+     * Creates an aligner using one thread per processor.
+     */
+    public LocalAligner() {
+        this( Runtime.getRuntime().availableProcessors() );
+    }
+
+    /**
+     * @param threads the number of threads to run the stages on
+     */
+    public LocalAligner(int threads) {
+        this( threads, DEFAULT_MAX_TRACEBACK_CELLS );
+    }
+
+    /**
+     * @param threads           the number of threads to run the stages on
+     * @param maxTracebackCells the largest number of cells aligned with a
+     *                          full traceback; larger pairs of profiles are
+     *                          split, using memory linear in their lengths
+     */
+    public LocalAligner(int threads, long maxTracebackCells) {
+        this.maxTracebackCells = maxTracebackCells;
+        executor = Executors.newFixedThreadPool(
+            threads, new DaemonThreadFactory("KAlign local aligner") );
+    }
+
+    /**
+     * Aligns sequences. Residues are matched without regard to case, and
+     * are kept as they are in the alignment.
+     *
+     * @param sequences the sequences to align
+     * @param protein   <code>true</code> for protein, <code>false</code>
+     *                  for DNA or RNA
+     * @return the aligned sequences, in the same order, with gaps as
+     *         <code>-</code>
+     * @throws InterruptedException if interrupted while waiting for a stage
+     */
+    public String[] align(String[] sequences, boolean protein)
+        throws InterruptedException {
+
+        Scoring scoring = protein ? PROTEIN : DNA;
+        int n = sequences.length;
+        if (n == 0)
+            return new String[0];
+
+        byte[][] encoded = new byte[n][];
+        for ( int i = 0; i < n; ++i )
+            encoded[i] = scoring.encode( sequences[i] );
+
+        float[][] distances = distances(encoded, scoring);
+        Node root = guideTree(distances);
+
+        List<List<Node>> levels = new ArrayList<List<Node>>();
+        root.collect(levels);
+        for ( int level = 1; level < levels.size(); ++level ) {
+            List<Callable<Void>> merges = new ArrayList<Callable<Void>>();
+            for ( final Node node : levels.get(level) )
+                merges.add( node.merge(sequences, scoring, maxTracebackCells) );
+            invokeAll(merges);
+        }
+        if (root.profile == null)
+            root.profile = Profile.leaf( root.leaf, sequences );
+
+        String[] aligned = new String[n];
+        for ( int row = 0; row < n; ++row )
+            aligned[ root.profile.members[row] ]
+                = new String( root.profile.rows[row] );
+        return aligned;
+    }
+
+    /**
+     * Stops the threads of the aligner.
+     */
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Computes the distance between each pair of sequences as one minus the
+     * fraction of the words of the shorter sequence found in the other, one
+     * row at a time in parallel.
+     */
+    private float[][] distances(byte[][] encoded, final Scoring scoring)
+        throws InterruptedException {
+
+        final int n = encoded.length;
+        final int[][] words = new int[n][];
+        for ( int i = 0; i < n; ++i )
+            words[i] = scoring.words( encoded[i] );
+
+        final float[][] distances = new float[n][n];
+        List<Callable<Void>> rows = new ArrayList<Callable<Void>>();
+        for ( int r = 0; r < n; ++r ) {
+            final int i = r;
+            rows.add( new Callable<Void>() {
+                public Void call() {
+                    for ( int j = i + 1; j < n; ++j ) {
+                        float distance = distance( words[i], words[j] );
+                        distances[i][j] = distance;
+                        distances[j][i] = distance;
+                    }
+                    return null;
+                }
+            } );
+        }
+        invokeAll(rows);
+        return distances;
+    }
+
+    /**
+     * Returns one minus the fraction of shared words, with <code>a</code>
+     * and <code>b</code> sorted.
+     */
+    static float distance(int[] a, int[] b) {
+        int shorter = Math.min(a.length, b.length);
+        if (shorter == 0)
+            return a.length == b.length ? 0 : 1;
+        int shared = 0;
+        for ( int i = 0, j = 0; i < a.length && j < b.length; ) {
+            if (a[i] < b[j])
+                ++i;
+            else if (a[i] > b[j])
+                ++j;
+            else {
+                ++shared;
+                ++i;
+                ++j;
+            }
+        }
+        return 1 - (float) shared / shorter;
+    }
+
+    /**
+     * Builds the guide tree by UPGMA.
+     */
+    private static Node guideTree(float[][] distances) {
+        int n = distances.length;
+        float[][] d = new float[n][];
+        Node[] clusters = new Node[n];
+        for ( int i = 0; i < n; ++i ) {
+            d[i] = distances[i].clone();
+            clusters[i] = new Node(i);
+        }
+        for ( int remaining = n; remaining > 1; --remaining ) {
+            int bestI = -1, bestJ = -1;
+            float best = Float.MAX_VALUE;
+            for ( int i = 0; i < n; ++i ) {
+                if (clusters[i] == null)
+                    continue;
+                for ( int j = i + 1; j < n; ++j )
+                    if ( clusters[j] != null && d[i][j] < best ) {
+                        best = d[i][j];
+                        bestI = i;
+                        bestJ = j;
+                    }
+            }
+            Node a = clusters[bestI], b = clusters[bestJ];
+            for ( int k = 0; k < n; ++k ) {
+                if ( clusters[k] == null || k == bestI || k == bestJ )
+                    continue;
+                float merged = ( d[bestI][k] * a.size + d[bestJ][k] * b.size )
+                               / ( a.size + b.size );
+                d[bestI][k] = merged;
+                d[k][bestI] = merged;
+            }
+            clusters[bestI] = new Node(a, b);
+            clusters[bestJ] = null;
+        }
+        for (Node node : clusters)
+            if (node != null)
+                return node;
+        throw new IllegalStateException("No guide tree");
+    }
+
+    private void invokeAll(List<Callable<Void>> tasks)
+        throws InterruptedException {
+
+        for ( Future<Void> task : executor.invokeAll(tasks) ) {
+            try {
+                task.get();
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof RuntimeException)
+                    throw (RuntimeException) cause;
+                if (cause instanceof Error)
+                    throw (Error) cause;
+                throw new IllegalStateException(cause);
+            }
+        }
+    }
+
+    /**
+     * Aligns two profiles with affine gap penalties, penalising end gaps
+     * like any other gaps.
+     */
+    static Profile align( Profile a,
+                          Profile b,
+                          Scoring scoring,
+                          long maxTracebackCells ) {
+
+        int la = a.length(), lb = b.length();
+        PairAlignment pair = new PairAlignment( a.scores(scoring),
+                                                b.frequencies(scoring),
+                                                scoring, maxTracebackCells );
+        pair.align( 0, la, 0, lb, M, M );
+
+        int[] members = new int[ a.members.length + b.members.length ];
+        System.arraycopy( a.members, 0, members, 0, a.members.length );
+        System.arraycopy( b.members, 0, members, a.members.length,
+                          b.members.length );
+        int length = pair.length;
+        char[][] rows = new char[members.length][length];
+        int[] ia = new int[ a.rows.length ], ib = new int[ b.rows.length ];
+        for ( int column = 0; column < length; ++column ) {
+            for ( int r = 0; r < a.rows.length; ++r )
+                rows[r][column] = pair.fromA[column] ? a.rows[r][ ia[r]++ ]
+                                                     : GAP;
+            for ( int r = 0; r < b.rows.length; ++r )
+                rows[a.rows.length + r][column]
+                    = pair.fromB[column] ? b.rows[r][ ib[r]++ ] : GAP;
+        }
+        return new Profile(members, rows);
+    }
+
+    private static byte best(float m, float x, float y) {
+        if (m >= x && m >= y)
+            return M;
+        return x >= y ? X : Y;
+    }
+
+    private static float value(byte state, float m, float x, float y) {
+        return state == M ? m : state == X ? x : y;
+    }
+
+    private static float max(float m, float x, float y) {
+        return Math.max( m, Math.max(x, y) );
+    }
+
+    /**
+     * The alignment of the columns of two profiles, built column by column
+     * from the first. Parts of the alignment that fit in
+     * <code>maxTracebackCells</code> are aligned by the full dynamic
+     * programming with a traceback. Larger parts are split in two at the
+     * middle column of the first profile, where the best alignment crosses
+     * it as found from the scores of the last row of a forward and of a
+     * backward pass, following Myers and Miller, so that the memory needed
+     * grows with the lengths of the profiles rather than with their
+     * product.
+     * <p>
+     * Each part is aligned given the state of the columns just before and
+     * just after it, which is {@link #M} at the ends of the profiles and
+     * {@link #X} where a part is split inside a gap, so that a gap across
+     * the split is charged one gap opening.
+     */
+    private static class PairAlignment {
+
+        final float[][] pa;
+        final float[][] fb;
+        final float open;
+        final float extend;
+        final long maxTracebackCells;
+        final boolean[] fromA;
+        final boolean[] fromB;
+        int length;
+
+        PairAlignment( float[][] pa,
+                       float[][] fb,
+                       Scoring scoring,
+                       long maxTracebackCells ) {
+            this.pa = pa;
+            this.fb = fb;
+            this.open = scoring.gapOpen;
+            this.extend = scoring.gapExtend;
+            this.maxTracebackCells = maxTracebackCells;
+            fromA = new boolean[ pa.length + fb.length ];
+            fromB = new boolean[ pa.length + fb.length ];
+        }
+
+        private void append(boolean a, boolean b) {
+            fromA[length] = a;
+            fromB[length] = b;
+            ++length;
+        }
+
+        private float score(int i, int j) {
+            float[] column = pa[i], other = fb[j];
+            float score = 0;
+            for ( int k = 0; k < column.length; ++k )
+                score += column[k] * other[k];
+            return score;
+        }
+
+        /**
+         * Aligns the columns <code>a0</code> up to <code>a1</code> of the
+         * first profile to the columns <code>b0</code> up to
+         * <code>b1</code> of the second.
+         *
+         * @param before the state of the column before the part
+         * @param after  the state of the column after the part
+         */
+        void align( int a0, int a1, int b0, int b1, byte before, byte after ) {
+            int la = a1 - a0, lb = b1 - b0;
+            if ( la < 2 || (long) (la + 1) * (lb + 1) <= maxTracebackCells ) {
+                alignWithTraceback( a0, a1, b0, b1, before, after );
+                return;
+            }
+
+            int mid = a0 + la / 2;
+            float[][] forward  = lastRow( a0, mid, b0, b1, before, false ),
+                      backward = lastRow( mid, a1, b0, b1, after, true );
+            float bestScore = Float.NEGATIVE_INFINITY;
+            int bestJ = 0;
+            boolean inGap = false;
+            for ( int j = 0; j <= lb; ++j ) {
+                int k = lb - j;
+                float through = max( forward[M][j], forward[X][j],
+                                     forward[Y][j] )
+                                + max( backward[M][k], backward[X][k],
+                                       backward[Y][k] );
+                // A gap in b crossing the middle, opened only once
+                float gap = forward[X][j] + backward[X][k] + open - extend;
+                if (through > bestScore) {
+                    bestScore = through;
+                    bestJ = j;
+                    inGap = false;
+                }
+                if (gap > bestScore) {
+                    bestScore = gap;
+                    bestJ = j;
+                    inGap = true;
+                }
+            }
+
+            if (inGap) {
+                align( a0, mid - 1, b0, b0 + bestJ, before, X );
+                append( true, false );
+                append( true, false );
+                align( mid + 1, a1, b0 + bestJ, b1, X, after );
+            }
+            else {
+                align( a0, mid, b0, b0 + bestJ, before, M );
+                align( mid, a1, b0 + bestJ, b1, M, after );
+            }
+        }
+
+        /**
+         * Returns the scores of M, X and Y for the last row of the dynamic
+         * programming over a part, with the columns of the part taken from
+         * the last if <code>backward</code>.
+         */
+        private float[][] lastRow( int a0, int a1, int b0, int b1,
+                                   byte before, boolean backward ) {
+            int la = a1 - a0, lb = b1 - b0;
+            float[] m     = new float[lb + 1], prevM = new float[lb + 1],
+                    x     = new float[lb + 1], prevX = new float[lb + 1],
+                    y     = new float[lb + 1], prevY = new float[lb + 1];
+
+            firstRow( m, x, y, before );
+            for ( int i = 1; i <= la; ++i ) {
+                float[] swap;
+                swap = prevM; prevM = m; m = swap;
+                swap = prevX; prevX = x; x = swap;
+                swap = prevY; prevY = y; y = swap;
+
+                int ai = backward ? a1 - i : a0 + i - 1;
+                m[0] = NONE;
+                x[0] = max( prevM[0] - open, prevX[0] - extend,
+                            prevY[0] - open );
+                y[0] = NONE;
+                for ( int j = 1; j <= lb; ++j ) {
+                    int bj = backward ? b1 - j : b0 + j - 1;
+                    m[j] = score( ai, bj )
+                           + max( prevM[j - 1], prevX[j - 1], prevY[j - 1] );
+                    x[j] = max( prevM[j] - open, prevX[j] - extend,
+                                prevY[j] - open );
+                    y[j] = max( m[j - 1] - open, x[j - 1] - open,
+                                y[j - 1] - extend );
+                }
+            }
+            return new float[][] { m, x, y };
+        }
+
+        /**
+         * Fills in the first row of the dynamic programming, where the
+         * corner is in the state of the column before the part.
+         */
+        private void firstRow(float[] m, float[] x, float[] y, byte before) {
+            m[0] = before == M ? 0 : NONE;
+            x[0] = before == X ? 0 : NONE;
+            y[0] = before == Y ? 0 : NONE;
+            for ( int j = 1; j < m.length; ++j ) {
+                m[j] = NONE;
+                x[j] = NONE;
+                y[j] = max( m[j - 1] - open, x[j - 1] - open,
+                            y[j - 1] - extend );
+            }
+        }
+
+        /**
+         * Aligns a part by the full dynamic programming, keeping the state
+         * each cell came from.
+         */
+        private void alignWithTraceback( int a0, int a1, int b0, int b1,
+                                         byte before, byte after ) {
+            int la = a1 - a0, lb = b1 - b0, width = lb + 1;
+
+            // Traceback: the state each cell of M, X and Y came from, where
+            // M aligns two columns, X aligns a column of a to a gap and Y a
+            // column of b to a gap
+            byte[] fromM = new byte[(la + 1) * width],
+                   fromX = new byte[(la + 1) * width],
+                   fromY = new byte[(la + 1) * width];
+
+            float[] m     = new float[width], prevM = new float[width],
+                    x     = new float[width], prevX = new float[width],
+                    y     = new float[width], prevY = new float[width];
+
+            firstRow( m, x, y, before );
+            for ( int j = 1; j <= lb; ++j )
+                fromY[j] = best( m[j - 1] - open, x[j - 1] - open,
+                                 y[j - 1] - extend );
+
+            for ( int i = 1; i <= la; ++i ) {
+                float[] swap;
+                swap = prevM; prevM = m; m = swap;
+                swap = prevX; prevX = x; x = swap;
+                swap = prevY; prevY = y; y = swap;
+
+                byte state = best( prevM[0] - open, prevX[0] - extend,
+                                   prevY[0] - open );
+                m[0] = NONE;
+                x[0] = value( state, prevM[0] - open, prevX[0] - extend,
+                              prevY[0] - open );
+                y[0] = NONE;
+                fromX[i * width] = state;
+
+                for ( int j = 1; j <= lb; ++j ) {
+                    int cell = i * width + j;
+
+                    state = best( prevM[j - 1], prevX[j - 1], prevY[j - 1] );
+                    m[j] = score( a0 + i - 1, b0 + j - 1 )
+                           + value( state, prevM[j - 1], prevX[j - 1],
+                                    prevY[j - 1] );
+                    fromM[cell] = state;
+
+                    state = best( prevM[j] - open, prevX[j] - extend,
+                                  prevY[j] - open );
+                    x[j] = value( state, prevM[j] - open, prevX[j] - extend,
+                                  prevY[j] - open );
+                    fromX[cell] = state;
+
+                    state = best( m[j - 1] - open, x[j - 1] - open,
+                                  y[j - 1] - extend );
+                    y[j] = value( state, m[j - 1] - open, x[j - 1] - open,
+                                  y[j - 1] - extend );
+                    fromY[cell] = state;
+                }
+            }
+
+            // Trace back from the best of the three states in the last
+            // cell, where a gap going on after the part is not opened again
+            float joined = open - extend;
+            byte state = best( m[lb],
+                               after == X ? x[lb] + joined : x[lb],
+                               after == Y ? y[lb] + joined : y[lb] );
+            boolean[] a = new boolean[la + lb], b = new boolean[la + lb];
+            int steps = 0;
+            for ( int i = la, j = lb; i > 0 || j > 0; ++steps ) {
+                int cell = i * width + j;
+                if (state == M) {
+                    a[steps] = true;
+                    b[steps] = true;
+                    state = fromM[cell];
+                    --i;
+                    --j;
+                }
+                else if (state == X) {
+                    a[steps] = true;
+                    state = fromX[cell];
+                    --i;
+                }
+                else {
+                    b[steps] = true;
+                    state = fromY[cell];
+                    --j;
+                }
+            }
+            while ( steps > 0 ) {
+                --steps;
+                append( a[steps], b[steps] );
+            }
+        }
+    }
+
+    private static int[][] blosum62() {
+        int size = PROTEIN_ALPHABET.length(), stop = size - 1;
+        int[][] matrix = new int[size][size];
+        for ( int i = 0; i < stop; ++i ) {
+            String[] values = BLOSUM62[i].trim().split("\\s+");
+            for ( int j = 0; j <= i; ++j ) {
+                matrix[i][j] = Integer.parseInt( values[j] );
+                matrix[j][i] = matrix[i][j];
+            }
+            matrix[i][stop] = -4;
+            matrix[stop][i] = -4;
+        }
+        matrix[stop][stop] = 1;
+        return matrix;
+    }
+
+    private static int[][] dnaMatrix() {
+        int size = DNA_ALPHABET.length();
+        int[][] matrix = new int[size][size];
+        for ( int i = 0; i < size; ++i )
+            for ( int j = 0; j < size; ++j )
+                matrix[i][j] = i == size - 1 || j == size - 1 ? 0
+                               : i == j ? 5 : -4;
+        return matrix;
+    }
+
+    /**
+     * A substitution matrix with its alphabet and gap penalties.
+     */
+    static class Scoring {
+
+        final String alphabet;
+        final int[][] matrix;
+        final float gapOpen;
+        final float gapExtend;
+        final int wordLength;
+        private final byte[] codes = new byte[128];
+
+        Scoring( String alphabet,
+                 char unknown,
+                 int[][] matrix,
+                 float gapOpen,
+                 float gapExtend,
+                 int wordLength ) {
+            this.alphabet = alphabet;
+            this.matrix = matrix;
+            this.gapOpen = gapOpen;
+            this.gapExtend = gapExtend;
+            this.wordLength = wordLength;
+            Arrays.fill( codes, (byte) alphabet.indexOf(unknown) );
+            for ( int i = 0; i < alphabet.length(); ++i ) {
+                char c = alphabet.charAt(i);
+                codes[c] = (byte) i;
+                codes[ Character.toLowerCase(c) ] = (byte) i;
+            }
+            if ( alphabet.indexOf('T') >= 0 ) {
+                codes['U'] = codes['T'];
+                codes['u'] = codes['T'];
+            }
+            codes[GAP] = -1;
+            codes['~'] = -1;
+            codes['.'] = -1;
+        }
+
+        /**
+         * Returns the code of each residue, or -1 for a gap.
+         */
+        byte[] encode(String residues) {
+            byte[] encoded = new byte[ residues.length() ];
+            for ( int i = 0; i < encoded.length; ++i ) {
+                char c = residues.charAt(i);
+                encoded[i] = c < 128 ? codes[c] : codes['X' & 0x7f];
+            }
+            return encoded;
+        }
+
+        /**
+         * Returns the words of a sequence as sorted numbers, skipping gaps.
+         */
+        int[] words(byte[] encoded) {
+            byte[] residues = new byte[encoded.length];
+            int length = 0;
+            for (byte code : encoded)
+                if (code >= 0)
+                    residues[length++] = code;
+            if (length < wordLength)
+                return new int[0];
+            int[] words = new int[length - wordLength + 1];
+            int size = alphabet.length();
+            for ( int i = 0; i < words.length; ++i ) {
+                int word = 0;
+                for ( int k = 0; k < wordLength; ++k )
+                    word = word * size + residues[i + k];
+                words[i] = word;
+            }
+            Arrays.sort(words);
+            return words;
+        }
+    }
+
+    /**
+     * Aligned rows, with the index of the sequence of each row.
+     */
+    static class Profile {
+
+        final int[] members;
+        final char[][] rows;
+
+        Profile(int[] members, char[][] rows) {
+            this.members = members;
+            this.rows = rows;
+        }
+
+        static Profile leaf(int sequence, String[] sequences) {
+            return new Profile( new int[] { sequence },
+                                new char[][] { sequences[sequence]
+                                                   .toCharArray() } );
+        }
+
+        int length() {
+            return rows[0].length;
+        }
+
+        /**
+         * Returns the fraction of each residue in each column, counting
+         * gaps as nothing.
+         */
+        float[][] frequencies(Scoring scoring) {
+            int size = scoring.alphabet.length();
+            float[][] frequencies = new float[ length() ][size];
+            float weight = 1f / rows.length;
+            for (char[] row : rows) {
+                byte[] codes = scoring.encode( new String(row) );
+                for ( int column = 0; column < codes.length; ++column )
+                    if (codes[column] >= 0)
+                        frequencies[column][ codes[column] ] += weight;
+            }
+            return frequencies;
+        }
+
+        /**
+         * Returns for each column the expected score against each residue.
+         */
+        float[][] scores(Scoring scoring) {
+            float[][] frequencies = frequencies(scoring);
+            int size = scoring.alphabet.length();
+            float[][] scores = new float[ frequencies.length ][size];
+            for ( int column = 0; column < frequencies.length; ++column )
+                for ( int residue = 0; residue < size; ++residue ) {
+                    float f = frequencies[column][residue];
+                    if (f == 0)
+                        continue;
+                    int[] row = scoring.matrix[residue];
+                    for ( int other = 0; other < size; ++other )
+                        scores[column][other] += f * row[other];
+                }
+            return scores;
+        }
+    }
+
+    /**
+     * A node of the guide tree.
+     */
+    private static class Node {
+
+        final int leaf;
+        final Node left;
+        final Node right;
+        final int size;
+        volatile Profile profile;
+
+        Node(int leaf) {
+            this.leaf = leaf;
+            this.left = null;
+            this.right = null;
+            this.size = 1;
+        }
+
+        Node(Node left, Node right) {
+            this.leaf = -1;
+            this.left = left;
+            this.right = right;
+            this.size = left.size + right.size;
+        }
+
+        /**
+         * Adds the nodes of the subtree to the list of their level, where
+         * leaves are on level 0 and every other node is one level above its
+         * highest child, and returns the level of this node.
+         */
+        int collect(List<List<Node>> levels) {
+            int level = left == null ? 0
+                        : 1 + Math.max( left.collect(levels),
+                                        right.collect(levels) );
+            while ( levels.size() <= level )
+                levels.add( new ArrayList<Node>() );
+            levels.get(level).add(this);
+            return level;
+        }
+
+        Callable<Void> merge( final String[] sequences,
+                              final Scoring scoring,
+                              final long maxTracebackCells ) {
+            return new Callable<Void>() {
+                public Void call() {
+                    profile = align( profile(left, sequences),
+                                     profile(right, sequences),
+                                     scoring, maxTracebackCells );
+                    return null;
+                }
+            };
+        }
+
+        private static Profile profile(Node node, String[] sequences) {
+            return node.left == null ? Profile.leaf(node.leaf, sequences)
+                                     : node.profile;
+        }
+    }
+}
@@ -0,0 +1,47 @@
+/* *****************************************************************************
+ * Copyright (c) 2009 The Bioclipse Project and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * <http://www.eclipse.org/legal/epl-v10.html>
+ *
+ * Contact: http://www.bioclipse.net/
+ ******************************************************************************/
+package net.bioclipse.align.kalign.ws.preferences;
+
+import net.bioclipse.align.kalign.ws.Activator;
+
+import org.eclipse.jface.preference.FieldEditorPreferencePage;
+import org.eclipse.jface.preference.RadioGroupFieldEditor;
+import org.eclipse.ui.IWorkbench;
+import org.eclipse.ui.IWorkbenchPreferencePage;
+
+/**
+ * Lets the user choose where KAlign alignments are run.
+ */
+public class KalignPreferencePage extends FieldEditorPreferencePage
+                                  implements IWorkbenchPreferencePage {
+
+    public KalignPreferencePage() {
+        super(GRID);
+        setPreferenceStore( Activator.getDefault().getPreferenceStore() );
+        setDescription( "Settings for aligning sequences with KAlign." );
+    }
+
+    public void createFieldEditors() {
+        addField( new RadioGroupFieldEditor(
+            PreferenceConstants.BACKEND,
+            "Align sequences",
+            1,
+            new String[][] {
+                { "Remotely, using the KAlign Web service at EBI",
+                  PreferenceConstants.BACKEND_REMOTE },
+                { "Locally, without network access",
+                  PreferenceConstants.BACKEND_LOCAL } },
+            getFieldEditorParent(),
+            true ) );
+    }
+
+    public void init(IWorkbench workbench) {
+    }
+}
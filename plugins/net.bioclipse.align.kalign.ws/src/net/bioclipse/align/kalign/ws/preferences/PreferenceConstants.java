@@ -0,0 +1,26 @@
+/* *****************************************************************************
+ * Copyright (c) 2009 The Bioclipse Project and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * <http://www.eclipse.org/legal/epl-v10.html>
+ *
+ * Contact: http://www.bioclipse.net/
+ ******************************************************************************/
+package net.bioclipse.align.kalign.ws.preferences;
+
+/**
+ * Keys and values of the KAlign preferences.
+ */
+public class PreferenceConstants {
+
+    /** Where alignments are run: {@link #BACKEND_REMOTE} or
+     *  {@link #BACKEND_LOCAL}. */
+    public static final String BACKEND = "backend";
+
+    /** Align with the KAlign Web service at EBI. */
+    public static final String BACKEND_REMOTE = "remote";
+
+    /** Align in process, without network access. */
+    public static final String BACKEND_LOCAL = "local";
+}
@@ -0,0 +1,187 @@
+/* *****************************************************************************
+ * Copyright (c) 2009 The Bioclipse Project and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * <http://www.eclipse.org/legal/epl-v10.html>
+ *
+ * Contact: http://www.bioclipse.net/
+ ******************************************************************************/
+package net.bioclipse.align.kalign.ws.util;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import net.bioclipse.biojava.business.Activator;
+import net.bioclipse.biojava.business.IBiojavaManager;
+import net.bioclipse.core.domain.ISequence;
+
+import org.biojava.bio.seq.DNATools;
+import org.biojava.bio.seq.RNATools;
+import org.biojava.bio.symbol.Alphabet;
+
+/**
+ * Reads an alignment in ClustalW format, as returned by KAlign, in a single
+ * pass over its bytes. The first line is the header and is skipped. The
+ * alignment follows in blocks separated by blank lines, each block holding
+ * one line per sequence, in the same order in every block. The residues of
+ * each line are appended to those of its sequence from earlier blocks.
+ * Lines starting with white space mark conserved columns and are skipped,
+ * as is the residue count that may end a line.
+ */
+public class ClustalWParser {
+
+    /**
+     * The name and the residues read so far of one sequence.
+     */
+    private static class Row {
+
+        final String name;
+        char[] residues = new char[256];
+        int length;
+
+        Row(String name) {
+            this.name = name;
+        }
+
+        void append(byte[] bytes, int start, int end) {
+            int needed = length + end - start;
+            if (needed > residues.length) {
+                char[] grown = new char[ Math.max(needed,
+                                                  residues.length * 2) ];
+                System.arraycopy(residues, 0, grown, 0, length);
+                residues = grown;
+            }
+            for ( int i = start; i < end; ++i )
+                residues[length++] = (char) bytes[i];
+        }
+
+        /**
+         * Returns whether the bytes from <code>start</code> to
+         * <code>end</code> spell the name of this row.
+         */
+        boolean isNamed(byte[] bytes, int start, int end) {
+            if (end - start != name.length())
+                return false;
+            for ( int i = start; i < end; ++i )
+                if ( bytes[i] != name.charAt(i - start) )
+                    return false;
+            return true;
+        }
+    }
+
+    private ClustalWParser() {
+    }
+
+    /**
+     * Parses an alignment into sequences of the given alphabet.
+     *
+     * @param bytes    the alignment in ClustalW format
+     * @param alphabet the alphabet of the sequences
+     * @return the aligned sequences, in the order of the alignment
+     * @throws IOException if the bytes are not a ClustalW alignment
+     */
+    public static List<ISequence> parse(byte[] bytes, Alphabet alphabet)
+        throws IOException {
+
+        List<Row> rows = new ArrayList<Row>();
+        boolean header = true, firstBlock = true;
+        int row = 0;
+        int lineStart = 0, end = bytes.length;
+        while ( lineStart < end ) {
+            int lineEnd = lineStart;
+            while ( lineEnd < end && bytes[lineEnd] != '\n'
+                    && bytes[lineEnd] != '\r' )
+                ++lineEnd;
+            int next = lineEnd;
+            if ( next < end && bytes[next] == '\r' )
+                ++next;
+            if ( next < end && bytes[next] == '\n' )
+                ++next;
+
+            int nameEnd = lineStart;
+            while ( nameEnd < lineEnd && !isWhitespace( bytes[nameEnd] ) )
+                ++nameEnd;
+            int residuesStart = nameEnd;
+            while ( residuesStart < lineEnd
+                    && isWhitespace( bytes[residuesStart] ) )
+                ++residuesStart;
+
+            if (header) {
+                header = false;
+            } else if ( residuesStart == lineEnd && nameEnd == lineStart ) {
+                // a blank line ends a block
+                if (row > 0) {
+                    checkBlock(rows, row, firstBlock);
+                    firstBlock = false;
+                    row = 0;
+                }
+            } else if ( nameEnd > lineStart ) {
+                // lines starting with white space mark conserved columns
+                int residuesEnd = residuesStart;
+                while ( residuesEnd < lineEnd
+                        && !isWhitespace( bytes[residuesEnd] ) )
+                    ++residuesEnd;
+                if (firstBlock) {
+                    rows.add( new Row( new String(
+                                  ascii(bytes, lineStart, nameEnd) ) ) );
+                } else if ( row >= rows.size()
+                            || !rows.get(row).isNamed(bytes, lineStart,
+                                                      nameEnd) ) {
+                    throw new IOException( "Unexpected sequence "
+                        + new String( ascii(bytes, lineStart, nameEnd) )
+                        + " in ClustalW alignment" );
+                }
+                rows.get(row++).append(bytes, residuesStart, residuesEnd);
+            }
+            lineStart = next;
+        }
+        if (row > 0)
+            checkBlock(rows, row, firstBlock);
+
+        if ( rows.isEmpty() )
+            throw new IOException( "No sequences in ClustalW alignment" );
+
+        IBiojavaManager biojava
+            = Activator.getDefault().getJavaBiojavaManager();
+        List<ISequence> sequences = new ArrayList<ISequence>( rows.size() );
+        for (Row r : rows) {
+            String residues = new String(r.residues, 0, r.length);
+            if ( alphabet.equals( DNATools.getDNA() ) )
+                sequences.add( biojava.DNAfromPlainSequence( residues,
+                                                             r.name ) );
+            else if ( alphabet.equals( RNATools.getRNA() ) )
+                sequences.add( biojava.RNAfromPlainSequence( residues,
+                                                             r.name ) );
+            else
+                sequences.add( biojava.proteinFromPlainSequence( residues,
+                                                                 r.name ) );
+        }
+        return sequences;
+    }
+
+    /**
+     * Checks that a block has a line for every sequence.
+     */
+    private static void checkBlock(List<Row> rows, int row,
+                                   boolean firstBlock)
+        throws IOException {
+
+        if ( !firstBlock && row != rows.size() )
+            throw new IOException( "Block of ClustalW alignment has " + row
+                                   + " sequences, expected "
+                                   + rows.size() );
+    }
+
+    private static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\t' || b == '\n' || b == '\r';
+    }
+
+    private static char[] ascii(byte[] bytes, int start, int end) {
+        char[] chars = new char[end - start];
+        for ( int i = start; i < end; ++i )
+            chars[i - start] = (char) bytes[i];
+        return chars;
+    }
+}
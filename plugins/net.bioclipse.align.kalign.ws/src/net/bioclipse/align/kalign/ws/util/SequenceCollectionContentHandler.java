@@ -36,7 +36,7 @@ public class SequenceCollectionContentHandler extends DefaultHandler {
     private final Alphabet alphabet;
 
     private String currentSeqName;
-    private String currentSeq;
+    private final StringBuilder currentSeq = new StringBuilder();
 
     /**
      * Creates a new <code>SequenceAlignmentContentHandler</code> instance.
@@ -67,8 +67,8 @@ public class SequenceCollectionContentHandler extends DefaultHandler {
      */
     public final void characters(char[] ch, int start, int length)
     throws SAXException {
-        String content = new String(ch, start, length);
-        this.currentSeq = content;
+        // A parser may report the residues of a sequence in several chunks
+        this.currentSeq.append(ch, start, length);
     }
 
     /*
@@ -90,9 +90,11 @@ public class SequenceCollectionContentHandler extends DefaultHandler {
         if (attName.equals("sequenceName")) {
             this.currentSeqName = atts.getValue(0);
         }
+        this.currentSeq.setLength(0);
     }
 
     private void endCurrentSequence() {
+        String currentSeq = this.currentSeq.toString();
         IBiojavaManager biojava
           = Activator.getDefault().getJavaBiojavaManager();
         if (this.alphabet.equals(DNATools.getDNA())) {
@@ -0,0 +1,236 @@
+/* *****************************************************************************
+ * Copyright (c) 2009 The Bioclipse Project and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * <http://www.eclipse.org/legal/epl-v10.html>
+ *
+ * Contact: http://www.bioclipse.net/
+ ******************************************************************************/
+
+package net.bioclipse.bioinformatics.util;
+
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counts the named operations of a manager, such as the submissions and
+ * downloads of a Web service client, with their failures, their latencies
+ * in a histogram and the sizes of their payloads. Operations are recorded
+ * from any thread without locking.
+ * <p>
+ * A typical use is
+ * <pre>
+ * long start = metrics.start();
+ * byte[] result = service.getResult(id);
+ * metrics.record("fetch", start, result.length);
+ * </pre>
+ */
+public class OperationMetrics {
+
+    /**
+     * The upper bounds in milliseconds of the latency buckets. Latencies
+     * above the last bound fall in one more bucket.
+     */
+    public static final long[] LATENCY_BOUNDS = {
+        1, 2, 5, 10, 20, 50, 100, 200, 500,
+        1000, 2000, 5000, 10000, 20000, 60000
+    };
+
+    /**
+     * The metrics of one operation.
+     */
+    public static class Operation {
+
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong failures = new AtomicLong();
+        private final AtomicLong bytes = new AtomicLong();
+        private final AtomicLong nanos = new AtomicLong();
+        private final AtomicLong maxNanos = new AtomicLong();
+        private final AtomicLongArray histogram
+            = new AtomicLongArray( LATENCY_BOUNDS.length + 1 );
+
+        void record(long elapsed, long size, boolean failed) {
+            count.incrementAndGet();
+            if (failed)
+                failures.incrementAndGet();
+            if (size > 0)
+                bytes.addAndGet(size);
+            nanos.addAndGet(elapsed);
+            for ( long max = maxNanos.get(); elapsed > max;
+                  max = maxNanos.get() )
+                maxNanos.compareAndSet(max, elapsed);
+            histogram.incrementAndGet( bucket(elapsed / 1000000) );
+        }
+
+        /**
+         * Returns the number of times the operation was done, including
+         * failures.
+         */
+        public long getCount() {
+            return count.get();
+        }
+
+        /**
+         * Returns the number of times the operation failed.
+         */
+        public long getFailures() {
+            return failures.get();
+        }
+
+        /**
+         * Returns the total size in bytes of the payloads of the operation.
+         */
+        public long getBytes() {
+            return bytes.get();
+        }
+
+        /**
+         * Returns the mean latency in milliseconds.
+         */
+        public double getMeanMillis() {
+            long n = count.get();
+            return n == 0 ? 0 : nanos.get() / 1e6 / n;
+        }
+
+        /**
+         * Returns the longest latency in milliseconds.
+         */
+        public double getMaxMillis() {
+            return maxNanos.get() / 1e6;
+        }
+
+        /**
+         * Returns the number of latencies in each bucket of
+         * {@link OperationMetrics#LATENCY_BOUNDS}.
+         */
+        public long[] getHistogram() {
+            long[] counts = new long[ histogram.length() ];
+            for ( int i = 0; i < counts.length; ++i )
+                counts[i] = histogram.get(i);
+            return counts;
+        }
+
+        /**
+         * Returns the upper bound in milliseconds of the bucket holding
+         * the given percentile of the latencies, or
+         * <code>Long.MAX_VALUE</code> if it is above the last bound.
+         *
+         * @param percentile a percentile between 0 and 100
+         */
+        public long getPercentileMillis(double percentile) {
+            long[] counts = getHistogram();
+            long total = 0;
+            for ( long n : counts )
+                total += n;
+            long rank = (long) Math.ceil( total * percentile / 100 ), seen = 0;
+            for ( int i = 0; i < LATENCY_BOUNDS.length; ++i ) {
+                seen += counts[i];
+                if (seen >= rank)
+                    return LATENCY_BOUNDS[i];
+            }
+            return Long.MAX_VALUE;
+        }
+
+        public String toString() {
+            long p95 = getPercentileMillis(95);
+            return String.format(
+                "%d calls, %d failed, %d bytes, mean %.1f ms, "
+                + "p95 %s ms, max %.1f ms",
+                getCount(), getFailures(), getBytes(), getMeanMillis(),
+                p95 == Long.MAX_VALUE ? "> 60000" : "<= " + p95,
+                getMaxMillis() );
+        }
+    }
+
+    private final ConcurrentMap<String, Operation> operations
+        = new ConcurrentHashMap<String, Operation>();
+
+    /**
+     * Returns the start time of an operation, to pass to
+     * {@link #record(String, long, long)} when it is done.
+     */
+    public long start() {
+        return System.nanoTime();
+    }
+
+    /**
+     * Records an operation that succeeded.
+     *
+     * @param operation the name of the operation
+     * @param start     the time the operation was started, from
+     *                  {@link #start()}
+     * @param bytes     the size of the payload of the operation, or 0
+     */
+    public void record(String operation, long start, long bytes) {
+        operation(operation).record( System.nanoTime() - start, bytes,
+                                     false );
+    }
+
+    /**
+     * Records an operation that failed.
+     *
+     * @param operation the name of the operation
+     * @param start     the time the operation was started, from
+     *                  {@link #start()}
+     */
+    public void failed(String operation, long start) {
+        operation(operation).record( System.nanoTime() - start, 0, true );
+    }
+
+    /**
+     * Returns the metrics of an operation, which are empty if it has not
+     * been recorded.
+     */
+    public Operation get(String operation) {
+        Operation recorded = operations.get(operation);
+        return recorded != null ? recorded : new Operation();
+    }
+
+    /**
+     * Returns the names of the operations recorded, in alphabetical order.
+     */
+    public Set<String> getOperations() {
+        return new TreeSet<String>( operations.keySet() );
+    }
+
+    /**
+     * Forgets all recorded operations.
+     */
+    public void reset() {
+        operations.clear();
+    }
+
+    /**
+     * Returns one line per operation with its metrics.
+     */
+    public String toString() {
+        StringBuilder s = new StringBuilder();
+        for ( String name : getOperations() )
+            s.append(name).append(": ")
+             .append( operations.get(name) ).append('\n');
+        return s.toString();
+    }
+
+    private Operation operation(String name) {
+        Operation operation = operations.get(name);
+        if (operation == null) {
+            Operation created = new Operation();
+            operation = operations.putIfAbsent(name, created);
+            if (operation == null)
+                operation = created;
+        }
+        return operation;
+    }
+
+    private static int bucket(long millis) {
+        for ( int i = 0; i < LATENCY_BOUNDS.length; ++i )
+            if (millis <= LATENCY_BOUNDS[i])
+                return i;
+        return LATENCY_BOUNDS.length;
+    }
+}
@@ -12,15 +12,45 @@
 package net.bioclipse.biojava.business;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
 import net.bioclipse.biojava.domain.BiojavaDNA;
 import net.bioclipse.biojava.domain.BiojavaProtein;
 import net.bioclipse.biojava.domain.BiojavaRNA;
+import net.bioclipse.biojava.domain.BiojavaSequence;
+import net.bioclipse.biojava.domain.BiojavaTranslatedProtein;
+import net.bioclipse.biojava.domain.PackedNucleotides;
 import net.bioclipse.core.domain.IDNA;
 import net.bioclipse.core.domain.IProtein;
 import net.bioclipse.core.domain.IRNA;
+import net.bioclipse.core.domain.ISequence;
+import net.bioclipse.core.domain.RecordableList;
 
+import org.biojava.bio.seq.DNATools;
+import org.biojava.bio.seq.ProteinTools;
+import org.biojava.bio.seq.RNATools;
+import org.biojava.bio.seq.Sequence;
+import org.biojava.bio.symbol.Edit;
+import org.biojava.bio.symbol.SymbolList;
+import org.biojavax.bio.seq.RichSequence;
 import org.junit.Test;
 
+import testData.TestData;
+
 /**
  * @author masak
  *
@@ -113,4 +143,332 @@ public class BiojavaManagerTest {
         assertEquals(BiojavaProtein.class, protein.getClass());
         assertEquals("FT*P", protein.getPlainSequence());
     }
+
+    @Test
+    public void iterateSequences() throws IOException {
+        String fasta = ">first\nMVHLTPEEK\n>second\nSAVTALWGK\n";
+        SequenceIterator iterator = new SequenceIterator(
+            new ByteArrayInputStream( fasta.getBytes() ) );
+        assertTrue( iterator.hasNext() );
+        assertEquals( "MVHLTPEEK", iterator.next().getPlainSequence() );
+        assertTrue( iterator.hasNext() );
+        assertEquals( "SAVTALWGK", iterator.next().getPlainSequence() );
+        assertFalse( iterator.hasNext() );
+    }
+
+    @Test
+    public void parseFastaFileInParallel() throws IOException {
+        File file = new File( TestData.getPathToMultipleSequences() );
+        List<ISequence> expected = new ArrayList<ISequence>();
+        SequenceIterator iterator
+            = new SequenceIterator( new FileInputStream(file) );
+        while ( iterator.hasNext() )
+            expected.add( iterator.next() );
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        List<ISequence> actual;
+        try {
+            actual = new FastaParser( executor, 2 ).parse(file);
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals( expected.size(), actual.size() );
+        for ( int i = 0; i < expected.size(); ++i ) {
+            assertEquals( expected.get(i).getClass(),
+                          actual.get(i).getClass() );
+            assertEquals( expected.get(i).getName(),
+                          actual.get(i).getName() );
+            assertEquals( expected.get(i).getPlainSequence(),
+                          actual.get(i).getPlainSequence() );
+        }
+    }
+
+    @Test
+    public void parseFastaRNA() throws IOException {
+        List<ISequence> sequences = FastaParser.parse(
+            ByteBuffer.wrap( ">rna\nUUUACG\nUGACCC\n>second\nACGU".getBytes() ),
+            null );
+        assertEquals( 2, sequences.size() );
+        assertEquals( BiojavaRNA.class, sequences.get(0).getClass() );
+        assertEquals( "rna", sequences.get(0).getName() );
+        assertEquals( "uuuacgugaccc", sequences.get(0).getPlainSequence() );
+    }
+
+    @Test
+    public void parseFastaHeaderLikeBiojava() throws IOException {
+        String fasta = ">\u00c5ngstr\u00f6m r\u00e9sum\u00e9\nACGT\n";
+        ISequence expected = new SequenceIterator(
+            new ByteArrayInputStream( fasta.getBytes() ) ).next();
+        ISequence actual = FastaParser.parse(
+            ByteBuffer.wrap( fasta.getBytes() ), null ).get(0);
+
+        assertEquals( expected.getName(), actual.getName() );
+        assertEquals( new String( "\u00c5ngstr\u00f6m".getBytes() ),
+                      actual.getName() );
+    }
+
+    @Test
+    public void packedDNAWithAmbiguityCodes() {
+        IDNA dna = biojava.DNAfromPlainSequence( "ACGTNNNNryk--ACGT", "amb" );
+        assertEquals( "acgtnnnnryk--acgt", dna.getPlainSequence() );
+        assertEquals( "DNA amb: 'acgtnnnnryk--acgt'", dna.toString() );
+
+        Sequence parsed = (Sequence) dna.getParsedResource();
+        assertEquals( "acgtnnnnryk--acgt", parsed.seqString() );
+        assertEquals( "DNA", parsed.getAlphabet().getName() );
+        assertEquals( "amb", dna.getName() );
+    }
+
+    @Test
+    public void packedNucleotides() {
+        PackedNucleotides packed
+            = PackedNucleotides.pack( "uuNNNNNacgu-u", true );
+        assertEquals( 13, packed.length() );
+        assertEquals( 'u', packed.charAt(0) );
+        assertEquals( 'n', packed.charAt(2) );
+        assertEquals( 'n', packed.charAt(6) );
+        assertEquals( 'a', packed.charAt(7) );
+        assertEquals( '-', packed.charAt(11) );
+        assertEquals( "uunnnnnacgu-u", packed.toString() );
+        assertNull( PackedNucleotides.pack( "ACGTX", false ) );
+    }
+
+    @Test
+    public void plainSequenceIsCached() throws Exception {
+        BiojavaProtein protein = new BiojavaProtein(
+            RichSequence.Tools.createRichSequence(
+                "cached", "MVHLTPEEK", ProteinTools.getTAlphabet() ) );
+        String first = protein.getPlainSequence();
+        long hits = BiojavaSequence.getCacheHits();
+        assertSame( first, protein.getPlainSequence() );
+        assertEquals( hits + 1, BiojavaSequence.getCacheHits() );
+        assertEquals( 'M', protein.getPlainSequenceBytes()[0] );
+
+        Sequence sequence = (Sequence) protein.getParsedResource();
+        sequence.edit( new Edit( 1, 1, ProteinTools.createProtein("A") ) );
+        assertEquals( "AVHLTPEEK", protein.getPlainSequence() );
+        assertEquals( 'A', protein.getPlainSequenceBytes()[0] );
+    }
+
+    @Test
+    public void translationMatchesBioJava() throws Exception {
+        Random random = new Random(42);
+        for ( int length = 3; length < 200; ++length ) {
+            StringBuilder residues = new StringBuilder();
+            for ( int i = 0; i < length; ++i )
+                residues.append( "acgt".charAt( random.nextInt(4) ) );
+            String dna = residues.toString();
+
+            String expected = DNATools.toProtein(
+                DNATools.createDNASequence(dna, "") ).seqString();
+            assertEquals( expected, biojava.DNAtoProtein(
+                biojava.DNAfromPlainSequence(dna) ).getPlainSequence() );
+
+            if ( length % 3 == 0 ) {
+                String rna = dna.replace('t', 'u');
+                expected = RNATools.translate(
+                    RNATools.createRNASequence(rna, "") ).seqString();
+                assertEquals( expected, biojava.RNAtoProtein(
+                    biojava.RNAfromPlainSequence(rna) ).getPlainSequence() );
+            }
+        }
+    }
+
+    @Test
+    public void translateAmbiguousDNA() {
+        IDNA dna = biojava.DNAfromPlainSequence("CGTAGTNNNAGT");
+        assertEquals( 4, biojava.DNAtoProtein(dna).getPlainSequence().length() );
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void translatePartialCodonRNA() {
+        biojava.RNAtoProtein( biojava.RNAfromPlainSequence("UUUACGUG") );
+    }
+
+    @Test
+    public void sixFrameTranslation() {
+        List<IDNA> dnas = new ArrayList<IDNA>();
+        dnas.add( biojava.DNAfromPlainSequence( "ATGAAATAGCCC", "dna" ) );
+        List<IProtein> frames = biojava.sixFrameTranslation(dnas);
+        assertEquals( 6, frames.size() );
+        assertEquals( "MK*P", frames.get(0).getPlainSequence() );
+        assertEquals( "*NS",  frames.get(1).getPlainSequence() );
+        assertEquals( "EIA",  frames.get(2).getPlainSequence() );
+        assertEquals( "GLFH", frames.get(3).getPlainSequence() );
+
+        BiojavaTranslatedProtein reverse
+            = (BiojavaTranslatedProtein) frames.get(3);
+        assertEquals( -1, reverse.getFrame() );
+        assertEquals( 1, reverse.getStart() );
+        assertEquals( 12, reverse.getEnd() );
+    }
+
+    @Test
+    public void findORFs() {
+        List<IDNA> dnas = new ArrayList<IDNA>();
+        dnas.add( biojava.DNAfromPlainSequence( "ATGAAATAGCCC", "first" ) );
+        // ATG AAA CCC TAA on the reverse strand, at 4..15
+        dnas.add( biojava.DNAfromPlainSequence( "CCCTTAGGGTTTCATCC",
+                                                "second" ) );
+        List<IProtein> orfs = biojava.findORFs(dnas, 2);
+        assertEquals( 2, orfs.size() );
+
+        BiojavaTranslatedProtein orf = (BiojavaTranslatedProtein) orfs.get(0);
+        assertEquals( "MK", orf.getPlainSequence() );
+        assertEquals( "first", orf.getSource() );
+        assertEquals( 1, orf.getFrame() );
+        assertEquals( 1, orf.getStart() );
+        assertEquals( 9, orf.getEnd() );
+
+        orf = (BiojavaTranslatedProtein) orfs.get(1);
+        assertEquals( "MKP", orf.getPlainSequence() );
+        assertEquals( "second", orf.getSource() );
+        assertTrue( orf.getFrame() < 0 );
+        assertEquals( 4, orf.getStart() );
+        assertEquals( 15, orf.getEnd() );
+
+        assertEquals( 1, biojava.findORFs( dnas, 3, "ATG", null, 1 ).size() );
+        assertEquals( 0, biojava.findORFs( dnas, 2, "GTG", null, 1 ).size() );
+    }
+
+    @Test
+    public void translateWithGeneticCode() {
+        // TGA is a stop codon in the standard code but tryptophan in
+        // vertebrate mitochondria, AGA arginine but a stop codon
+        IDNA dna = biojava.DNAfromPlainSequence("ATGTGAAGA");
+        assertEquals( "M*R", biojava.DNAtoProtein(dna, 1).getPlainSequence() );
+        assertEquals( "MW*", biojava.DNAtoProtein(dna, 2).getPlainSequence() );
+
+        IRNA rna = biojava.RNAfromPlainSequence("AUGUGAAGA");
+        assertEquals( "MW*", biojava.RNAtoProtein(rna, 2).getPlainSequence() );
+        assertEquals( biojava.RNAtoProtein(rna).getPlainSequence(),
+                      biojava.RNAtoProtein(rna, 1).getPlainSequence() );
+    }
+
+    @Test
+    public void compiledStandardCodeMatchesTable() {
+        byte[] codons = new byte[64 * 3];
+        for ( int codon = 0; codon < 64; ++codon )
+            for ( int base = 0; base < 3; ++base )
+                codons[codon * 3 + base] = (byte)
+                    "tcag".charAt( codon >> (4 - 2 * base) & 3 );
+        assertEquals( CodonTable.STANDARD.translate(codons, false),
+                      CodonTable.forGeneticCode(1).translate(codons, false) );
+    }
+
+    @Test
+    public void standardGeneticCodeMatchesDefaultTranslation() {
+        IDNA dna = biojava.DNAfromPlainSequence("ATGGGNTAA");
+        assertEquals( biojava.DNAtoProtein(dna).getPlainSequence(),
+                      biojava.DNAtoProtein(dna, 1).getPlainSequence() );
+        assertEquals( "MG*", biojava.DNAtoProtein(dna, 1).getPlainSequence() );
+        assertEquals( "MX*", biojava.DNAtoProtein(dna, 11).getPlainSequence() );
+
+        IRNA rna = biojava.RNAfromPlainSequence("AUGGGNUAA");
+        assertEquals( biojava.RNAtoProtein(rna).getPlainSequence(),
+                      biojava.RNAtoProtein(rna, 1).getPlainSequence() );
+
+        List<IRNA> rnas = new ArrayList<IRNA>();
+        rnas.add(rna);
+        assertTrue( biojava.RNAtoProtein(rnas, 2) instanceof RecordableList );
+        List<IDNA> dnas = new ArrayList<IDNA>();
+        dnas.add(dna);
+        assertTrue( biojava.DNAtoProtein(dnas, 2) instanceof RecordableList );
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void translateWithUnknownGeneticCode() {
+        biojava.DNAtoProtein( biojava.DNAfromPlainSequence("ATG"), 99 );
+    }
+
+    @Test
+    public void reverseTranslateDegenerate() {
+        IProtein protein
+            = biojava.proteinFromPlainSequence( "MWCLS*", "primer" );
+        IDNA dna = biojava.reverseTranslate(protein);
+        assertEquals( "atgtggtgyytnwsntrr", dna.getPlainSequence() );
+        assertEquals( "primer", dna.getName() );
+        IDNA resolved = biojava.DNAfromPlainSequence("atgtggtgtctgagctaa");
+        assertEquals( "MWCLS*",
+                      biojava.DNAtoProtein(resolved).getPlainSequence() );
+    }
+
+    @Test
+    public void reverseTranslateMostLikely() {
+        List<IProtein> proteins = new ArrayList<IProtein>();
+        proteins.add( biojava.proteinFromPlainSequence("MLK") );
+        proteins.add( biojava.proteinFromPlainSequence("KL") );
+        String usage = "UUA 7.7 UUG 12.9 CUU 13.2 CUC 19.6 CUA 7.2 CUG 39.6 "
+                       + "AAA 24.4 AAG 31.9 AUG 22.0";
+        List<IDNA> dnas = biojava.reverseTranslate(proteins, usage, 1);
+        assertEquals( 2, dnas.size() );
+        assertEquals( "atgctgaag", dnas.get(0).getPlainSequence() );
+        assertEquals( "aagctg", dnas.get(1).getPlainSequence() );
+    }
+
+    @Test
+    public void reverseTranslateHelper() throws Exception {
+        SymbolList rna = BiojavaHelper.reverseTranslate(
+                             ProteinTools.createProtein("MF") );
+        assertEquals( "auguuy", rna.seqString() );
+    }
+
+    @Test
+    public void reverseComplement() {
+        IDNA dna = biojava.DNAfromPlainSequence( "AACGTTTNNRY-G", "read" );
+        IDNA complement = biojava.reverseComplement(dna);
+        assertEquals( "c-rynnaaacgtt", complement.getPlainSequence() );
+        assertEquals( "read", complement.getName() );
+
+        // once unpacked, the plain residues are complemented instead
+        dna.getParsedResource();
+        assertEquals( "c-rynnaaacgtt",
+                      biojava.reverseComplement(dna).getPlainSequence() );
+
+        List<IDNA> dnas = new ArrayList<IDNA>();
+        dnas.add(dna);
+        dnas.add(complement);
+        List<IDNA> complements = biojava.reverseComplement(dnas);
+        assertEquals( dna.getPlainSequence(),
+                      complements.get(1).getPlainSequence() );
+    }
+
+    @Test
+    public void reverseTranscribe() throws Exception {
+        IRNA rna = biojava.RNAfromPlainSequence("AUGGCCUUN");
+        IDNA cdna = biojava.reverseTranscribe(rna);
+        assertEquals( BiojavaDNA.class, cdna.getClass() );
+        assertEquals( "naaggccat", cdna.getPlainSequence() );
+        assertEquals( "naaggccat", BiojavaHelper.reverseTranscribe(
+                          RNATools.createRNA("AUGGCCUUN") ).seqString() );
+    }
+
+    @Test
+    public void sequencesToFASTAString() {
+        StringBuilder residues = new StringBuilder();
+        for ( int i = 0; i < 130; ++i )
+            residues.append( "acgt".charAt(i % 4) );
+        List<ISequence> sequences = new ArrayList<ISequence>();
+        sequences.add( biojava.DNAfromPlainSequence( residues.toString(),
+                                                     "seqB" ) );
+        sequences.add( biojava.proteinFromPlainSequence( "MVHL", "seqA" ) );
+        sequences.add( biojava.RNAfromPlainSequence( "acgu", "seqA" ) );
+
+        String fasta = biojava.sequencesToFASTAString(sequences);
+        assertEquals( ">seqB\n" + residues.substring(0, 60) + "\n"
+                      + residues.substring(60, 120) + "\n"
+                      + residues.substring(120) + "\n"
+                      + ">seqA\nMVHL\n"
+                      + ">seqA\nacgu\n",
+                      fasta );
+
+        sequences.remove(2);
+        sequences.remove(1);
+        sequences.add( biojava.DNAfromPlainSequence( "ttt", "seqC" ) );
+        List<ISequence> read = biojava.sequencesFromString(
+            biojava.sequencesToFASTAString(sequences, 0) );
+        assertEquals( 2, read.size() );
+        assertEquals( residues.toString(), read.get(0).getPlainSequence() );
+        assertEquals( "seqC", read.get(1).getName() );
+    }
 }
@@ -11,18 +11,10 @@
  ******************************************************************************/
 package net.bioclipse.biojava.business;
 
-import org.apache.log4j.Logger;
-
+import org.biojava.bio.seq.DNATools;
 import org.biojava.bio.seq.RNATools;
-import org.biojava.bio.symbol.IllegalAlphabetException;
 import org.biojava.bio.symbol.IllegalSymbolException;
-import org.biojava.bio.symbol.ManyToOneTranslationTable;
-import org.biojava.bio.symbol.ReversibleTranslationTable;
-import org.biojava.bio.symbol.SimpleSymbolListFactory;
-import org.biojava.bio.symbol.Symbol;
 import org.biojava.bio.symbol.SymbolList;
-import org.biojava.bio.symbol.SymbolListFactory;
-import org.biojava.bio.symbol.SymbolListViews;
 
 /**
  * Helper classes for Biojava
@@ -31,67 +23,53 @@ import org.biojava.bio.symbol.SymbolListViews;
  */
 public class BiojavaHelper {
 
-    private static final Logger logger = Logger.getLogger(BiojavaHelper.class);
-
     /**
-     * ReverseTranscribe RNA to DNA
-     * @param aa SymbolList of RNS sequence
+     * ReverseTranscribe RNA to its complementary DNA
+     * @param rna SymbolList of RNA sequence
      * @return SymbolList of DNA sequence
      * @throws IllegalSymbolException
-     * @throws IllegalAlphabetException
+     * @see Nucleotides#reverseTranscribe(byte[])
      */
     public static SymbolList reverseTranscribe(SymbolList rna) 
-    throws IllegalSymbolException, IllegalAlphabetException{
-
-        ReversibleTranslationTable rtt = RNATools.transcriptionTable();
-        Symbol[] syms = new Symbol[rna.length()];
-
-        //reverse RNA
-        rna = SymbolListViews.reverse(rna);
+    throws IllegalSymbolException {
 
-        for(int i = 1; i <= rna.length(); i++){
-            syms[i-1] = rtt.untranslate(rna.symbolAt(i));
-        }
+        String plain = rna.seqString();
+        byte[] residues = new byte[plain.length()];
+        for (int i = 0; i < residues.length; i++)
+            residues[i] = (byte) plain.charAt(i);
 
-        SymbolListFactory fact = new SimpleSymbolListFactory();
+        byte[] dna = Nucleotides.reverseTranscribe(residues);
+        char[] chars = new char[dna.length];
+        for (int i = 0; i < chars.length; i++)
+            chars[i] = (char) dna[i];
 
-        SymbolList dna = fact.makeSymbolList(syms, syms.length, 
-                rtt.getSourceAlphabet());
-
-        return dna;
+        return DNATools.createDNA(new String(chars));
     }
 
     /**
-     * ReverseTranslate Protein to RNA. This is not used so far but could serve as 
-     * starting point for future functionality. Reverse-translation is not common.
+     * ReverseTranslate Protein to RNA, using the standard genetic code. Each
+     * amino acid becomes the IUPAC codes covering all of its codons, so the
+     * result is degenerate RNA.
      * 
      * @param aa SymbolList of protein sequence
      * @return SymbolList of RNA sequence
      * @throws IllegalSymbolException
-     * @throws IllegalAlphabetException
+     * @see ReverseTranslator
      */
     public static SymbolList reverseTranslate(SymbolList aa) 
-        throws IllegalSymbolException, IllegalAlphabetException{
-        ManyToOneTranslationTable rtt = RNATools.getGeneticCode("UNIVERSAL");
-        Symbol[] syms = new Symbol[aa.length()];
-
-        for(int i = 1; i <= aa.length(); i++) {
-            if (logger.isDebugEnabled()) logger.debug("aa:" + aa.symbolAt(i).getName());
-
-            for(Object item : rtt.untranslate(aa.symbolAt(i))) {
-                
-                if (item instanceof Symbol) {
-                    Symbol sym = (Symbol)item;
-                    if (logger.isDebugEnabled()) logger.debug("   -> " + sym.getName());
-                }
-            }
-        }
+        throws IllegalSymbolException {
 
-        SymbolListFactory fact = new SimpleSymbolListFactory();
+        String protein = aa.seqString();
+        byte[] residues = new byte[protein.length()];
+        for (int i = 0; i < residues.length; i++)
+            residues[i] = (byte) protein.charAt(i);
 
-        SymbolList rna = fact.makeSymbolList(syms, syms.length, 
-                rtt.getSourceAlphabet());
+        byte[] dna = ReverseTranslator.degenerate(CodonTable.STANDARD)
+                                      .reverseTranslate(residues);
+        char[] rna = new char[dna.length];
+        for (int i = 0; i < rna.length; i++)
+            rna[i] = dna[i] == 't' ? 'u' : (char) dna[i];
 
-        return rna;
+        return RNATools.createRNA(new String(rna));
     } 
 }
@@ -23,25 +23,39 @@
 
 package net.bioclipse.biojava.business;
 
-import java.io.BufferedInputStream;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
 import java.lang.reflect.InvocationTargetException;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Iterator;
+import java.util.LinkedList;
 import java.util.List;
-import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
 import net.bioclipse.biojava.domain.BiojavaDNA;
 import net.bioclipse.biojava.domain.BiojavaFeature;
 import net.bioclipse.biojava.domain.BiojavaProtein;
 import net.bioclipse.biojava.domain.BiojavaRNA;
+import net.bioclipse.biojava.domain.BiojavaSequence;
 import net.bioclipse.biojava.domain.IFeature;
+import net.bioclipse.biojava.domain.PackedNucleotides;
 import net.bioclipse.core.business.BioclipseException;
 import net.bioclipse.core.domain.IDNA;
 import net.bioclipse.core.domain.IProtein;
@@ -51,23 +65,13 @@ import net.bioclipse.core.domain.RecordableList;
 import net.bioclipse.managers.business.IBioclipseManager;
 
 import org.apache.log4j.Logger;
-import org.biojava.bio.BioException;
 import org.biojava.bio.seq.DNATools;
 import org.biojava.bio.seq.Feature;
 import org.biojava.bio.seq.ProteinTools;
 import org.biojava.bio.seq.RNATools;
 import org.biojava.bio.seq.Sequence;
-import org.biojava.bio.seq.db.HashSequenceDB;
-import org.biojava.bio.seq.db.IllegalIDException;
-import org.biojava.bio.seq.db.SequenceDB;
-import org.biojava.bio.seq.io.SeqIOTools;
 import org.biojava.bio.symbol.IllegalAlphabetException;
 import org.biojava.bio.symbol.IllegalSymbolException;
-import org.biojava.utils.ChangeVetoException;
-import org.biojavax.Namespace;
-import org.biojavax.RichObjectFactory;
-import org.biojavax.bio.seq.RichSequence;
-import org.biojavax.bio.seq.RichSequenceIterator;
 import org.eclipse.core.resources.IFile;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IProgressMonitor;
@@ -92,6 +96,23 @@ public class BiojavaManager implements IBioclipseManager {
         "org.biojavax.bio.seq.io.RichSequenceFormat"
     };
 
+    private static final int THREADS
+        = Runtime.getRuntime().availableProcessors();
+
+    private static final ThreadFactory FASTA_WRITERS
+        = new DaemonThreadFactory("FastaWriter");
+
+    private ExecutorService executor;
+
+    /** Compiled genetic codes, by NCBI translation table id. */
+    private final ConcurrentMap<Integer, CodonTable> codonTables
+        = new ConcurrentHashMap<Integer, CodonTable>();
+
+    /** Degenerate reverse translators, by NCBI translation table id. */
+    private final ConcurrentMap<Integer, ReverseTranslator>
+        degenerateTranslators
+            = new ConcurrentHashMap<Integer, ReverseTranslator>();
+
     public BiojavaManager() {
         // Introduce the allowed formats
 
@@ -146,6 +167,9 @@ public class BiojavaManager implements IBioclipseManager {
     }
 
     public IDNA DNAfromPlainSequence(String dnaString, String name) {
+        PackedNucleotides packed = PackedNucleotides.pack(dnaString, false);
+        if (packed != null)
+            return new BiojavaDNA(packed, name, null);
         try {
             return new BiojavaDNA(DNATools.createDNASequence(
                     dnaString,
@@ -157,6 +181,9 @@ public class BiojavaManager implements IBioclipseManager {
     }
 
     public IRNA RNAfromPlainSequence(String rnaString, String name) {
+        PackedNucleotides packed = PackedNucleotides.pack(rnaString, true);
+        if (packed != null)
+            return new BiojavaRNA(packed, name, null);
         try {
             return new BiojavaRNA(RNATools.createRNASequence(
                     rnaString,
@@ -184,13 +211,35 @@ public class BiojavaManager implements IBioclipseManager {
     }
 
     public IProtein DNAtoProtein(IDNA dna, String name) {
-        String plainSequence = dna.getPlainSequence();
+        return proteinFromPlainSequence( translateDNA(dna, name) );
+    }
+
+    public List<IProtein> DNAtoProtein(List<IDNA> dnas) {
+
+        List<IProtein> proteins = new RecordableList<IProtein>();
+        for (IDNA dna : dnas)
+            proteins.add( proteinFromPlainSequence( translateDNA(dna, "") ) );
+
+        return proteins;
+    }
+
+    /**
+     * Translates DNA through the codon table, falling back on BioJava for
+     * sequences containing ambiguity codes or gaps, and for sequences
+     * shorter than a codon so that those are rejected as before.
+     */
+    private String translateDNA(IDNA dna, String name) {
+        byte[] residues = residues(dna);
+        if (residues.length >= 3) {
+            String protein = CodonTable.STANDARD.translate(residues, false);
+            if (protein != null)
+                return protein;
+        }
+
         try {
-            return proteinFromPlainSequence(
-                    DNATools.toProtein(
-                            DNATools.createDNASequence(plainSequence, name)
-                    ).seqString()
-                   );
+            return DNATools.toProtein(
+                       DNATools.createDNASequence(dna.getPlainSequence(), name)
+                   ).seqString();
         } catch (IllegalAlphabetException e) {
             throw new IllegalArgumentException(e);
         } catch (IllegalSymbolException e) {
@@ -198,25 +247,45 @@ public class BiojavaManager implements IBioclipseManager {
         }
     }
 
-    public List<IProtein> DNAtoProtein(List<IDNA> dnas) {
+    /**
+     * Translates RNA through the codon table, falling back on BioJava for
+     * sequences containing ambiguity codes or gaps, and for sequences that
+     * are empty or end in a partial codon so that those are rejected as
+     * before.
+     */
+    private String translateRNA(IRNA rna, String name) {
+        byte[] residues = residues(rna);
+        if (residues.length >= 3 && residues.length % 3 == 0) {
+            String protein = CodonTable.STANDARD.translate(residues, true);
+            if (protein != null)
+                return protein;
+        }
 
-        List<IProtein> proteins = new RecordableList<IProtein>();
         try {
-            for (IDNA dna : dnas){
-                String plainSequence = dna.getPlainSequence();
-                proteins.add(proteinFromPlainSequence(
-                                   DNATools.toProtein(
-                                   DNATools.createDNASequence(plainSequence, "")
-                                   ).seqString()
-                ));
-            }
+            return RNATools.translate(
+                       RNATools.createRNASequence(rna.getPlainSequence(), name)
+                   ).seqString();
         } catch (IllegalAlphabetException e) {
             throw new IllegalArgumentException(e);
         } catch (IllegalSymbolException e) {
             throw new IllegalArgumentException(e);
         }
+    }
 
-        return proteins;
+    /**
+     * Returns the residues of a sequence as ASCII bytes, without copying
+     * them when the sequence already has them cached.
+     */
+    private static byte[] residues(ISequence sequence) {
+        if (sequence instanceof BiojavaSequence)
+            return ( (BiojavaSequence) sequence ).getPlainSequenceBytes();
+        String plain = sequence.getPlainSequence();
+        byte[] bytes = new byte[plain.length()];
+        for ( int i = 0; i < bytes.length; ++i ) {
+            char c = plain.charAt(i);
+            bytes[i] = c < 128 ? (byte) c : -1;
+        }
+        return bytes;
     }
 
     public IRNA DNAtoRNA(IDNA dna) {
@@ -250,18 +319,7 @@ public class BiojavaManager implements IBioclipseManager {
     }
 
     public IProtein RNAtoProtein(IRNA rna, String name) {
-        String plainSequence = rna.getPlainSequence();
-        try {
-            return proteinFromPlainSequence(
-                    RNATools.translate(
-                            RNATools.createRNASequence(plainSequence, name)
-                    ).seqString()
-                   );
-        } catch (IllegalAlphabetException e) {
-            throw new IllegalArgumentException(e);
-        } catch (IllegalSymbolException e) {
-            throw new IllegalArgumentException(e);
-        }
+        return proteinFromPlainSequence( translateRNA(rna, name) );
     }
 
     public List<IProtein> RNAtoProtein(List<IRNA> rnas) {
@@ -271,6 +329,164 @@ public class BiojavaManager implements IBioclipseManager {
         return proteins;
     }
 
+    public IProtein DNAtoProtein(IDNA dna, int geneticCode) {
+        // The standard code goes the same way as the overloads without an
+        // id, so that BioJava still translates its ambiguous codons.
+        if (geneticCode == 1)
+            return DNAtoProtein(dna);
+        byte[] residues = residues(dna);
+        return proteinFromPlainSequence(
+                   codonTable(geneticCode).translate( residues, 0,
+                                                      residues.length,
+                                                      false, 'X' ) );
+    }
+
+    public List<IProtein> DNAtoProtein(List<IDNA> dnas, int geneticCode) {
+        List<IProtein> proteins = new RecordableList<IProtein>();
+        for (IDNA dna : dnas)
+            proteins.add( DNAtoProtein(dna, geneticCode) );
+        return proteins;
+    }
+
+    public IProtein RNAtoProtein(IRNA rna, int geneticCode) {
+        if (geneticCode == 1)
+            return RNAtoProtein(rna);
+        byte[] residues = residues(rna);
+        if (residues.length % 3 != 0)
+            throw new IllegalArgumentException(
+                "The length of RNA sequence " + rna.getName()
+                + " is not a multiple of three" );
+        return proteinFromPlainSequence(
+                   codonTable(geneticCode).translate( residues, 0,
+                                                      residues.length,
+                                                      true, 'X' ) );
+    }
+
+    public List<IProtein> RNAtoProtein(List<IRNA> rnas, int geneticCode) {
+        List<IProtein> proteins = new RecordableList<IProtein>();
+        for (IRNA rna : rnas)
+            proteins.add( RNAtoProtein(rna, geneticCode) );
+        return proteins;
+    }
+
+    public IDNA reverseComplement(IDNA dna) {
+        return complementaryDNA(dna, false);
+    }
+
+    public List<IDNA> reverseComplement(List<IDNA> dnas) {
+        List<IDNA> complements = new RecordableList<IDNA>();
+        for (IDNA dna : dnas)
+            complements.add( complementaryDNA(dna, false) );
+        return complements;
+    }
+
+    public IDNA reverseTranscribe(IRNA rna) {
+        return complementaryDNA(rna, true);
+    }
+
+    public List<IDNA> reverseTranscribe(List<IRNA> rnas) {
+        List<IDNA> dnas = new RecordableList<IDNA>();
+        for (IRNA rna : rnas)
+            dnas.add( complementaryDNA(rna, true) );
+        return dnas;
+    }
+
+    /**
+     * Returns the reverse complement of a DNA or RNA sequence as DNA. Packed
+     * sequences are complemented without unpacking them.
+     */
+    private IDNA complementaryDNA(ISequence sequence, boolean rna) {
+        PackedNucleotides packed
+            = sequence instanceof BiojavaSequence
+              ? ( (BiojavaSequence) sequence ).getPackedNucleotides()
+              : null;
+        if (packed == null) {
+            byte[] residues = residues(sequence);
+            packed = PackedNucleotides.pack(
+                         rna ? Nucleotides.reverseTranscribe(residues)
+                             : Nucleotides.reverseComplement(residues, false),
+                         false );
+        }
+        else
+            packed = packed.reverseComplement(false);
+        return new BiojavaDNA(packed, sequence.getName(), null);
+    }
+
+    public IDNA reverseTranslate(IProtein protein) {
+        return reverseTranslate(protein, null, 1);
+    }
+
+    public IDNA reverseTranslate( IProtein protein,
+                                  String codonUsage,
+                                  int geneticCode ) {
+        return reverseTranslate( protein,
+                                 reverseTranslator(codonUsage, geneticCode) );
+    }
+
+    public List<IDNA> reverseTranslate(List<IProtein> proteins) {
+        return reverseTranslate(proteins, null, 1);
+    }
+
+    public List<IDNA> reverseTranslate( List<IProtein> proteins,
+                                        String codonUsage,
+                                        int geneticCode ) {
+        ReverseTranslator translator
+            = reverseTranslator(codonUsage, geneticCode);
+        List<IDNA> dnas = new RecordableList<IDNA>();
+        for (IProtein protein : proteins)
+            dnas.add( reverseTranslate(protein, translator) );
+        return dnas;
+    }
+
+    private IDNA reverseTranslate( IProtein protein,
+                                   ReverseTranslator translator ) {
+        return new BiojavaDNA( PackedNucleotides.pack(
+                                   translator.reverseTranslate(
+                                       residues(protein) ),
+                                   false ),
+                               protein.getName(),
+                               null );
+    }
+
+    /**
+     * Returns a most likely codon reverse translator for a codon usage
+     * table, or the shared degenerate one if there is no table.
+     */
+    private ReverseTranslator reverseTranslator( String codonUsage,
+                                                 int geneticCode ) {
+        if ( codonUsage != null && codonUsage.trim().length() > 0 )
+            return ReverseTranslator.mostLikely(
+                       codonTable(geneticCode),
+                       ReverseTranslator.parseCodonUsage(codonUsage) );
+
+        ReverseTranslator translator = degenerateTranslators.get(geneticCode);
+        if (translator == null) {
+            translator
+                = ReverseTranslator.degenerate( codonTable(geneticCode) );
+            ReverseTranslator existing
+                = degenerateTranslators.putIfAbsent(geneticCode, translator);
+            if (existing != null)
+                translator = existing;
+        }
+        return translator;
+    }
+
+    /**
+     * Returns the compiled genetic code for an NCBI translation table id.
+     * Each table is compiled from BioJava once and then shared.
+     */
+    private CodonTable codonTable(int ncbiId) {
+        CodonTable table = codonTables.get(ncbiId);
+        if (table == null) {
+            table = ncbiId == 1 ? CodonTable.STANDARD
+                                : CodonTable.forGeneticCode(ncbiId);
+            CodonTable existing = codonTables.putIfAbsent(ncbiId, table);
+            if (existing != null)
+                table = existing;
+        }
+        return table;
+    }
+
     public IRNA transcriptionOf(IDNA dna) {
         return DNAtoRNA(dna);
     }
@@ -291,6 +507,128 @@ public class BiojavaManager implements IBioclipseManager {
         return RNAtoProtein(rnas);
     }
 
+    public List<IProtein> sixFrameTranslation(List<IDNA> dnas) {
+        return sixFrameTranslation(dnas, 1);
+    }
+
+    public List<IProtein> sixFrameTranslation(List<IDNA> dnas,
+                                              int geneticCode) {
+        return translateFrames( dnas.iterator(),
+                                new FrameTranslator(
+                                    codonTable(geneticCode),
+                                    null, null, 0 ),
+                                false );
+    }
+
+    public List<IProtein> sixFrameTranslation(IFile file, int geneticCode)
+        throws FileNotFoundException {
+
+        FrameTranslator translator = new FrameTranslator(
+            codonTable(geneticCode), null, null, 0 );
+        SequenceIterator sequences = sequenceIterator(file);
+        try {
+            return translateFrames(sequences, translator, false);
+        } finally {
+            sequences.close();
+        }
+    }
+
+    public List<IProtein> findORFs(List<IDNA> dnas, int minLength) {
+        return findORFs(dnas, minLength, null, null, 1);
+    }
+
+    public List<IProtein> findORFs( List<IDNA> dnas,
+                                    int minLength,
+                                    String startCodons,
+                                    String stopCodons,
+                                    int geneticCode ) {
+        return translateFrames( dnas.iterator(),
+                                new FrameTranslator(
+                                    codonTable(geneticCode),
+                                    startCodons, stopCodons, minLength ),
+                                true );
+    }
+
+    public List<IProtein> findORFs( IFile file,
+                                    int minLength,
+                                    String startCodons,
+                                    String stopCodons,
+                                    int geneticCode )
+        throws FileNotFoundException {
+
+        FrameTranslator translator = new FrameTranslator(
+            codonTable(geneticCode),
+            startCodons, stopCodons, minLength );
+        SequenceIterator sequences = sequenceIterator(file);
+        try {
+            return translateFrames(sequences, translator, true);
+        } finally {
+            sequences.close();
+        }
+    }
+
+    /**
+     * Runs the six-frame translation or the open reading frame search on
+     * each sequence on the manager's thread pool. At most a few tasks per
+     * thread are in flight, so that sequences read from a file are not all
+     * held in memory at once. The results are returned in input order.
+     */
+    private List<IProtein> translateFrames(
+                               Iterator<? extends ISequence> sequences,
+                               final FrameTranslator translator,
+                               final boolean orfs ) {
+
+        List<IProtein> proteins = new RecordableList<IProtein>();
+        LinkedList<Future<List<IProtein>>> pending
+            = new LinkedList<Future<List<IProtein>>>();
+        try {
+            while ( sequences.hasNext() ) {
+                final ISequence sequence = sequences.next();
+                if ( !(sequence instanceof IDNA) )
+                    throw new IllegalArgumentException(
+                        "Not a DNA sequence: " + sequence.getName() );
+                pending.add( executor().submit(
+                                 new Callable<List<IProtein>>() {
+                    public List<IProtein> call() {
+                        byte[] residues = residues(sequence);
+                        return orfs
+                            ? translator.orfs( sequence.getName(), residues )
+                            : translator.sixFrames( sequence.getName(),
+                                                    residues );
+                    }
+                }));
+                if ( pending.size() >= THREADS * 4 )
+                    proteins.addAll( pending.removeFirst().get() );
+            }
+            while ( !pending.isEmpty() )
+                proteins.addAll( pending.removeFirst().get() );
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException( "Interrupted while translating",
+                                             e );
+        } catch (ExecutionException e) {
+            if ( e.getCause() instanceof RuntimeException )
+                throw (RuntimeException) e.getCause();
+            throw new IllegalStateException( e.getCause() );
+        } finally {
+            for ( Future<List<IProtein>> result : pending )
+                result.cancel(true);
+        }
+        return proteins;
+    }
+
+    /**
+     * Returns the thread pool shared by the bulk operations of this manager.
+     * Its threads are daemons so that an idle pool never keeps the
+     * application alive.
+     */
+    private synchronized ExecutorService executor() {
+        if (executor == null)
+            executor = Executors.newFixedThreadPool(
+                THREADS, new DaemonThreadFactory("BiojavaManager") );
+        return executor;
+    }
+
     public String getManagerName() {
         return "biojava";
     }
@@ -325,6 +663,17 @@ public class BiojavaManager implements IBioclipseManager {
     public List<ISequence> sequencesFromFile( IFile file )
         throws FileNotFoundException {
 
+        File localFile = file.getLocation() == null
+                         ? null : file.getLocation().toFile();
+        try {
+            if ( localFile != null && FastaParser.isFasta(localFile) )
+                return new FastaParser( executor(), THREADS )
+                           .parse(localFile);
+        } catch (IOException e) {
+            logger.debug( "Could not parse " + file.getName()
+                          + " as FASTA, falling back on BioJava", e );
+        }
+
         try {
             return sequencesFromInputStream(file.getContents());
         } catch (CoreException ce) {
@@ -332,129 +681,84 @@ public class BiojavaManager implements IBioclipseManager {
         }
     }
 
-    private List<ISequence> sequencesFromInputStream(InputStream stream) {
+    public SequenceIterator sequenceIterator( IFile file )
+        throws FileNotFoundException {
 
-        BufferedInputStream bufferedStream = new BufferedInputStream(stream);
-        Namespace ns = RichObjectFactory.getDefaultNamespace();
-        RichSequenceIterator seqit = null;
+        try {
+            return new SequenceIterator(file.getContents());
+        } catch (CoreException ce) {
+            throw new FileNotFoundException(ce.toString());
+        } catch (IOException e) {
+            throw new IllegalArgumentException(
+                "Couldn't read sequences from file " + file.getName(), e
+            );
+        }
+    }
 
+    private List<ISequence> sequencesFromInputStream(InputStream stream) {
+
+        SequenceIterator seqit = null;
         try {
-            seqit = RichSequence.IOTools.readStream(bufferedStream, ns);
+            seqit = new SequenceIterator(stream);
         } catch (IOException e) {
             logger.error("Couldn't read sequences from file", e);
             return Collections.emptyList();
         }
 
         List<ISequence> sequences = new ArrayList<ISequence>();
-        try {
-            while ( seqit.hasNext() ) {
-                RichSequence rseq;
-                    rseq = seqit.nextRichSequence();
-                if (rseq == null)
-                    continue;
-                String alphabet = rseq.getAlphabet().getName();
-                sequences.add(
-                      "DNA".equals(alphabet) ? new BiojavaDNA(rseq)
-                    : "RNA".equals(alphabet) ? new BiojavaRNA(rseq)
-                    :                          new BiojavaProtein(rseq) );
-            }
-        } catch (NoSuchElementException e) {
-            logger.error("Read past last sequence", e);
-        } catch (BioException e) {
-            logger.error(e);
-        }
+        while ( seqit.hasNext() )
+            sequences.add( seqit.next() );
 
         return sequences;
     }
 
-    private SequenceDB addToSequenceDB(
-        final List<? extends ISequence> sequences
-    ) {
-
-        SequenceDB db = new HashSequenceDB();
-
-        try {
-            for (ISequence seq : sequences){
-                if ( seq instanceof IProtein ) {
-                    IProtein protein = (IProtein) seq;
-                    db.addSequence(ProteinTools.createProteinSequence(
-                            protein.getPlainSequence(),
-                            protein.getName()));
-                }
-                else if ( seq instanceof IDNA ) {
-                    IDNA dna = (IDNA) seq;
-                        db.addSequence(DNATools.createDNASequence(
-                                // the .replaceAll works around bug #1569
-                                dna.getPlainSequence().replace('~', '-'),
-                                dna.getName()));
-                        logger.debug("Added DNA sequence: " + dna.getName()
-                                + " to write.");
-                }
-                else {
-                    throw new IllegalArgumentException(
-                        "Only IProtein and IDNA allowed in list of sequences"
-                    );
-                }
-                logger.debug("Added "+ seq.getClass().getName() +" sequence: "
-                             + seq.getName() + " to write.");
-            }
-        } catch ( IllegalIDException e ) {
-            throw new IllegalArgumentException(e);
-        } catch ( ChangeVetoException e ) {
-            throw new IllegalArgumentException(e);
-        } catch ( IllegalSymbolException e ) {
-            throw new IllegalArgumentException(e);
-        } catch ( BioException e ) {
-            throw new IllegalArgumentException(e);
-        }
-        return db;
+    public void sequencesToFASTAfile(final List<? extends ISequence> sequences,
+                                     final IFile file,
+                                     IProgressMonitor monitor)
+                                     throws BioclipseException{
+        sequencesToFASTAfile( sequences,
+                              file,
+                              FastaWriter.DEFAULT_LINE_WIDTH,
+                              monitor );
     }
 
     public void sequencesToFASTAfile(final List<? extends ISequence> sequences,
                                      final IFile file,
+                                     int lineWidth,
                                      IProgressMonitor monitor)
                                      throws BioclipseException{
 
+        InputStream fasta = fastaStream(sequences, lineWidth);
         try {
-            //Write to byte[]
-            ByteArrayOutputStream bos = new ByteArrayOutputStream();
-            SeqIOTools.writeFasta(bos, addToSequenceDB(sequences));
-
-            //Write byte[] as new content to file
-            ByteArrayInputStream bis=new ByteArrayInputStream(bos.toByteArray());
             if (file.exists())
-                file.setContents( bis, false, false, monitor );
+                file.setContents( fasta, false, false, monitor );
             else{
-                file.create( bis, false, monitor );
+                file.create( fasta, false, monitor );
             }
-
-        } catch (FileNotFoundException e) {
-            throw new IllegalArgumentException(e);
-        } catch (IOException e) {
-            throw new IllegalArgumentException(e);
         } catch ( CoreException e ) {
             throw new BioclipseException(
                     "Error saving file: " + e.getMessage()
             );
+        } finally {
+            try {
+                fasta.close();
+            } catch (IOException e) {
+                logger.debug("Could not close FASTA stream", e);
+            }
         }
     }
 
     public String sequencesToFASTAString(
         final List<? extends ISequence> sequences
     ) {
+        return toFasta(sequences, FastaWriter.DEFAULT_LINE_WIDTH);
+    }
 
-        try {
-            //Write to byte[]
-            ByteArrayOutputStream bos = new ByteArrayOutputStream();
-            SeqIOTools.writeFasta(bos, addToSequenceDB(sequences));
-
-            return bos.toString();
-
-        } catch (FileNotFoundException e) {
-            throw new IllegalArgumentException(e);
-        } catch (IOException e) {
-            throw new IllegalArgumentException(e);
-        }
+    public String sequencesToFASTAString(
+        final List<? extends ISequence> sequences,
+        int lineWidth
+    ) {
+        return toFasta(sequences, lineWidth);
     }
 
     public RecordableList<ISequence> createSequenceList()
@@ -465,13 +769,22 @@ public class BiojavaManager implements IBioclipseManager {
 
 
     public String proteinsToFASTAString(final List<IProtein> proteins){
+        return toFasta(proteins, FastaWriter.DEFAULT_LINE_WIDTH);
+    }
 
-        try {
-            ByteArrayOutputStream bos = new ByteArrayOutputStream();
-            SeqIOTools.writeFasta(bos, addToSequenceDB(proteins));
+    public String dnaToFASTAString(final List<IDNA> dnas){
+        return toFasta(dnas, FastaWriter.DEFAULT_LINE_WIDTH);
+    }
 
-            return bos.toString();
+    public void proteinsToFASTAfile(List<IProtein> proteins, IFile file) {
 
+        try {
+            writeFasta(
+                proteins,
+                new FileOutputStream(
+                    file.getRawLocation().toFile() ).getChannel(),
+                FastaWriter.DEFAULT_LINE_WIDTH
+            );
         } catch (FileNotFoundException e) {
             throw new IllegalArgumentException(e);
         } catch (IOException e) {
@@ -479,33 +792,74 @@ public class BiojavaManager implements IBioclipseManager {
         }
     }
 
-    public String dnaToFASTAString(final List<IDNA> dnas){
+    /**
+     * Writes sequences in input order to a channel, then closes it.
+     */
+    private static void writeFasta( List<? extends ISequence> sequences,
+                                    WritableByteChannel channel,
+                                    int lineWidth ) throws IOException {
 
+        FastaWriter writer = new FastaWriter(channel, lineWidth);
         try {
-            ByteArrayOutputStream bos = new ByteArrayOutputStream();
-            SeqIOTools.writeFasta(bos, addToSequenceDB(dnas));
+            for (ISequence sequence : sequences) {
+                writer.write(sequence);
+                if (logger.isDebugEnabled())
+                    logger.debug( "Wrote " + sequence.getClass().getName()
+                                  + " sequence: " + sequence.getName() );
+            }
+        } finally {
+            writer.close();
+        }
+    }
 
-            return bos.toString();
+    private static String toFasta( List<? extends ISequence> sequences,
+                                   int lineWidth ) {
 
-        } catch (FileNotFoundException e) {
-            throw new IllegalArgumentException(e);
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        try {
+            writeFasta(sequences, Channels.newChannel(bos), lineWidth);
+            return bos.toString(FastaWriter.CHARSET);
         } catch (IOException e) {
             throw new IllegalArgumentException(e);
         }
     }
 
-    public void proteinsToFASTAfile(List<IProtein> proteins, IFile file) {
+    /**
+     * Returns the FASTA of the sequences as a stream that is written on
+     * another thread while it is read, so that a file can be handed to the
+     * workspace without holding all of it in memory. A writer that fails
+     * leaves the pipe open and dies, which the reader sees as an I/O error
+     * instead of the end of a truncated file.
+     */
+    private static InputStream fastaStream(
+                                   final List<? extends ISequence> sequences,
+                                   final int lineWidth ) {
 
+        PipedInputStream in = new PipedInputStream();
+        final PipedOutputStream out;
         try {
-            SeqIOTools.writeFasta(
-                new FileOutputStream(file.getRawLocation().toFile()),
-                addToSequenceDB(proteins)
-            );
-        } catch (FileNotFoundException e) {
-            throw new IllegalArgumentException(e);
+            out = new PipedOutputStream(in);
         } catch (IOException e) {
-            throw new IllegalArgumentException(e);
+            throw new IllegalStateException(e);
         }
+        Thread writer = FASTA_WRITERS.newThread( new Runnable() {
+            public void run() {
+                FastaWriter fasta
+                    = new FastaWriter(Channels.newChannel(out), lineWidth);
+                try {
+                    for (ISequence sequence : sequences)
+                        fasta.write(sequence);
+                    fasta.close();
+                } catch (IOException e) {
+                    // The reader gave up and closed its end
+                    logger.debug("FASTA stream closed by reader", e);
+                } catch (RuntimeException e) {
+                    logger.error("Could not write FASTA", e);
+                }
+            }
+        });
+        writer.start();
+        return in;
     }
 
     public List<IFeature> features(ISequence sequence) {
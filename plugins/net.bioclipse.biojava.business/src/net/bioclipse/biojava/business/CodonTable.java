@@ -0,0 +1,205 @@
+/* *****************************************************************************
+ * Copyright (c) 2009 The Bioclipse Project and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * <http://www.eclipse.org/legal/epl-v10.html>
+ *
+ * Contact: http://www.bioclipse.net/
+ ******************************************************************************/
+
+package net.bioclipse.biojava.business;
+
+import java.util.Arrays;
+
+import org.biojava.bio.BioException;
+import org.biojava.bio.seq.ProteinTools;
+import org.biojava.bio.seq.RNATools;
+import org.biojava.bio.seq.io.SymbolTokenization;
+import org.biojava.bio.symbol.Symbol;
+import org.biojava.bio.symbol.TranslationTable;
+
+/**
+ * A genetic code as a flat 64-entry lookup table, used to translate
+ * nucleotide residues without building BioJava symbol lists.
+ * <p>
+ * Codons are indexed the way the NCBI genetic code tables list them, with
+ * the bases ordered <code>T C A G</code>, so a table can be written down as
+ * the 64 character amino acid string of its NCBI entry. Stop codons
+ * translate to <code>*</code>, as in BioJava.
+ */
+public final class CodonTable {
+
+    /** The standard genetic code, NCBI table 1. */
+    public static final CodonTable STANDARD = new CodonTable(
+        "FFLLSSSSYY**CC*WLLLLPPPPHHQQRRRRIIIMTTTTNNKKSSRRVVVVAAAADDEEGGGG"
+    );
+
+    /** Maps an ASCII character to its base index, or -1. */
+    private static final byte[] DNA_INDEX = index("tcag"),
+                                RNA_INDEX = index("ucag");
+
+    private final byte[] aminoAcids;
+
+    /**
+     * @param aminoAcids the 64 amino acids of the codons
+     *                   <code>TTT, TTC, TTA, TTG, TCT, ... GGG</code>
+     */
+    CodonTable(String aminoAcids) {
+        if ( aminoAcids.length() != 64 )
+            throw new IllegalArgumentException(
+                "A codon table needs 64 amino acids, got "
+                + aminoAcids.length() );
+        this.aminoAcids = new byte[64];
+        for ( int i = 0; i < 64; ++i )
+            this.aminoAcids[i] = (byte) aminoAcids.charAt(i);
+    }
+
+    /**
+     * Compiles one of BioJava's genetic codes into a codon table.
+     *
+     * @param ncbiId the NCBI translation table id, e.g. 1 for the standard
+     *               code or 11 for bacteria
+     * @throws IllegalArgumentException if BioJava does not know the table
+     */
+    public static CodonTable forGeneticCode(int ncbiId) {
+        TranslationTable table;
+        try {
+            table = RNATools.getGeneticCode(ncbiId);
+        } catch (RuntimeException e) {
+            table = null;
+        }
+        if (table == null)
+            throw new IllegalArgumentException(
+                "Unknown NCBI translation table: " + ncbiId );
+
+        Symbol[] bases = { RNATools.u(), RNATools.c(),
+                           RNATools.a(), RNATools.g() };
+        StringBuilder aminoAcids = new StringBuilder();
+        try {
+            SymbolTokenization tokens
+                = ProteinTools.getTAlphabet().getTokenization("token");
+            for ( int codon = 0; codon < 64; ++codon )
+                aminoAcids.append( tokens.tokenizeSymbol( table.translate(
+                    RNATools.getCodonAlphabet().getSymbol( Arrays.asList(
+                        new Symbol[] { bases[codon >> 4],
+                                       bases[codon >> 2 & 3],
+                                       bases[codon & 3] } ) ) ) ) );
+        } catch (BioException e) {
+            throw new IllegalArgumentException(
+                "Could not compile NCBI translation table " + ncbiId, e );
+        }
+        return new CodonTable( aminoAcids.toString().toUpperCase() );
+    }
+
+    /**
+     * Returns the codon index of a three letter codon such as
+     * <code>"ATG"</code> or <code>"aug"</code>, or -1 if it is not a codon
+     * of the four bases.
+     */
+    public static int codonIndex(String codon) {
+        if ( codon.length() != 3 )
+            return -1;
+        byte[] index = codon.toLowerCase().indexOf('u') >= 0 ? RNA_INDEX
+                                                             : DNA_INDEX;
+        return codon( index, (byte) codon.charAt(0),
+                             (byte) codon.charAt(1),
+                             (byte) codon.charAt(2) );
+    }
+
+    /**
+     * Returns the index of the codon starting at <code>position</code>, or
+     * -1 if it contains anything but the four bases.
+     */
+    public int codonAt(byte[] residues, int position, boolean rna) {
+        return codon( rna ? RNA_INDEX : DNA_INDEX,
+                      residues[position],
+                      residues[position + 1],
+                      residues[position + 2] );
+    }
+
+    /**
+     * Returns the amino acid a codon index translates to.
+     */
+    public char aminoAcid(int codon) {
+        return (char) aminoAcids[codon];
+    }
+
+    /**
+     * Returns <code>true</code> if the codon index is a stop codon.
+     */
+    public boolean isStop(int codon) {
+        return aminoAcids[codon] == '*';
+    }
+
+    /**
+     * Translates residues in the first reading frame. A trailing partial
+     * codon is ignored.
+     *
+     * @param residues nucleotides as ASCII, in upper or lower case
+     * @param rna      <code>true</code> if the residues use <code>u</code>,
+     *                 <code>false</code> if they use <code>t</code>
+     * @return the amino acids in upper case, or <code>null</code> if a codon
+     *         contains anything but the four bases, in which case the caller
+     *         should fall back on BioJava
+     */
+    public String translate(byte[] residues, boolean rna) {
+        return translate(residues, 0, residues.length, rna);
+    }
+
+    /**
+     * Translates the codons of <code>residues[from, to)</code>. A trailing
+     * partial codon is ignored.
+     *
+     * @see #translate(byte[], boolean)
+     */
+    public String translate( byte[] residues, int from, int to,
+                             boolean rna ) {
+        return translate( residues, from, to, rna, (char) 0 );
+    }
+
+    /**
+     * Translates the codons of <code>residues[from, to)</code>, translating
+     * codons that contain anything but the four bases to
+     * <code>unknown</code>. If <code>unknown</code> is <code>0</code>,
+     * <code>null</code> is returned for such codons instead.
+     *
+     * @see #translate(byte[], boolean)
+     */
+    public String translate( byte[] residues, int from, int to,
+                             boolean rna, char unknown ) {
+
+        byte[] index = rna ? RNA_INDEX : DNA_INDEX;
+        char[] protein = new char[ (to - from) / 3 ];
+        for ( int i = 0, p = from; i < protein.length; ++i, p += 3 ) {
+            int codon = codon( index, residues[p], residues[p+1],
+                               residues[p+2] );
+            if (codon >= 0)
+                protein[i] = (char) aminoAcids[codon];
+            else if (unknown != 0)
+                protein[i] = unknown;
+            else
+                return null;
+        }
+        return new String(protein);
+    }
+
+    private static int codon(byte[] index, byte b1, byte b2, byte b3) {
+        if ( b1 < 0 || b2 < 0 || b3 < 0 )
+            return -1;
+        int first = index[b1], second = index[b2], third = index[b3];
+        if ( (first | second | third) < 0 )
+            return -1;
+        return first << 4 | second << 2 | third;
+    }
+
+    private static byte[] index(String bases) {
+        byte[] index = new byte[128];
+        Arrays.fill( index, (byte) -1 );
+        for ( byte i = 0; i < 4; ++i ) {
+            index[ bases.charAt(i) ] = i;
+            index[ Character.toUpperCase( bases.charAt(i) ) ] = i;
+        }
+        return index;
+    }
+}
@@ -0,0 +1,349 @@
+/* *****************************************************************************
+ * Copyright (c) 2009 The Bioclipse Project and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * <http://www.eclipse.org/legal/epl-v10.html>
+ *
+ * Contact: http://www.bioclipse.net/
+ ******************************************************************************/
+
+package net.bioclipse.biojava.business;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import net.bioclipse.biojava.domain.BiojavaDNA;
+import net.bioclipse.biojava.domain.BiojavaRNA;
+import net.bioclipse.biojava.domain.PackedNucleotides;
+import net.bioclipse.core.domain.ISequence;
+
+import org.biojava.bio.BioException;
+import org.biojava.bio.seq.DNATools;
+import org.biojava.bio.seq.ProteinTools;
+import org.biojava.bio.seq.RNATools;
+import org.biojava.bio.symbol.Alphabet;
+import org.biojavax.Namespace;
+import org.biojavax.RichObjectFactory;
+import org.biojavax.bio.seq.RichSequence;
+
+/**
+ * A parser dedicated to multi-record FASTA files. The file is memory-mapped
+ * and cut into chunks on record boundaries (a <code>&gt;</code> at the start
+ * of a line), and the chunks are parsed concurrently. The sequences are
+ * returned in the order they appear in the file.
+ * <p>
+ * The alphabet is guessed once per file from the first sequence line, the
+ * same way BioJava's own FASTA reader does it, and the resulting sequences
+ * are wrapped in the same domain classes as those read through
+ * {@link SequenceIterator}.
+ */
+public class FastaParser {
+
+    /** Upper bound for the size of a chunk handed to a single task. */
+    private static final int MAX_CHUNK_SIZE = 16 * 1024 * 1024;
+
+    /** Files smaller than this are parsed as a single chunk. */
+    private static final int MIN_CHUNK_SIZE = 256 * 1024;
+
+    // Same header and accession patterns as org.biojavax...FastaFormat
+    private static final Pattern HEADER
+        = Pattern.compile( ">\\s*(\\S+)(\\s+(.*))?" );
+    private static final Pattern ACCESSION
+        = Pattern.compile( "^(gi\\|(\\d+)\\|)?(\\w+)\\|(\\w+?)(\\.(\\d+))?"
+                           + "\\|(\\w+)?$" );
+    private static final Pattern AMINO_ACIDS
+        = Pattern.compile( ".*[FLIPQE].*" );
+
+    // BioJava reads streams with the platform charset, so names and
+    // descriptions are decoded with it too.
+    private static final Charset HEADER_CHARSET = Charset.defaultCharset();
+
+    private final ExecutorService executor;
+    private final int parallelism;
+
+    /**
+     * @param executor    the executor the chunks are parsed on
+     * @param parallelism the number of threads of <code>executor</code>
+     */
+    public FastaParser(ExecutorService executor, int parallelism) {
+        this.executor = executor;
+        this.parallelism = Math.max(1, parallelism);
+    }
+
+    /**
+     * Returns <code>true</code> if the first non-whitespace character of the
+     * file is a <code>&gt;</code>.
+     */
+    public static boolean isFasta(File file) throws IOException {
+        FileInputStream in = new FileInputStream(file);
+        try {
+            int c;
+            while ( (c = in.read()) != -1 )
+                if ( !Character.isWhitespace( (char) c ) )
+                    return c == '>';
+            return false;
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Parses all the sequences in a FASTA file.
+     *
+     * @param file a file in FASTA format
+     * @return the sequences of the file, in file order
+     * @throws IOException if the file could not be read or parsed
+     */
+    public List<ISequence> parse(File file) throws IOException {
+
+        FileInputStream in = new FileInputStream(file);
+        try {
+            FileChannel channel = in.getChannel();
+            long size = channel.size();
+            List<long[]> chunks = chunks(channel, size);
+
+            Alphabet alphabet = guessAlphabet(
+                channel.map( FileChannel.MapMode.READ_ONLY,
+                             chunks.get(0)[0],
+                             chunks.get(0)[1] - chunks.get(0)[0] ) );
+
+            List<Future<List<ISequence>>> results
+                = new ArrayList<Future<List<ISequence>>>();
+            for ( long[] chunk : chunks )
+                results.add( executor.submit( new ChunkParser(
+                    channel.map( FileChannel.MapMode.READ_ONLY,
+                                 chunk[0], chunk[1] - chunk[0] ),
+                    alphabet ) ) );
+
+            return collect(results);
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Parses all the FASTA records in a buffer on the calling thread. The
+     * buffer is read from its position to its limit and is not copied.
+     *
+     * @param buffer   FASTA formatted bytes
+     * @param alphabet the alphabet of the sequences, or <code>null</code> to
+     *                 guess it from the first sequence line
+     * @return the sequences in the buffer, in order
+     * @throws IOException if a record could not be parsed
+     */
+    public static List<ISequence> parse(ByteBuffer buffer, Alphabet alphabet)
+        throws IOException {
+
+        if (alphabet == null)
+            alphabet = guessAlphabet(buffer);
+        try {
+            return new ChunkParser(buffer, alphabet).call();
+        } catch (BioException e) {
+            throw new IOException( "Could not parse FASTA record: "
+                                   + e.getMessage() );
+        }
+    }
+
+    private List<ISequence> collect(List<Future<List<ISequence>>> results)
+        throws IOException {
+
+        List<ISequence> sequences = new ArrayList<ISequence>();
+        try {
+            for ( Future<List<ISequence>> result : results )
+                sequences.addAll( result.get() );
+        } catch (InterruptedException e) {
+            for ( Future<List<ISequence>> result : results )
+                result.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while parsing FASTA file");
+        } catch (ExecutionException e) {
+            for ( Future<List<ISequence>> result : results )
+                result.cancel(true);
+            throw new IOException( "Could not parse FASTA record: "
+                                   + e.getCause().getMessage() );
+        }
+        return sequences;
+    }
+
+    /**
+     * Cuts the file into <code>[start, end)</code> ranges, each of which
+     * starts at a record boundary.
+     */
+    private List<long[]> chunks(FileChannel channel, long size)
+        throws IOException {
+
+        long chunkSize = Math.max( MIN_CHUNK_SIZE,
+                                   Math.min( MAX_CHUNK_SIZE,
+                                             size / (parallelism * 4) + 1 ) );
+
+        List<long[]> chunks = new ArrayList<long[]>();
+        long start = 0;
+        while ( start < size ) {
+            long end = start + chunkSize >= size
+                       ? size
+                       : nextRecordStart( channel, start + chunkSize, size );
+            chunks.add( new long[] { start, end } );
+            start = end;
+        }
+        if ( chunks.isEmpty() )
+            chunks.add( new long[] { 0, 0 } );
+        return chunks;
+    }
+
+    /**
+     * Returns the position of the first <code>&gt;</code> at or after
+     * <code>from</code> that starts a line, or <code>size</code>.
+     */
+    private static long nextRecordStart(FileChannel channel,
+                                        long from, long size)
+        throws IOException {
+
+        ByteBuffer window = ByteBuffer.allocate(8192);
+        long position = from - 1;
+        byte previous = 0;
+        while ( position < size ) {
+            window.clear();
+            int read = channel.read( window, position );
+            if (read <= 0)
+                break;
+            for ( int i = 0; i < read; ++i ) {
+                byte b = window.get(i);
+                if ( b == '>' && (previous == '\n' || previous == '\r') )
+                    return position + i;
+                previous = b;
+            }
+            position += read;
+        }
+        return size;
+    }
+
+    /**
+     * Guesses the alphabet from the first sequence line the way BioJava's
+     * FASTA format does: any of <code>FLIPQE</code> means protein, anything
+     * else nucleotides. Unlike BioJava, nucleotides containing <code>U</code>
+     * but no <code>T</code> are read as RNA rather than failing as DNA.
+     */
+    static Alphabet guessAlphabet(ByteBuffer buffer) {
+
+        int i = buffer.position(), limit = buffer.limit();
+        // skip the header line
+        while ( i < limit && buffer.get(i) != '\n' )
+            ++i;
+        StringBuilder line = new StringBuilder();
+        for ( ++i; i < limit; ++i ) {
+            char c = (char) buffer.get(i);
+            if (c == '\n' || c == '\r' || c == '>')
+                break;
+            line.append(c);
+        }
+
+        if ( AMINO_ACIDS.matcher(line).matches() )
+            return ProteinTools.getTAlphabet();
+        String upper = line.toString().toUpperCase();
+        if ( upper.indexOf('U') >= 0 && upper.indexOf('T') < 0 )
+            return RNATools.getRNA();
+        return DNATools.getDNA();
+    }
+
+    /**
+     * Parses the records of one chunk into sequences.
+     */
+    private static class ChunkParser implements Callable<List<ISequence>> {
+
+        private final ByteBuffer buffer;
+        private final Alphabet alphabet;
+        private final Namespace ns = RichObjectFactory.getDefaultNamespace();
+
+        ChunkParser(ByteBuffer buffer, Alphabet alphabet) {
+            this.buffer = buffer;
+            this.alphabet = alphabet;
+        }
+
+        public List<ISequence> call() throws BioException {
+
+            List<ISequence> sequences = new ArrayList<ISequence>();
+            int i = buffer.position(), limit = buffer.limit();
+
+            // anything before the first record is ignored, as in BioJava
+            while ( i < limit && buffer.get(i) != '>' )
+                ++i;
+
+            StringBuilder residues = new StringBuilder();
+            while ( i < limit ) {
+                residues.setLength(0);
+
+                int headerStart = i;
+                for ( ; i < limit; ++i ) {
+                    byte b = buffer.get(i);
+                    if (b == '\n' || b == '\r')
+                        break;
+                }
+                ByteBuffer header = buffer.duplicate();
+                header.limit(i);
+                header.position(headerStart);
+
+                boolean lineStart = true;
+                for ( ; i < limit; ++i ) {
+                    byte b = buffer.get(i);
+                    if ( b == '>' && lineStart )
+                        break;
+                    lineStart = b == '\n' || b == '\r';
+                    if ( b == '.' || b == '|' || b == '~' )
+                        residues.append('-');
+                    else if ( !Character.isWhitespace( (char) b ) )
+                        residues.append( (char) b );
+                }
+
+                sequences.add( createSequence(
+                                   HEADER_CHARSET.decode(header).toString(),
+                                   residues.toString() ) );
+            }
+            return sequences;
+        }
+
+        private ISequence createSequence(String header, String residues)
+            throws BioException {
+
+            Matcher matcher = HEADER.matcher(header);
+            if ( !matcher.matches() )
+                throw new BioException( "Stream does not appear to contain "
+                                        + "FASTA formatted data: " + header );
+            String name = matcher.group(1),
+                   description = matcher.group(3);
+
+            Matcher accession = ACCESSION.matcher(name);
+            if ( accession.matches() )
+                name = accession.group(7) != null ? accession.group(7)
+                                                  : accession.group(4);
+
+            if ( alphabet == DNATools.getDNA()
+                 || alphabet == RNATools.getRNA() ) {
+                boolean rna = alphabet == RNATools.getRNA();
+                PackedNucleotides packed
+                    = PackedNucleotides.pack(residues, rna);
+                if (packed != null)
+                    return rna ? new BiojavaRNA(packed, name, description)
+                               : new BiojavaDNA(packed, name, description);
+            }
+
+            RichSequence rseq = RichSequence.Tools.createRichSequence(
+                                    ns, name, residues, alphabet );
+            if (description != null)
+                rseq.setDescription(description);
+            return SequenceIterator.wrap(rseq);
+        }
+    }
+}
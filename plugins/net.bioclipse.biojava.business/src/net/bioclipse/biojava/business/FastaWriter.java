@@ -0,0 +1,134 @@
+/* *****************************************************************************
+ * Copyright (c) 2009 The Bioclipse Project and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * <http://www.eclipse.org/legal/epl-v10.html>
+ *
+ * Contact: http://www.bioclipse.net/
+ ******************************************************************************/
+
+package net.bioclipse.biojava.business;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+import net.bioclipse.biojava.domain.BiojavaSequence;
+import net.bioclipse.core.domain.ISequence;
+
+/**
+ * Writes sequences in FASTA format straight to a channel, in the order they
+ * are given. Only a fixed size buffer is held, whatever the number and
+ * length of the sequences. DNA, RNA and protein sequences are all written
+ * as their plain sequence, in the same layout as BioJava's FASTA writer:
+ * a <code>&gt;name</code> line followed by the residues wrapped at the line
+ * width.
+ */
+public class FastaWriter implements Closeable {
+
+    /** The line width BioJava writes FASTA with. */
+    public static final int DEFAULT_LINE_WIDTH = 60;
+
+    /** The charset names and residues are written in. */
+    public static final String CHARSET = "ISO-8859-1";
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final WritableByteChannel channel;
+    private final int lineWidth;
+    private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+
+    /**
+     * @param channel   the channel to write to
+     * @param lineWidth the number of residues per line, or 0 to write each
+     *                  sequence on a single line
+     */
+    public FastaWriter(WritableByteChannel channel, int lineWidth) {
+        if (lineWidth < 0)
+            throw new IllegalArgumentException(
+                "Line width must not be negative: " + lineWidth );
+        this.channel = channel;
+        this.lineWidth = lineWidth;
+    }
+
+    /**
+     * Writes one sequence.
+     */
+    public void write(ISequence sequence) throws IOException {
+        put('>');
+        String name = sequence.getName();
+        if (name != null)
+            put( ascii(name) );
+        put('\n');
+
+        if (sequence instanceof BiojavaSequence)
+            putResidues( ( (BiojavaSequence) sequence )
+                             .getPlainSequenceBytes() );
+        else
+            putResidues( ascii( sequence.getPlainSequence() ) );
+    }
+
+    /**
+     * Writes any buffered output to the channel.
+     */
+    public void flush() throws IOException {
+        buffer.flip();
+        while ( buffer.hasRemaining() )
+            channel.write(buffer);
+        buffer.clear();
+    }
+
+    /**
+     * Flushes and closes the channel.
+     */
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            channel.close();
+        }
+    }
+
+    private void putResidues(byte[] residues) throws IOException {
+        int width = lineWidth == 0 ? Math.max(1, residues.length)
+                                   : lineWidth;
+        for ( int line = 0; line < residues.length; line += width ) {
+            int end = Math.min(residues.length, line + width);
+            for ( int i = line; i < end; ++i ) {
+                if ( !buffer.hasRemaining() )
+                    flush();
+                // '~' is not understood by BioJava, see bug #1569
+                buffer.put( residues[i] == '~' ? (byte) '-' : residues[i] );
+            }
+            put('\n');
+        }
+    }
+
+    private void put(byte[] bytes) throws IOException {
+        for ( int offset = 0; offset < bytes.length; ) {
+            if ( !buffer.hasRemaining() )
+                flush();
+            int length = Math.min( buffer.remaining(),
+                                   bytes.length - offset );
+            buffer.put(bytes, offset, length);
+            offset += length;
+        }
+    }
+
+    private void put(char c) throws IOException {
+        if ( !buffer.hasRemaining() )
+            flush();
+        buffer.put( (byte) c );
+    }
+
+    private static byte[] ascii(String s) {
+        try {
+            return s.getBytes(CHARSET);
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,153 @@
+/* *****************************************************************************
+ * Copyright (c) 2009 The Bioclipse Project and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * <http://www.eclipse.org/legal/epl-v10.html>
+ *
+ * Contact: http://www.bioclipse.net/
+ ******************************************************************************/
+
+package net.bioclipse.biojava.business;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import net.bioclipse.biojava.domain.BiojavaTranslatedProtein;
+import net.bioclipse.core.domain.IProtein;
+
+import org.biojava.bio.seq.ProteinTools;
+import org.biojava.bio.symbol.IllegalSymbolException;
+
+/**
+ * Translates the six reading frames of a DNA sequence, or the open reading
+ * frames in them. An instance holds no state besides its settings and may
+ * be shared between threads.
+ * <p>
+ * An open reading frame runs from a start codon to the next in-frame stop
+ * codon, which is included in its coordinates but not in its translation.
+ * Its first codon is always translated as methionine, whichever start codon
+ * it is. Reading frames that run off the end of the sequence without a stop
+ * codon are not reported.
+ */
+class FrameTranslator {
+
+    private static final int[] FRAMES = { 1, 2, 3, -1, -2, -3 };
+
+    private final CodonTable table;
+    private final boolean[] starts;
+    private final boolean[] stops;
+    private final int minLength;
+
+    /**
+     * @param table       the genetic code
+     * @param startCodons the start codons, separated by commas or spaces,
+     *                    or <code>null</code> for <code>ATG</code>
+     * @param stopCodons  the stop codons, separated by commas or spaces,
+     *                    or <code>null</code> for the stop codons of
+     *                    <code>table</code>
+     * @param minLength   the minimum number of amino acids of an open
+     *                    reading frame
+     * @throws IllegalArgumentException if a codon could not be read
+     */
+    FrameTranslator( CodonTable table,
+                     String startCodons,
+                     String stopCodons,
+                     int minLength ) {
+        this.table = table;
+        this.minLength = minLength;
+        this.starts = codons( startCodons == null ? "ATG" : startCodons );
+        if (stopCodons == null) {
+            stops = new boolean[64];
+            for ( int codon = 0; codon < 64; ++codon )
+                stops[codon] = table.isStop(codon);
+        }
+        else
+            stops = codons(stopCodons);
+    }
+
+    /**
+     * Translates all six reading frames of <code>residues</code>, in the
+     * order +1, +2, +3, -1, -2, -3. Codons with ambiguous bases are
+     * translated to <code>X</code>.
+     */
+    List<IProtein> sixFrames(String name, byte[] residues) {
+        List<IProtein> proteins = new ArrayList<IProtein>(6);
+        byte[] reverse = Nucleotides.reverseComplement(residues, false);
+        for ( int frame : FRAMES ) {
+            byte[] strand = frame > 0 ? residues : reverse;
+            int from = Math.abs(frame) - 1,
+                to   = from + (strand.length - from) / 3 * 3;
+            proteins.add( protein( name, residues.length, frame, from, to,
+                                   table.translate( strand, from, to,
+                                                    false, 'X' ) ) );
+        }
+        return proteins;
+    }
+
+    /**
+     * Finds the open reading frames of <code>residues</code>, frame by frame
+     * in the order +1, +2, +3, -1, -2, -3 and by position within a frame.
+     */
+    List<IProtein> orfs(String name, byte[] residues) {
+        List<IProtein> proteins = new ArrayList<IProtein>();
+        byte[] reverse = Nucleotides.reverseComplement(residues, false);
+        for ( int frame : FRAMES ) {
+            byte[] strand = frame > 0 ? residues : reverse;
+            int orfStart = -1;
+            for ( int p = Math.abs(frame) - 1; p + 3 <= strand.length;
+                  p += 3 ) {
+                int codon = table.codonAt(strand, p, false);
+                if (orfStart < 0) {
+                    if ( codon >= 0 && starts[codon] )
+                        orfStart = p;
+                }
+                else if ( codon >= 0 && stops[codon] ) {
+                    if ( (p - orfStart) / 3 >= minLength ) {
+                        char[] aminoAcids = table.translate(
+                            strand, orfStart, p, false, 'X' ).toCharArray();
+                        aminoAcids[0] = 'M';
+                        proteins.add( protein( name, residues.length, frame,
+                                               orfStart, p + 3,
+                                               new String(aminoAcids) ) );
+                    }
+                    orfStart = -1;
+                }
+            }
+        }
+        return proteins;
+    }
+
+    /**
+     * Creates the protein for <code>strand[from, to)</code>, converting the
+     * coordinates to one-based forward strand positions.
+     */
+    private static IProtein protein( String name, int length, int frame,
+                                     int from, int to, String aminoAcids ) {
+        int start = frame > 0 ? from + 1 : length - to + 1,
+            end   = frame > 0 ? to       : length - from;
+        String proteinName = name + "_" + (frame > 0 ? "+" : "") + frame
+                             + "_" + start + "_" + end;
+        try {
+            return new BiojavaTranslatedProtein(
+                ProteinTools.createProteinSequence(aminoAcids, proteinName),
+                name, frame, start, end );
+        } catch (IllegalSymbolException e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
+
+    private static boolean[] codons(String codons) {
+        boolean[] set = new boolean[64];
+        for ( String codon : codons.trim().split("[,\\s]+") ) {
+            if ( codon.length() == 0 )
+                continue;
+            int index = CodonTable.codonIndex(codon);
+            if (index < 0)
+                throw new IllegalArgumentException(
+                    "Not a codon: '" + codon + "'" );
+            set[index] = true;
+        }
+        return set;
+    }
+}
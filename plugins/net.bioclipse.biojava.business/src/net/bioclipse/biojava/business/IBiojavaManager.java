@@ -308,6 +308,81 @@ public interface IBiojavaManager extends IBioclipseManager {
         params = "IRNA rna, String name)" )
     public IProtein RNAtoProtein(IRNA rna, String name);
 
+    /**
+     * Returns the <code>IProtein</code> sequence equivalent of the given
+     * <code>IDNA</code> sequence, translated with the genetic code with the
+     * given NCBI translation table id. With table 1, the standard code, the
+     * result is that of {@link #DNAtoProtein(IDNA)}. With other tables a
+     * trailing partial codon is ignored and codons with ambiguous bases are
+     * translated to <code>X</code>.
+     *
+     * @param dna         the sequence to be converted
+     * @param geneticCode the NCBI translation table id, e.g. 1 for the
+     *                    standard code, 2 for vertebrate mitochondria or 11
+     *                    for bacteria
+     * @return the result of the conversion
+     */
+    @PublishedMethod(
+        methodSummary = "Returns the protein sequence equivalent of the " +
+                        "given DNA sequence, using the genetic code with " +
+                        "the given NCBI translation table id.",
+        params = "IDNA dna, int geneticCode" )
+    public IProtein DNAtoProtein(IDNA dna, int geneticCode);
+
+    /**
+     * Returns the <code>IProtein</code> sequence equivalents of the given
+     * list of <code>IDNA</code> sequences, translated with the genetic code
+     * with the given NCBI translation table id.
+     *
+     * @param dnas        the sequences to be converted
+     * @param geneticCode the NCBI translation table id
+     * @return the result of the conversion
+     * @see #DNAtoProtein(IDNA, int)
+     */
+    @PublishedMethod(
+        methodSummary = "Returns the protein sequence equivalents of the " +
+                        "given list of DNA sequences, using the genetic " +
+                        "code with the given NCBI translation table id.",
+        params = "List<IDNA> dnas, int geneticCode" )
+    public List<IProtein> DNAtoProtein(List<IDNA> dnas, int geneticCode);
+
+    /**
+     * Returns the <code>IProtein</code> sequence equivalent of the given
+     * <code>IRNA</code> sequence, translated with the genetic code with the
+     * given NCBI translation table id. With table 1, the standard code, the
+     * result is that of {@link #RNAtoProtein(IRNA)}. With other tables
+     * codons with ambiguous bases are translated to <code>X</code>.
+     *
+     * @param rna         the sequence to be converted
+     * @param geneticCode the NCBI translation table id
+     * @return the result of the conversion
+     * @throws IllegalArgumentException if the length of the sequence is not
+     *                                  a multiple of three
+     */
+    @PublishedMethod(
+        methodSummary = "Returns the protein sequence equivalent of the " +
+                        "given RNA sequence, using the genetic code with " +
+                        "the given NCBI translation table id.",
+        params = "IRNA rna, int geneticCode" )
+    public IProtein RNAtoProtein(IRNA rna, int geneticCode);
+
+    /**
+     * Returns the <code>IProtein</code> sequence equivalents of the given
+     * list of <code>IRNA</code> sequences, translated with the genetic code
+     * with the given NCBI translation table id.
+     *
+     * @param rnas        the sequences to be converted
+     * @param geneticCode the NCBI translation table id
+     * @return the result of the conversion
+     * @see #RNAtoProtein(IRNA, int)
+     */
+    @PublishedMethod(
+        methodSummary = "Returns the protein sequence equivalents of the " +
+                        "given list of RNA sequences, using the genetic " +
+                        "code with the given NCBI translation table id.",
+        params = "List<IRNA> rnas, int geneticCode" )
+    public List<IProtein> RNAtoProtein(List<IRNA> rnas, int geneticCode);
+
     /**
      * Returns the <code>IRNA</code> sequence equivalent of the given
      * <code>IDNA</code> sequence. The conversion process is called
@@ -431,6 +506,278 @@ public interface IBiojavaManager extends IBioclipseManager {
     public List<ISequence> sequencesFromFile( IFile file )
         throws FileNotFoundException;
 
+    /**
+     * Returns an iterator over the sequences in the given file. The file is
+     * parsed lazily, one record at a time, so only the sequence currently
+     * returned by the iterator needs to be held in memory. The file is
+     * closed when the last sequence has been read, or when
+     * {@link SequenceIterator#close()} is called.
+     *
+     * @param path the path to the sequence file
+     * @return an iterator over the sequences in the file
+     * @throws FileNotFoundException if the file could not be opened
+     */
+    @PublishedMethod(
+        methodSummary = "Returns an iterator reading the sequences in the " +
+                        "file at path one at a time, without loading the " +
+                        "whole file into memory.",
+        params = "String path" )
+    public SequenceIterator sequenceIterator( String path )
+        throws FileNotFoundException;
+
+    public SequenceIterator sequenceIterator( IFile file )
+        throws FileNotFoundException;
+
+    /**
+     * Translates all six reading frames of each of the given DNA sequences
+     * using the standard genetic code. The sequences are translated in
+     * parallel.
+     *
+     * @param dnas the sequences to translate
+     * @return six proteins per sequence, in the order of the sequences and
+     *         of the frames +1, +2, +3, -1, -2, -3
+     */
+    @PublishedMethod(
+        methodSummary = "Translates all six reading frames of each of the " +
+                        "given DNA sequences using the standard genetic " +
+                        "code.",
+        params = "List<IDNA> dnas" )
+    public List<IProtein> sixFrameTranslation( List<IDNA> dnas );
+
+    /**
+     * Translates all six reading frames of each of the given DNA sequences.
+     * The sequences are translated in parallel.
+     *
+     * @param dnas        the sequences to translate
+     * @param geneticCode the NCBI translation table id, e.g. 1 for the
+     *                    standard code or 11 for bacteria
+     * @return six proteins per sequence, in the order of the sequences and
+     *         of the frames +1, +2, +3, -1, -2, -3
+     */
+    @PublishedMethod(
+        methodSummary = "Translates all six reading frames of each of the " +
+                        "given DNA sequences using the genetic code with " +
+                        "the given NCBI translation table id.",
+        params = "List<IDNA> dnas, int geneticCode" )
+    public List<IProtein> sixFrameTranslation( List<IDNA> dnas,
+                                               int geneticCode );
+
+    /**
+     * Translates all six reading frames of each DNA sequence in a file. The
+     * file is read one sequence at a time and the sequences are translated
+     * in parallel.
+     *
+     * @param path        the path to a file of DNA sequences
+     * @param geneticCode the NCBI translation table id
+     * @return six proteins per sequence, in file order
+     * @throws FileNotFoundException if the file could not be opened
+     */
+    @PublishedMethod(
+        methodSummary = "Translates all six reading frames of each DNA " +
+                        "sequence in the file at path using the genetic " +
+                        "code with the given NCBI translation table id.",
+        params = "String path, int geneticCode" )
+    public List<IProtein> sixFrameTranslation( String path, int geneticCode )
+        throws FileNotFoundException;
+
+    public List<IProtein> sixFrameTranslation( IFile file, int geneticCode )
+        throws FileNotFoundException;
+
+    /**
+     * Finds the open reading frames in all six reading frames of each of the
+     * given DNA sequences, starting at <code>ATG</code> and ending at a stop
+     * codon of the standard genetic code. The sequences are searched in
+     * parallel.
+     *
+     * @param dnas      the sequences to search
+     * @param minLength the minimum number of amino acids of a reported open
+     *                  reading frame
+     * @return the translated open reading frames, with their coordinates
+     */
+    @PublishedMethod(
+        methodSummary = "Finds the open reading frames of at least minLength " +
+                        "amino acids in the given DNA sequences.",
+        params = "List<IDNA> dnas, int minLength" )
+    public List<IProtein> findORFs( List<IDNA> dnas, int minLength );
+
+    /**
+     * Finds the open reading frames in all six reading frames of each of the
+     * given DNA sequences. The sequences are searched in parallel.
+     *
+     * @param dnas        the sequences to search
+     * @param minLength   the minimum number of amino acids of a reported open
+     *                    reading frame
+     * @param startCodons the start codons separated by commas, e.g.
+     *                    <code>"ATG,GTG,TTG"</code>, or <code>null</code>
+     *                    for <code>ATG</code>
+     * @param stopCodons  the stop codons separated by commas, or
+     *                    <code>null</code> for those of the genetic code
+     * @param geneticCode the NCBI translation table id
+     * @return the translated open reading frames, with their coordinates
+     */
+    @PublishedMethod(
+        methodSummary = "Finds the open reading frames of at least minLength " +
+                        "amino acids in the given DNA sequences, using the " +
+                        "given start and stop codons and the genetic code " +
+                        "with the given NCBI translation table id.",
+        params = "List<IDNA> dnas, int minLength, String startCodons, " +
+                 "String stopCodons, int geneticCode" )
+    public List<IProtein> findORFs( List<IDNA> dnas,
+                                    int minLength,
+                                    String startCodons,
+                                    String stopCodons,
+                                    int geneticCode );
+
+    /**
+     * Finds the open reading frames of each DNA sequence in a file. The file
+     * is read one sequence at a time and the sequences are searched in
+     * parallel.
+     *
+     * @see #findORFs(List, int, String, String, int)
+     * @throws FileNotFoundException if the file could not be opened
+     */
+    @PublishedMethod(
+        methodSummary = "Finds the open reading frames of at least minLength " +
+                        "amino acids in the DNA sequences of the file at " +
+                        "path.",
+        params = "String path, int minLength, String startCodons, " +
+                 "String stopCodons, int geneticCode" )
+    public List<IProtein> findORFs( String path,
+                                    int minLength,
+                                    String startCodons,
+                                    String stopCodons,
+                                    int geneticCode )
+        throws FileNotFoundException;
+
+    public List<IProtein> findORFs( IFile file,
+                                    int minLength,
+                                    String startCodons,
+                                    String stopCodons,
+                                    int geneticCode )
+        throws FileNotFoundException;
+
+    /**
+     * Reverse translates a protein into degenerate DNA using the standard
+     * genetic code. Each amino acid becomes the IUPAC codes that cover all
+     * of its codons position by position, e.g. <code>tgy</code> for
+     * cysteine, as for degenerate primers.
+     *
+     * @param protein the protein to reverse translate
+     * @return the degenerate DNA
+     */
+    @PublishedMethod(
+        methodSummary = "Reverse translates a protein into degenerate DNA " +
+                        "using the standard genetic code.",
+        params = "IProtein protein" )
+    public IDNA reverseTranslate( IProtein protein );
+
+    /**
+     * Reverse translates a protein into DNA. If a codon usage table is given
+     * each amino acid becomes its most frequently used codon, otherwise the
+     * DNA is degenerate as for {@link #reverseTranslate(IProtein)}.
+     *
+     * @param protein     the protein to reverse translate
+     * @param codonUsage  a codon usage table, with a number following each
+     *                    codon, e.g. <code>"UUU 17.6 UUC 20.3 ..."</code>,
+     *                    or <code>null</code> for degenerate DNA
+     * @param geneticCode the NCBI translation table id
+     * @return the reverse translated DNA
+     */
+    @PublishedMethod(
+        methodSummary = "Reverse translates a protein into DNA, using the " +
+                        "most frequent codon of the given codon usage " +
+                        "table, or IUPAC codes if codonUsage is null.",
+        params = "IProtein protein, String codonUsage, int geneticCode" )
+    public IDNA reverseTranslate( IProtein protein,
+                                  String codonUsage,
+                                  int geneticCode );
+
+    /**
+     * Reverse translates proteins into degenerate DNA using the standard
+     * genetic code.
+     *
+     * @param proteins the proteins to reverse translate
+     * @return the degenerate DNA, in the order of the proteins
+     * @see #reverseTranslate(IProtein)
+     */
+    @PublishedMethod(
+        methodSummary = "Reverse translates a list of proteins into " +
+                        "degenerate DNA using the standard genetic code.",
+        params = "List<IProtein> proteins" )
+    public List<IDNA> reverseTranslate( List<IProtein> proteins );
+
+    /**
+     * Reverse translates proteins into DNA.
+     *
+     * @param proteins    the proteins to reverse translate
+     * @param codonUsage  a codon usage table, or <code>null</code> for
+     *                    degenerate DNA
+     * @param geneticCode the NCBI translation table id
+     * @return the reverse translated DNA, in the order of the proteins
+     * @see #reverseTranslate(IProtein, String, int)
+     */
+    @PublishedMethod(
+        methodSummary = "Reverse translates a list of proteins into DNA, " +
+                        "using the most frequent codon of the given codon " +
+                        "usage table, or IUPAC codes if codonUsage is null.",
+        params = "List<IProtein> proteins, String codonUsage, " +
+                 "int geneticCode" )
+    public List<IDNA> reverseTranslate( List<IProtein> proteins,
+                                        String codonUsage,
+                                        int geneticCode );
+
+    /**
+     * Returns the reverse complement of the given <code>IDNA</code>
+     * sequence. Ambiguity codes are complemented and gaps kept.
+     *
+     * @param dna the sequence to reverse complement
+     * @return the reverse complement, with the same name
+     */
+    @PublishedMethod(
+        methodSummary = "Returns the reverse complement of the given DNA " +
+                        "sequence.",
+        params = "IDNA dna" )
+    public IDNA reverseComplement( IDNA dna );
+
+    /**
+     * Returns the reverse complements of the given <code>IDNA</code>
+     * sequences.
+     *
+     * @param dnas the sequences to reverse complement
+     * @return the reverse complements, in the order of the sequences
+     */
+    @PublishedMethod(
+        methodSummary = "Returns the reverse complements of the given list " +
+                        "of DNA sequences.",
+        params = "List<IDNA> dnas" )
+    public List<IDNA> reverseComplement( List<IDNA> dnas );
+
+    /**
+     * Returns the complementary DNA of the given <code>IRNA</code> sequence,
+     * as made by reverse transcription.
+     *
+     * @param rna the sequence to reverse transcribe
+     * @return the complementary DNA, with the same name
+     */
+    @PublishedMethod(
+        methodSummary = "Returns the complementary DNA of the given RNA " +
+                        "sequence.",
+        params = "IRNA rna" )
+    public IDNA reverseTranscribe( IRNA rna );
+
+    /**
+     * Returns the complementary DNA of the given <code>IRNA</code>
+     * sequences.
+     *
+     * @param rnas the sequences to reverse transcribe
+     * @return the complementary DNA, in the order of the sequences
+     */
+    @PublishedMethod(
+        methodSummary = "Returns the complementary DNA of the given list of " +
+                        "RNA sequences.",
+        params = "List<IRNA> rnas" )
+    public List<IDNA> reverseTranscribe( List<IRNA> rnas );
+
     @PublishedMethod(
         methodSummary = "Saves an array of proteins to a FASTA file.",
         params = "String path" )
@@ -448,11 +795,33 @@ public interface IBiojavaManager extends IBioclipseManager {
                                       IProgressMonitor monitor )
                                       throws BioclipseException;
 
+    @PublishedMethod(
+        methodSummary = "Saves an array of sequences to a FASTA file, with " +
+                        "lineWidth residues per line, or each sequence on " +
+                        "one line if lineWidth is 0.",
+        params = "List<ISequence> sequences, String path, int lineWidth" )
+    public void sequencesToFASTAfile( List<? extends ISequence> sequences,
+                                      String path,
+                                      int lineWidth );
+    public void sequencesToFASTAfile( List<? extends ISequence> sequences,
+                                      IFile file,
+                                      int lineWidth,
+                                      IProgressMonitor monitor )
+                                      throws BioclipseException;
+
     @PublishedMethod(
            methodSummary = "Serialize a list of sequences to a FASTA String.",
            params = "List<ISequence> sequences" )
     public String sequencesToFASTAString( List<? extends ISequence> sequences );
 
+    @PublishedMethod(
+        methodSummary = "Serialize a list of sequences to a FASTA String, " +
+                        "with lineWidth residues per line, or each sequence " +
+                        "on one line if lineWidth is 0.",
+        params = "List<ISequence> sequences, int lineWidth" )
+    public String sequencesToFASTAString( List<? extends ISequence> sequences,
+                                          int lineWidth );
+
     @PublishedMethod(
                      methodSummary = "Serialize a list of DNA sequences " +
                              "to a FASTA String.",
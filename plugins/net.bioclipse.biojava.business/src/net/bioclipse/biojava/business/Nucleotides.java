@@ -0,0 +1,81 @@
+/* *****************************************************************************
+ * Copyright (c) 2009 The Bioclipse Project and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * <http://www.eclipse.org/legal/epl-v10.html>
+ *
+ * Contact: http://www.bioclipse.net/
+ ******************************************************************************/
+
+package net.bioclipse.biojava.business;
+
+/**
+ * Operations on nucleotide residues held as ASCII bytes. IUPAC ambiguity
+ * codes are complemented to the code of the complementary set of bases, and
+ * gaps are left as they are. Case is preserved.
+ */
+public final class Nucleotides {
+
+    private static final byte[] DNA_COMPLEMENT = complements("acgt", "acgt"),
+                                RNA_COMPLEMENT = complements("acgu", "acgu"),
+                                CDNA           = complements("acgu", "acgt");
+
+    private Nucleotides() {
+    }
+
+    /**
+     * Returns the reverse complement of <code>residues</code> as a new
+     * array.
+     *
+     * @param residues nucleotides as ASCII
+     * @param rna      <code>true</code> to complement <code>a</code> to
+     *                 <code>u</code>, <code>false</code> to complement it
+     *                 to <code>t</code>
+     * @throws IllegalArgumentException if a residue is not a nucleotide
+     */
+    public static byte[] reverseComplement(byte[] residues, boolean rna) {
+        return reverse( residues, rna ? RNA_COMPLEMENT : DNA_COMPLEMENT );
+    }
+
+    /**
+     * Reverse transcribes RNA into its complementary DNA, returned as a new
+     * array.
+     *
+     * @param rna RNA residues as ASCII
+     * @throws IllegalArgumentException if a residue is not an RNA nucleotide
+     */
+    public static byte[] reverseTranscribe(byte[] rna) {
+        return reverse(rna, CDNA);
+    }
+
+    private static byte[] reverse(byte[] residues, byte[] complement) {
+        byte[] result = new byte[residues.length];
+        for ( int i = 0, j = residues.length - 1; j >= 0; ++i, --j ) {
+            byte b = residues[j];
+            byte c = b < 0 ? 0 : complement[b];
+            if (c == 0)
+                throw new IllegalArgumentException(
+                    "Not a nucleotide: '" + (char) (b & 0xff) + "'" );
+            result[i] = c;
+        }
+        return result;
+    }
+
+    /**
+     * Builds a table mapping each residue of <code>fromBases</code> to the
+     * complementary residue in the alphabet of <code>toBases</code>.
+     */
+    private static byte[] complements(String fromBases, String toBases) {
+        String from = fromBases + "rykmswbdhvn-",
+               to   = new StringBuilder(toBases).reverse() + "yrmkswvhdbn-";
+        byte[] table = new byte[128];
+        for ( int i = 0; i < from.length(); ++i ) {
+            char f = from.charAt(i), t = to.charAt(i);
+            table[f] = (byte) t;
+            table[Character.toUpperCase(f)]
+                = (byte) Character.toUpperCase(t);
+        }
+        return table;
+    }
+}
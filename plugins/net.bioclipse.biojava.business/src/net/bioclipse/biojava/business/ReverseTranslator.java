@@ -0,0 +1,184 @@
+/* *****************************************************************************
+ * Copyright (c) 2009 The Bioclipse Project and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * <http://www.eclipse.org/legal/epl-v10.html>
+ *
+ * Contact: http://www.bioclipse.net/
+ ******************************************************************************/
+
+package net.bioclipse.biojava.business;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Reverse translates proteins into DNA, one precomputed codon per amino
+ * acid. There are two modes:
+ * <ul>
+ *   <li><em>degenerate</em>, where each amino acid becomes the IUPAC
+ *       codes covering all of its codons position by position, as used for
+ *       degenerate primers, and</li>
+ *   <li><em>most likely</em>, where each amino acid becomes its most
+ *       frequent codon according to a codon usage table.</li>
+ * </ul>
+ * The ambiguous amino acids <code>B</code>, <code>Z</code> and
+ * <code>J</code> are handled as the union of the amino acids they stand
+ * for, and <code>X</code> becomes <code>nnn</code>. Instances are immutable.
+ */
+public final class ReverseTranslator {
+
+    private static final String BASES = "tcag";
+
+    /** IUPAC codes indexed by a bit mask of the bases t, c, a and g. */
+    private static final String IUPAC = "-tcyawmhgksbrdvn";
+
+    private static final Pattern USAGE
+        = Pattern.compile( "([ACGTUacgtu]{3})[\\s:=]+([0-9]*\\.?[0-9]+)" );
+
+    /** Codons by amino acid, as lower case ASCII. */
+    private final byte[][] codons = new byte[128][];
+
+    private ReverseTranslator() {
+    }
+
+    /**
+     * Creates a reverse translator in degenerate mode.
+     *
+     * @param table the genetic code
+     */
+    public static ReverseTranslator degenerate(CodonTable table) {
+        ReverseTranslator translator = new ReverseTranslator();
+        for ( char aminoAcid = 'A'; aminoAcid <= 'Z'; ++aminoAcid )
+            translator.add( aminoAcid, degenerateCodon(
+                                           synonyms(table, aminoAcid) ) );
+        translator.add( '*', degenerateCodon( synonyms(table, '*') ) );
+        translator.add( 'X', "nnn" );
+        return translator;
+    }
+
+    /**
+     * Creates a reverse translator in most likely mode. An amino acid none
+     * of whose codons are in the usage table gets its first codon in
+     * <code>TCAG</code> order.
+     *
+     * @param table the genetic code
+     * @param usage the usage of each of the 64 codons, indexed as in
+     *              {@link CodonTable}
+     */
+    public static ReverseTranslator mostLikely( CodonTable table,
+                                                double[] usage ) {
+        ReverseTranslator translator = new ReverseTranslator();
+        for ( char aminoAcid = 'A'; aminoAcid <= 'Z'; ++aminoAcid )
+            translator.add( aminoAcid, mostLikelyCodon(
+                                           synonyms(table, aminoAcid),
+                                           usage ) );
+        translator.add( '*', mostLikelyCodon( synonyms(table, '*'), usage ) );
+        translator.add( 'X', "nnn" );
+        return translator;
+    }
+
+    /**
+     * Reads a codon usage table. Any text with a number following each
+     * codon will do, such as <code>"ATG:1.0, TGG:1.0"</code> or the usual
+     * <code>"UUU 17.6(714298) UCU 15.2(618711) ..."</code> tables.
+     * Codons that are not mentioned get a usage of 0.
+     *
+     * @throws IllegalArgumentException if no codon could be read
+     */
+    public static double[] parseCodonUsage(String table) {
+        double[] usage = new double[64];
+        Matcher matcher = USAGE.matcher(table);
+        boolean found = false;
+        while ( matcher.find() ) {
+            usage[ CodonTable.codonIndex( matcher.group(1) ) ]
+                = Double.parseDouble( matcher.group(2) );
+            found = true;
+        }
+        if (!found)
+            throw new IllegalArgumentException(
+                "No codon usage could be read from: " + table );
+        return usage;
+    }
+
+    /**
+     * Reverse translates a protein.
+     *
+     * @param protein amino acids as ASCII, in upper or lower case
+     * @return the DNA as lower case ASCII, three bases per amino acid
+     * @throws IllegalArgumentException if an amino acid has no codon
+     */
+    public byte[] reverseTranslate(byte[] protein) {
+        byte[] dna = new byte[protein.length * 3];
+        for ( int i = 0; i < protein.length; ++i ) {
+            byte aminoAcid = protein[i];
+            byte[] codon = aminoAcid < 0 ? null : codons[aminoAcid];
+            if (codon == null)
+                throw new IllegalArgumentException(
+                    "No codon for amino acid '" + (char) (aminoAcid & 0xff)
+                    + "'" );
+            dna[i * 3]     = codon[0];
+            dna[i * 3 + 1] = codon[1];
+            dna[i * 3 + 2] = codon[2];
+        }
+        return dna;
+    }
+
+    private void add(char aminoAcid, String codon) {
+        if (codon == null)
+            return;
+        byte[] bytes = { (byte) codon.charAt(0),
+                         (byte) codon.charAt(1),
+                         (byte) codon.charAt(2) };
+        codons[aminoAcid] = bytes;
+        codons[ Character.toLowerCase(aminoAcid) ] = bytes;
+    }
+
+    /**
+     * Returns a bit set of the codons coding for an amino acid.
+     */
+    private static long synonyms(CodonTable table, char aminoAcid) {
+        switch (aminoAcid) {
+            case 'B':
+                return synonyms(table, 'D') | synonyms(table, 'N');
+            case 'Z':
+                return synonyms(table, 'E') | synonyms(table, 'Q');
+            case 'J':
+                return synonyms(table, 'I') | synonyms(table, 'L');
+        }
+        long codons = 0;
+        for ( int codon = 0; codon < 64; ++codon )
+            if ( table.aminoAcid(codon) == aminoAcid )
+                codons |= 1L << codon;
+        return codons;
+    }
+
+    private static String degenerateCodon(long codons) {
+        if (codons == 0)
+            return null;
+        int[] masks = new int[3];
+        for ( int codon = 0; codon < 64; ++codon )
+            if ( (codons & 1L << codon) != 0 ) {
+                masks[0] |= 1 << (codon >> 4);
+                masks[1] |= 1 << (codon >> 2 & 3);
+                masks[2] |= 1 << (codon & 3);
+            }
+        return new String( new char[] { IUPAC.charAt(masks[0]),
+                                        IUPAC.charAt(masks[1]),
+                                        IUPAC.charAt(masks[2]) } );
+    }
+
+    private static String mostLikelyCodon(long codons, double[] usage) {
+        int best = -1;
+        for ( int codon = 0; codon < 64; ++codon )
+            if ( (codons & 1L << codon) != 0
+                 && (best < 0 || usage[codon] > usage[best]) )
+                best = codon;
+        if (best < 0)
+            return null;
+        return new String( new char[] { BASES.charAt(best >> 4),
+                                        BASES.charAt(best >> 2 & 3),
+                                        BASES.charAt(best & 3) } );
+    }
+}
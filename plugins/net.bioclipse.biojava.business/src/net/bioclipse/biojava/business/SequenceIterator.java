@@ -0,0 +1,128 @@
+/* *****************************************************************************
+ * Copyright (c) 2009 The Bioclipse Project and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * <http://www.eclipse.org/legal/epl-v10.html>
+ *
+ * Contact: http://www.bioclipse.net/
+ ******************************************************************************/
+
+package net.bioclipse.biojava.business;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import net.bioclipse.biojava.domain.BiojavaDNA;
+import net.bioclipse.biojava.domain.BiojavaProtein;
+import net.bioclipse.biojava.domain.BiojavaRNA;
+import net.bioclipse.core.domain.ISequence;
+
+import org.apache.log4j.Logger;
+import org.biojava.bio.BioException;
+import org.biojavax.Namespace;
+import org.biojavax.RichObjectFactory;
+import org.biojavax.bio.seq.RichSequence;
+import org.biojavax.bio.seq.RichSequenceIterator;
+
+/**
+ * Reads sequences from a stream one record at a time. Only the record
+ * currently being parsed is held in memory, so arbitrarily large sequence
+ * files can be processed in constant space.
+ * <p>
+ * The underlying stream is closed when the last sequence has been read, or
+ * when {@link #close()} is called, whichever comes first.
+ */
+public class SequenceIterator implements Iterator<ISequence>, Closeable {
+
+    private static final Logger logger
+        = Logger.getLogger(SequenceIterator.class);
+
+    private final InputStream stream;
+    private final RichSequenceIterator seqit;
+
+    private ISequence next;
+    private boolean closed;
+
+    /**
+     * Creates an iterator reading from <code>stream</code>. The format of
+     * the stream is guessed by BioJava from its first lines.
+     *
+     * @param stream the stream to read sequences from
+     * @throws IOException if the format of the stream could not be
+     *                     recognised
+     */
+    public SequenceIterator(InputStream stream) throws IOException {
+        this.stream = new BufferedInputStream(stream);
+        Namespace ns = RichObjectFactory.getDefaultNamespace();
+        try {
+            seqit = RichSequence.IOTools.readStream(
+                        (BufferedInputStream) this.stream, ns );
+        } catch (IOException e) {
+            close();
+            throw e;
+        }
+    }
+
+    public boolean hasNext() {
+        if (next == null && !closed)
+            next = readNext();
+        return next != null;
+    }
+
+    public ISequence next() {
+        if (!hasNext())
+            throw new NoSuchElementException();
+        ISequence result = next;
+        next = null;
+        return result;
+    }
+
+    public void remove() {
+        throw new UnsupportedOperationException(
+            "Sequences cannot be removed from a file through its iterator"
+        );
+    }
+
+    public void close() {
+        if (closed)
+            return;
+        closed = true;
+        try {
+            stream.close();
+        } catch (IOException e) {
+            logger.debug("Could not close sequence stream", e);
+        }
+    }
+
+    private ISequence readNext() {
+        try {
+            while ( seqit.hasNext() ) {
+                RichSequence rseq = seqit.nextRichSequence();
+                if (rseq != null)
+                    return wrap(rseq);
+            }
+        } catch (NoSuchElementException e) {
+            logger.error("Read past last sequence", e);
+        } catch (BioException e) {
+            logger.error(e);
+        }
+        close();
+        return null;
+    }
+
+    /**
+     * Wraps a BioJava sequence in the Bioclipse domain class matching its
+     * alphabet.
+     */
+    static ISequence wrap(RichSequence rseq) {
+        String alphabet = rseq.getAlphabet().getName();
+        return "DNA".equals(alphabet) ? new BiojavaDNA(rseq)
+             : "RNA".equals(alphabet) ? new BiojavaRNA(rseq)
+             :                          new BiojavaProtein(rseq);
+    }
+}
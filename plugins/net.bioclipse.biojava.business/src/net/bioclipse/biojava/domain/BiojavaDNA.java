@@ -23,12 +23,24 @@ public class BiojavaDNA extends BiojavaSequence
         super(seq);
     }
 
+    /**
+     * Creates a DNA sequence backed by packed nucleotides.
+     */
+    public BiojavaDNA( PackedNucleotides packed,
+                       String name,
+                       String description ) {
+        super(packed, name, description);
+        if ( packed.isRNA() )
+            throw new IllegalArgumentException(
+                "Packed residues are not DNA" );
+    }
+
     public BiojavaDNA() {
         super();
     }
 
     public String toString() {
-        return "DNA " + sequence.getName() + ": '"
-               + sequence.seqString() + "'";
+        return "DNA " + getName() + ": '"
+               + getPlainSequence() + "'";
     }
 }
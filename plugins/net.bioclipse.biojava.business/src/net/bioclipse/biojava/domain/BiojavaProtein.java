@@ -27,7 +27,7 @@ public class BiojavaProtein extends BiojavaSequence
     }
 
     public String toString() {
-        return "Protein " + sequence.getName() + ": '"
-               + sequence.seqString().toLowerCase() + "'";
+        return "Protein " + getName() + ": '"
+               + getPlainSequence().toLowerCase() + "'";
     }
 }
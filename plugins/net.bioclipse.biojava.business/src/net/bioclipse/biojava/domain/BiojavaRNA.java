@@ -23,11 +23,23 @@ public class BiojavaRNA extends BiojavaSequence
         super(seq);
     }
 
+    /**
+     * Creates an RNA sequence backed by packed nucleotides.
+     */
+    public BiojavaRNA( PackedNucleotides packed,
+                       String name,
+                       String description ) {
+        super(packed, name, description);
+        if ( !packed.isRNA() )
+            throw new IllegalArgumentException(
+                "Packed residues are not RNA" );
+    }
+
     public BiojavaRNA() {
     }
 
     public String toString() {
-        return "RNA " + sequence.getName() + ": '"
-               + sequence.seqString() + "'";
+        return "RNA " + getName() + ": '"
+               + getPlainSequence() + "'";
     }
 }
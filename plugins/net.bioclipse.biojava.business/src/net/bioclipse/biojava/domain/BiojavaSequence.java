@@ -14,12 +14,20 @@ package net.bioclipse.biojava.domain;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLong;
 
 import net.bioclipse.core.Recorded;
 import net.bioclipse.core.domain.BioObject;
 import net.bioclipse.core.domain.ISequence;
 
+import org.biojava.bio.BioException;
+import org.biojava.bio.seq.DNATools;
+import org.biojava.bio.seq.RNATools;
 import org.biojava.bio.seq.Sequence;
+import org.biojava.bio.symbol.SymbolList;
+import org.biojava.utils.ChangeAdapter;
+import org.biojava.utils.ChangeEvent;
+import org.biojava.utils.ChangeListener;
 import org.biojavax.Namespace;
 import org.biojavax.RichObjectFactory;
 import org.biojavax.bio.seq.RichSequence;
@@ -30,23 +38,123 @@ import org.biojavax.bio.seq.RichSequence;
  */
 public class BiojavaSequence extends BioObject implements ISequence {
 
+    private static final AtomicLong cacheHits   = new AtomicLong(),
+                                    cacheMisses = new AtomicLong();
+
     Sequence sequence;
 
+    // Compact nucleotide storage, used until a BioJava Sequence is needed
+    private volatile PackedNucleotides packed;
+    private String name;
+    private String description;
+
+    // Plain sequence cache, cleared whenever the BioJava sequence is edited
+    private volatile String plainSequence;
+    private volatile byte[] plainSequenceBytes;
+
+    private final ChangeListener invalidator = new ChangeAdapter() {
+        public void postChange(ChangeEvent event) {
+            invalidate();
+        }
+    };
+
     /**
      * Create a BiojavaSequence from a RichSequence
      * @param richSequence
      */
     public BiojavaSequence(Sequence sequence) {
         super();
-        this.sequence = sequence;
+        attach(sequence);
+    }
+
+    /**
+     * Create a BiojavaSequence backed by packed nucleotides. The BioJava
+     * <code>Sequence</code> is only built if and when
+     * {@link #getParsedResource()} is called.
+     *
+     * @param packed      the residues
+     * @param name        the name of the sequence
+     * @param description a description of the sequence, or <code>null</code>
+     */
+    protected BiojavaSequence( PackedNucleotides packed,
+                               String name,
+                               String description ) {
+        super();
+        this.packed = packed;
+        this.name = name;
+        this.description = description;
     }
     
     public BiojavaSequence() {
     }
 
+    /**
+     * Returns the residues as a string. The string is computed on the first
+     * call and then kept until the underlying sequence is edited.
+     */
     @Recorded
     public String getPlainSequence() {
-        return sequence.seqString();
+        String plain = plainSequence;
+        if (plain != null) {
+            cacheHits.incrementAndGet();
+            return plain;
+        }
+        cacheMisses.incrementAndGet();
+        PackedNucleotides packed = this.packed;
+        plain = packed != null ? packed.toString()
+                               : sequence.seqString();
+        plainSequence = plain;
+        return plain;
+    }
+
+    /**
+     * Returns the residues as ASCII bytes, one per residue. The array is
+     * cached like {@link #getPlainSequence()} and is <em>not</em> copied, so
+     * callers must not modify it.
+     */
+    public byte[] getPlainSequenceBytes() {
+        byte[] bytes = plainSequenceBytes;
+        if (bytes != null) {
+            cacheHits.incrementAndGet();
+            return bytes;
+        }
+        PackedNucleotides packed = this.packed;
+        if (packed != null) {
+            cacheMisses.incrementAndGet();
+            bytes = packed.toBytes();
+        }
+        else {
+            String plain = getPlainSequence();
+            bytes = new byte[plain.length()];
+            for ( int i = 0; i < bytes.length; ++i )
+                bytes[i] = (byte) plain.charAt(i);
+        }
+        plainSequenceBytes = bytes;
+        return bytes;
+    }
+
+    /**
+     * Returns the packed residues backing this sequence, or
+     * <code>null</code> if it is backed by a BioJava sequence.
+     */
+    public PackedNucleotides getPackedNucleotides() {
+        return packed;
+    }
+
+    /**
+     * Returns the number of plain sequence requests, over all sequences,
+     * that were answered from the cache.
+     */
+    public static long getCacheHits() {
+        return cacheHits.get();
+    }
+
+    /**
+     * Returns the number of plain sequence requests, over all sequences,
+     * that had to be computed.
+     */
+    public static long getCacheMisses() {
+        return cacheMisses.get();
     }
 
     /**
@@ -59,7 +167,9 @@ public class BiojavaSequence extends BioObject implements ISequence {
 
         Namespace ns = RichObjectFactory.getDefaultNamespace();   
         try {
-            RichSequence.IOTools.writeFasta(os,sequence,ns);
+            RichSequence.IOTools.writeFasta(os,
+                                            (Sequence) getParsedResource(),
+                                            ns);
             // XXX: Check if we really need the following line.
             os.close();
         } catch (IOException e) {
@@ -72,19 +182,71 @@ public class BiojavaSequence extends BioObject implements ISequence {
     /**
      * Returns the RichSequence
      */
-    public Object getParsedResource() {
+    public synchronized Object getParsedResource() {
+        if (packed != null) {
+            attach( unpack() );
+            packed = null;
+        }
         return sequence;
     }
 
-    public void setRichSequence(RichSequence richSequence) {
-        this.sequence = richSequence;
+    public synchronized void setRichSequence(RichSequence richSequence) {
+        attach(richSequence);
+        this.packed = null;
+        invalidate();
     }
 
     public String getName() {
+        if (packed != null)
+            return name;
         return sequence != null ? sequence.getName()
                                 : "";
     }
 
+    /**
+     * Makes <code>sequence</code> the backing sequence and listens to it for
+     * edits. RichSequences edit their internal symbol list directly, so that
+     * is listened to as well.
+     */
+    private void attach(Sequence sequence) {
+        if (this.sequence != null) {
+            this.sequence.removeChangeListener( invalidator, SymbolList.EDIT );
+            if (this.sequence instanceof RichSequence)
+                ( (RichSequence) this.sequence ).getInternalSymbolList()
+                    .removeChangeListener( invalidator, SymbolList.EDIT );
+        }
+        this.sequence = sequence;
+        if (sequence != null) {
+            sequence.addChangeListener( invalidator, SymbolList.EDIT );
+            if (sequence instanceof RichSequence)
+                ( (RichSequence) sequence ).getInternalSymbolList()
+                    .addChangeListener( invalidator, SymbolList.EDIT );
+        }
+    }
+
+    private void invalidate() {
+        plainSequence = null;
+        plainSequenceBytes = null;
+    }
+
+    /**
+     * Builds the BioJava sequence from the packed residues.
+     */
+    private Sequence unpack() {
+        try {
+            RichSequence rseq = RichSequence.Tools.createRichSequence(
+                name,
+                packed.toString(),
+                packed.isRNA() ? RNATools.getRNA() : DNATools.getDNA()
+            );
+            if (description != null)
+                rseq.setDescription(description);
+            return rseq;
+        } catch (BioException e) {
+            throw new IllegalStateException("Illegal BiojavaSequence", e);
+        }
+    }
+
     @SuppressWarnings("unchecked")
     public Object getAdapter(Class adapter) {
         return super.getAdapter(adapter);
@@ -0,0 +1,83 @@
+/* *****************************************************************************
+ * Copyright (c) 2009 The Bioclipse Project and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * <http://www.eclipse.org/legal/epl-v10.html>
+ *
+ * Contact: http://www.bioclipse.net/
+ ******************************************************************************/
+package net.bioclipse.biojava.domain;
+
+import org.biojava.bio.seq.Sequence;
+
+/**
+ * A protein translated from a region of a DNA sequence, such as a reading
+ * frame or an open reading frame. Coordinates are one-based and inclusive,
+ * and always refer to the forward strand of the DNA, so that
+ * <code>start &lt;= end</code> also for regions on the reverse strand.
+ */
+public class BiojavaTranslatedProtein extends BiojavaProtein {
+
+    private final String source;
+    private final int frame;
+    private final int start;
+    private final int end;
+
+    /**
+     * @param sequence the translated protein
+     * @param source   the name of the DNA it was translated from
+     * @param frame    the reading frame: 1, 2 or 3 on the forward strand and
+     *                 -1, -2 or -3 on the reverse strand
+     * @param start    the first translated base
+     * @param end      the last translated base
+     */
+    public BiojavaTranslatedProtein( Sequence sequence,
+                                     String source,
+                                     int frame,
+                                     int start,
+                                     int end ) {
+        super(sequence);
+        this.source = source;
+        this.frame = frame;
+        this.start = start;
+        this.end = end;
+    }
+
+    /**
+     * Returns the name of the DNA sequence the protein was translated from.
+     */
+    public String getSource() {
+        return source;
+    }
+
+    /**
+     * Returns the reading frame: 1, 2 or 3 on the forward strand and -1, -2
+     * or -3 on the reverse strand.
+     */
+    public int getFrame() {
+        return frame;
+    }
+
+    /**
+     * Returns the position of the first translated base on the forward
+     * strand.
+     */
+    public int getStart() {
+        return start;
+    }
+
+    /**
+     * Returns the position of the last translated base on the forward
+     * strand.
+     */
+    public int getEnd() {
+        return end;
+    }
+
+    public String toString() {
+        return "Protein " + getName() + " [" + source + " "
+               + (frame > 0 ? "+" : "") + frame + " " + start + ".." + end
+               + "]: '" + getPlainSequence().toLowerCase() + "'";
+    }
+}
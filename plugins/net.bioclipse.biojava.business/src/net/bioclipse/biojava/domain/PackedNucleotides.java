@@ -0,0 +1,236 @@
+/* *****************************************************************************
+ * Copyright (c) 2009 The Bioclipse Project and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * <http://www.eclipse.org/legal/epl-v10.html>
+ *
+ * Contact: http://www.bioclipse.net/
+ ******************************************************************************/
+package net.bioclipse.biojava.domain;
+
+import java.util.Arrays;
+
+/**
+ * An immutable, compact store for a DNA or RNA sequence. The four bases are
+ * packed two bits each, four to a byte. Anything else (IUPAC ambiguity codes
+ * and gaps) is kept aside as runs of the same character, so that long
+ * stretches of <code>n</code> or <code>-</code> cost no more than a single
+ * base does.
+ * <p>
+ * Residues are always returned in lower case, as BioJava does for
+ * nucleotide sequences.
+ */
+public final class PackedNucleotides {
+
+    private static final String DNA_BASES = "acgt",
+                                RNA_BASES = "acgu",
+                                OTHERS    = "nrykmswbdhv-",
+                                COMPLEMENTED_OTHERS
+                                          = "nyrmkswvhdb-";
+
+    /** Maps an ASCII character to its 2-bit code, or -1 if not a base. */
+    private static final byte[] DNA_CODES = codes(DNA_BASES),
+                                RNA_CODES = codes(RNA_BASES);
+
+    private final int length;
+    private final byte[] bases;
+    private final boolean rna;
+
+    // Runs of non-base characters, ordered by start position
+    private final int[] runStarts;
+    private final int[] runLengths;
+    private final byte[] runChars;
+
+    private PackedNucleotides( int length, byte[] bases, boolean rna,
+                               int[] runStarts, int[] runLengths,
+                               byte[] runChars ) {
+        this.length     = length;
+        this.bases      = bases;
+        this.rna        = rna;
+        this.runStarts  = runStarts;
+        this.runLengths = runLengths;
+        this.runChars   = runChars;
+    }
+
+    /**
+     * Packs a sequence of residues.
+     *
+     * @param residues the sequence, in upper or lower case
+     * @param rna      <code>true</code> for RNA (<code>u</code>), false for
+     *                 DNA (<code>t</code>)
+     * @return the packed sequence, or <code>null</code> if
+     *         <code>residues</code> contains a character that cannot be
+     *         stored, in which case the caller should fall back on BioJava
+     */
+    public static PackedNucleotides pack( CharSequence residues,
+                                          boolean rna ) {
+
+        byte[] codes = rna ? RNA_CODES : DNA_CODES;
+        int length = residues.length();
+        byte[] bases = new byte[ (length + 3) / 4 ];
+
+        int runs = 0;
+        int[] runStarts = new int[4], runLengths = new int[4];
+        byte[] runChars = new byte[4];
+
+        for ( int i = 0; i < length; ++i ) {
+            char c = Character.toLowerCase( residues.charAt(i) );
+            byte code = c < 128 ? codes[c] : -1;
+            if (code >= 0) {
+                bases[i >> 2] |= code << ((i & 3) << 1);
+                continue;
+            }
+            if ( OTHERS.indexOf(c) < 0 )
+                return null;
+            if ( runs > 0
+                 && runChars[runs-1] == c
+                 && runStarts[runs-1] + runLengths[runs-1] == i ) {
+                ++runLengths[runs-1];
+                continue;
+            }
+            if ( runs == runStarts.length ) {
+                runStarts  = grow(runStarts);
+                runLengths = grow(runLengths);
+                byte[] chars = new byte[ runs * 2 ];
+                System.arraycopy( runChars, 0, chars, 0, runs );
+                runChars = chars;
+            }
+            runStarts[runs]  = i;
+            runLengths[runs] = 1;
+            runChars[runs]   = (byte) c;
+            ++runs;
+        }
+
+        byte[] chars = new byte[runs];
+        System.arraycopy( runChars, 0, chars, 0, runs );
+        return new PackedNucleotides( length, bases, rna,
+                                      trim(runStarts, runs),
+                                      trim(runLengths, runs),
+                                      chars );
+    }
+
+    /**
+     * Packs a sequence of residues given as ASCII bytes.
+     *
+     * @see #pack(CharSequence, boolean)
+     */
+    public static PackedNucleotides pack( final byte[] residues,
+                                          boolean rna ) {
+        return pack( new CharSequence() {
+            public int length() {
+                return residues.length;
+            }
+            public char charAt(int index) {
+                return (char) (residues[index] & 0xff);
+            }
+            public CharSequence subSequence(int start, int end) {
+                throw new UnsupportedOperationException();
+            }
+        }, rna );
+    }
+
+    public int length() {
+        return length;
+    }
+
+    public boolean isRNA() {
+        return rna;
+    }
+
+    /**
+     * Returns the reverse complement, without unpacking the bases. Since
+     * <code>t</code> and <code>u</code> share a code, this also reverse
+     * transcribes RNA into DNA and the other way around.
+     *
+     * @param rna <code>true</code> for an RNA result, <code>false</code> for
+     *            DNA
+     */
+    public PackedNucleotides reverseComplement(boolean rna) {
+        byte[] reversed = new byte[bases.length];
+        for ( int i = 0, j = length - 1; j >= 0; ++i, --j ) {
+            int code = (bases[j >> 2] >> ((j & 3) << 1)) & 3;
+            reversed[i >> 2] |= (3 - code) << ((i & 3) << 1);
+        }
+
+        int runs = runStarts.length;
+        int[] starts = new int[runs], lengths = new int[runs];
+        byte[] chars = new byte[runs];
+        for ( int run = 0; run < runs; ++run ) {
+            int to = runs - 1 - run;
+            starts[to]  = length - runStarts[run] - runLengths[run];
+            lengths[to] = runLengths[run];
+            chars[to]   = (byte) COMPLEMENTED_OTHERS.charAt(
+                                     OTHERS.indexOf( runChars[run] ) );
+        }
+        return new PackedNucleotides( length, reversed, rna,
+                                      starts, lengths, chars );
+    }
+
+    /**
+     * Returns the residue at the given zero-based position.
+     */
+    public char charAt(int index) {
+        if (index < 0 || index >= length)
+            throw new IndexOutOfBoundsException( "Index: " + index
+                                                 + ", length: " + length );
+        int run = Arrays.binarySearch(runStarts, index);
+        if (run < 0)
+            run = -run - 2;
+        if ( run >= 0 && index < runStarts[run] + runLengths[run] )
+            return (char) runChars[run];
+        return base(index);
+    }
+
+    /**
+     * Decodes the whole sequence as lower case ASCII bytes.
+     */
+    public byte[] toBytes() {
+        byte[] result = new byte[length];
+        String alphabet = rna ? RNA_BASES : DNA_BASES;
+        for ( int i = 0; i < length; ++i )
+            result[i] = (byte) alphabet.charAt(
+                            (bases[i >> 2] >> ((i & 3) << 1)) & 3 );
+        for ( int run = 0; run < runStarts.length; ++run )
+            Arrays.fill( result,
+                         runStarts[run], runStarts[run] + runLengths[run],
+                         runChars[run] );
+        return result;
+    }
+
+    /**
+     * Decodes the whole sequence as a lower case string.
+     */
+    public String toString() {
+        byte[] bytes = toBytes();
+        char[] chars = new char[bytes.length];
+        for ( int i = 0; i < bytes.length; ++i )
+            chars[i] = (char) bytes[i];
+        return new String(chars);
+    }
+
+    private char base(int index) {
+        return (rna ? RNA_BASES : DNA_BASES).charAt(
+                   (bases[index >> 2] >> ((index & 3) << 1)) & 3 );
+    }
+
+    private static byte[] codes(String alphabet) {
+        byte[] codes = new byte[128];
+        Arrays.fill( codes, (byte) -1 );
+        for ( byte i = 0; i < alphabet.length(); ++i )
+            codes[ alphabet.charAt(i) ] = i;
+        return codes;
+    }
+
+    private static int[] grow(int[] array) {
+        int[] grown = new int[ array.length * 2 ];
+        System.arraycopy( array, 0, grown, 0, array.length );
+        return grown;
+    }
+
+    private static int[] trim(int[] array, int length) {
+        int[] trimmed = new int[length];
+        System.arraycopy( array, 0, trimmed, 0, length );
+        return trimmed;
+    }
+}
@@ -0,0 +1,121 @@
+/* *****************************************************************************
+ * Copyright (c) 2009 The Bioclipse Project and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * <http://www.eclipse.org/legal/epl-v10.html>
+ *
+ * Contact: http://www.bioclipse.net/
+ ******************************************************************************/
+package net.bioclipse.biojava.ui.editors;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.swt.graphics.GC;
+import org.eclipse.swt.graphics.Image;
+import org.eclipse.swt.widgets.Display;
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Checks which tiles a {@link TileCache} draws, keeps and disposes. It is
+ * in the package of the cache, which is not public.
+ */
+public class TileCacheTest {
+
+    /** The number of pixels of a tile of squares of size 8. */
+    private static final long TILE_PIXELS
+        = TileCache.TILE_COLUMNS * 8 * TileCache.TILE_ROWS * 8;
+
+    /** The first column and row of each tile drawn, in order. */
+    private final List<String> rendered = new ArrayList<String>();
+
+    private TileCache cache;
+
+    @After
+    public void tearDown() {
+        if (cache != null)
+            cache.clear();
+    }
+
+    @Test
+    public void testTilesAreDrawnOnce() {
+        cache = cache( TileCache.DEFAULT_MAX_PIXELS );
+        Image tile = cache.get( 8, 1, 2 );
+
+        assertSame( tile, cache.get( 8, 1, 2 ) );
+        assertEquals( 1, rendered.size() );
+        assertEquals( TileCache.TILE_COLUMNS + ","
+                      + 2 * TileCache.TILE_ROWS, rendered.get(0) );
+    }
+
+    @Test
+    public void testInvalidateDisposesOnlyTheTilesInTheRange() {
+        cache = cache( TileCache.DEFAULT_MAX_PIXELS );
+        Image first  = cache.get( 8, 0, 0 ),
+              small  = cache.get( 4, 0, 0 ),
+              right  = cache.get( 8, 1, 0 ),
+              below  = cache.get( 8, 0, 1 );
+
+        cache.invalidate( 3, 5, TileCache.TILE_COLUMNS,
+                                TileCache.TILE_ROWS );
+
+        assertTrue( first.isDisposed() );
+        assertTrue( small.isDisposed() );
+        assertFalse( right.isDisposed() );
+        assertFalse( below.isDisposed() );
+        assertSame( right, cache.get( 8, 1, 0 ) );
+        assertNotSame( first, cache.get( 8, 0, 0 ) );
+        assertEquals( 5, rendered.size() );
+
+        // One square past a tile boundary reaches into the next tile
+        cache.invalidate( 0, 0, TileCache.TILE_COLUMNS + 1, 1 );
+        assertTrue( right.isDisposed() );
+        assertFalse( below.isDisposed() );
+    }
+
+    @Test
+    public void testLeastRecentlyUsedTilesAreDisposedBeyondTheBound() {
+        cache = cache( 3 * TILE_PIXELS );
+        Image a = cache.get( 8, 0, 0 ),
+              b = cache.get( 8, 1, 0 ),
+              c = cache.get( 8, 2, 0 );
+        cache.get( 8, 0, 0 );
+        Image d = cache.get( 8, 3, 0 );
+
+        assertTrue( b.isDisposed() );
+        assertFalse( a.isDisposed() );
+        assertFalse( c.isDisposed() );
+        assertFalse( d.isDisposed() );
+
+        cache.get( 8, 1, 0 );
+        assertTrue( c.isDisposed() );
+        assertEquals( 5, rendered.size() );
+    }
+
+    @Test
+    public void testTileLargerThanTheBoundIsKept() {
+        cache = cache( TILE_PIXELS / 2 );
+        Image a = cache.get( 8, 0, 0 );
+        Image b = cache.get( 8, 1, 0 );
+
+        assertTrue( a.isDisposed() );
+        assertFalse( b.isDisposed() );
+        assertSame( b, cache.get( 8, 1, 0 ) );
+    }
+
+    private TileCache cache( long maxPixels ) {
+        return new TileCache( Display.getDefault(), new TileCache.Renderer() {
+            public void render( GC gc, int firstColumn, int firstRow,
+                                       int lastColumn,  int lastRow ) {
+                assertEquals( TileCache.TILE_COLUMNS,
+                              lastColumn - firstColumn );
+                assertEquals( TileCache.TILE_ROWS, lastRow - firstRow );
+                rendered.add( firstColumn + "," + firstRow );
+            }
+        }, maxPixels );
+    }
+}
@@ -0,0 +1,61 @@
+/* *****************************************************************************
+ * Copyright (c) 2009 The Bioclipse Project and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * <http://www.eclipse.org/legal/epl-v10.html>
+ *
+ * Contact: http://www.bioclipse.net/
+ ******************************************************************************/
+package net.bioclipse.biojava.ui.editors;
+
+import static org.junit.Assert.*;
+
+import org.eclipse.swt.graphics.Point;
+import org.junit.Test;
+
+/**
+ * Checks which line groups and rows the wrap mode of the {@link Aligner}
+ * paints for a band of the canvas. The groups here have five rows of ten
+ * pixels: tick marks, two sequences, the consensus and an empty row.
+ */
+public class WrapLayoutTest {
+
+    private static final int SQUARE = 10, ROWS = 5, HEIGHT = ROWS * SQUARE;
+
+    @Test
+    public void testWholeGroup() {
+        assertRange( 1, 2, WrapLayout.visibleGroups( 50, 100, HEIGHT, 4 ) );
+        assertRange( 0, ROWS,
+                     WrapLayout.visibleRows( 50, 100, 50, ROWS, SQUARE ) );
+    }
+
+    @Test
+    public void testPartsOfTwoGroups() {
+        assertRange( 1, 3, WrapLayout.visibleGroups( 65, 120, HEIGHT, 4 ) );
+        assertRange( 1, ROWS,
+                     WrapLayout.visibleRows( 65, 120, 50, ROWS, SQUARE ) );
+        assertRange( 0, 2,
+                     WrapLayout.visibleRows( 65, 120, 100, ROWS, SQUARE ) );
+    }
+
+    @Test
+    public void testPartOfOneSquare() {
+        assertRange( 1, 2, WrapLayout.visibleGroups( 55, 56, HEIGHT, 4 ) );
+        assertRange( 0, 1,
+                     WrapLayout.visibleRows( 55, 56, 50, ROWS, SQUARE ) );
+    }
+
+    @Test
+    public void testNothingBelowTheLastGroup() {
+        assertRange( 2, 3,
+                     WrapLayout.visibleGroups( 120, 1000, HEIGHT, 3 ) );
+        assertRange( 2, ROWS,
+                     WrapLayout.visibleRows( 120, 1000, 100, ROWS, SQUARE ) );
+    }
+
+    private static void assertRange( int first, int last, Point range ) {
+        assertEquals( "first", first, range.x );
+        assertEquals( "last",  last,  range.y );
+    }
+}
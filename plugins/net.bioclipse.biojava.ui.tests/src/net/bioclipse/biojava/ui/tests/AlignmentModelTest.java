@@ -0,0 +1,150 @@
+/* *****************************************************************************
+ * Copyright (c) 2009 The Bioclipse Project and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * <http://www.eclipse.org/legal/epl-v10.html>
+ *
+ * Contact: http://www.bioclipse.net/
+ ******************************************************************************/
+package net.bioclipse.biojava.ui.tests;
+
+import static org.junit.Assert.*;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import net.bioclipse.biojava.ui.editors.AlignmentModel;
+import net.bioclipse.biojava.ui.editors.ConsensusProfile;
+import net.bioclipse.core.domain.ISequence;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Checks that an {@link AlignmentModel} keeps its rows and consensus in
+ * step with its sequences, whether they are replaced or changed in place.
+ */
+public class AlignmentModelTest {
+
+    private AlignmentModel model;
+    private int changes;
+
+    @Before
+    public void setUp() {
+        model = new AlignmentModel();
+        model.addListener( new AlignmentModel.Listener() {
+            public void alignmentChanged( AlignmentModel changed ) {
+                assertSame( model, changed );
+                ++changes;
+            }
+        });
+    }
+
+    @Test
+    public void testRowsEndWithTheConsensus() {
+        model.setSequences( sequences( "sp|P1|A", "ACGT",
+                                       "B",       "AGG" ) );
+
+        assertEquals( Arrays.asList( "A", "B", AlignmentModel.CONSENSUS ),
+                      model.getNames() );
+        assertEquals( 2, model.getSequenceCount() );
+        assertEquals( 3, model.getRowCount() );
+        assertEquals( 4, model.getWidth() );
+        assertTrue( model.hasConsensus() );
+        assertEquals( "AGG", new String( model.getRows()[1] ) );
+        assertEquals( consensus( "ACGT", "AGG" ),
+                      new String( model.getRows()[2] ) );
+        assertEquals( 1, changes );
+    }
+
+    @Test
+    public void testSingleSequenceHasNoConsensus() {
+        model.setSequences( sequences( "A", "ACGT" ) );
+
+        assertEquals( Arrays.asList( "A" ), model.getNames() );
+        assertEquals( 1, model.getRowCount() );
+        assertFalse( model.hasConsensus() );
+    }
+
+    @Test
+    public void testChangedSequencesAreRecountedInPlace() {
+        model.setSequences( sequences( "A", "AC-T",
+                                       "B", "AGTT",
+                                       "C", "A-TT" ) );
+        ConsensusProfile profile = model.getProfile();
+
+        model.setSequences( sequences( "A", "ACTT",
+                                       "B", "AGTT",
+                                       "C", "ACTTG" ) );
+
+        assertSame( profile, model.getProfile() );
+        assertEquals( 2, changes );
+        assertEquals( 5, model.getWidth() );
+        assertEquals( 3, profile.getCount(2, 'T') );
+        assertEquals( 0, profile.getCount(1, '-') );
+        assertEquals( consensus( "ACTT", "AGTT", "ACTTG" ),
+                      new String( model.getRows()[3] ) );
+    }
+
+    @Test
+    public void testOtherSequencesReplaceTheProfile() {
+        model.setSequences( sequences( "A", "ACGT",
+                                       "B", "ACGA" ) );
+        ConsensusProfile profile = model.getProfile();
+
+        model.setSequences( sequences( "A", "TTT",
+                                       "C", "TTA",
+                                       "D", "GTA" ) );
+
+        assertNotSame( profile, model.getProfile() );
+        assertEquals( Arrays.asList( "A", "C", "D",
+                                     AlignmentModel.CONSENSUS ),
+                      model.getNames() );
+        assertEquals( 3, model.getProfile().getRows() );
+        assertEquals( 0, model.getProfile().getCount(0, 'A') );
+        assertEquals( consensus( "TTT", "TTA", "GTA" ),
+                      new String( model.getRows()[3] ) );
+    }
+
+    private static String consensus( String... sequences ) {
+        char[][] rows = new char[ sequences.length ][];
+        for ( int i = 0; i < sequences.length; ++i )
+            rows[i] = sequences[i].toCharArray();
+        return new String( new ConsensusProfile( rows ).getConsensus() );
+    }
+
+    /**
+     * Returns sequences from pairs of names and residues.
+     */
+    private static List<ISequence> sequences( String... namesAndResidues ) {
+        List<ISequence> sequences = new ArrayList<ISequence>();
+        for ( int i = 0; i < namesAndResidues.length; i += 2 )
+            sequences.add( sequence( namesAndResidues[i],
+                                     namesAndResidues[i + 1] ) );
+        return sequences;
+    }
+
+    private static ISequence sequence( final String name,
+                                       final String residues ) {
+        return (ISequence) Proxy.newProxyInstance(
+            ISequence.class.getClassLoader(),
+            new Class<?>[] { ISequence.class },
+            new InvocationHandler() {
+                public Object invoke( Object proxy,
+                                      Method method,
+                                      Object[] args ) {
+                    if ( method.getName().equals("getName") )
+                        return name;
+                    if ( method.getName().equals("getPlainSequence") )
+                        return residues;
+                    throw new UnsupportedOperationException(
+                        method.getName() );
+                }
+            });
+    }
+}
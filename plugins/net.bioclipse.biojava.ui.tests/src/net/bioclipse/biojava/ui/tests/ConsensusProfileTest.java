@@ -0,0 +1,120 @@
+/* *****************************************************************************
+ * Copyright (c) 2009 The Bioclipse Project and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * <http://www.eclipse.org/legal/epl-v10.html>
+ *
+ * Contact: http://www.bioclipse.net/
+ ******************************************************************************/
+package net.bioclipse.biojava.ui.tests;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import net.bioclipse.biojava.ui.editors.ConsensusProfile;
+
+import org.junit.Test;
+
+/**
+ * Checks the counts of a {@link ConsensusProfile} against alignments small
+ * enough to count by hand, and its parallel count against a serial one.
+ */
+public class ConsensusProfileTest {
+
+    @Test
+    public void testConsensus() {
+        ConsensusProfile profile = profile( "ACGTA",
+                                            "ACTTA",
+                                            "AGCT" );
+
+        assertEquals( "A23T2", new String( profile.getConsensus() ) );
+        assertEquals( 3, profile.getRows() );
+        assertEquals( 5, profile.getColumns() );
+        assertEquals( 2, profile.getDistinctCount(4) );
+    }
+
+    @Test
+    public void testMajority() {
+        ConsensusProfile profile = profile( "A-C",
+                                            "G-C",
+                                            "G-T" );
+
+        assertEquals( "G-C", new String( profile.getMajorityConsensus() ) );
+        assertEquals( 2 / 3.0, profile.getFrequency(0), 1e-9 );
+        assertEquals( 1.0, profile.getFrequency(1), 1e-9 );
+        assertEquals( 2, profile.getCount(2, 'C') );
+    }
+
+    @Test
+    public void testTiesGoToTheAlphabetFirst() {
+        ConsensusProfile profile = profile( "A", "C", "1", "2" );
+
+        assertEquals( 'A', profile.getMajority(0) );
+    }
+
+    @Test
+    public void testOtherCharactersAreCountedOneByOne() {
+        ConsensusProfile profile = profile( "1?X\u00c5",
+                                            "2?X\u00c5",
+                                            "2#X\u00c5" );
+
+        assertEquals( 2, profile.getDistinctCount(0) );
+        assertEquals( 2, profile.getCount(0, '2') );
+        assertEquals( 1, profile.getCount(0, '1') );
+        assertEquals( 0, profile.getCount(0, '3') );
+        assertEquals( '2', profile.getMajority(0) );
+        assertEquals( 2, profile.getDistinctCount(1) );
+        assertEquals( 2, profile.getCount(1, '?') );
+        assertEquals( 1, profile.getCount(1, '#') );
+        assertEquals( '\u00c5', profile.getConsensusChar(3) );
+    }
+
+    @Test
+    public void testReplaceSequence() {
+        ConsensusProfile profile = profile( "AC1", "AC2" );
+        profile.replaceSequence( "AC2".toCharArray(), "AG1T".toCharArray() );
+
+        assertEquals( "A212", new String( profile.getConsensus() ) );
+        assertEquals( 0, profile.getCount(2, '2') );
+        assertEquals( 2, profile.getCount(2, '1') );
+
+        profile.removeSequence( "AG1T".toCharArray() );
+        profile.addSequence( "AC1".toCharArray() );
+        assertEquals( "AC1\0", new String( profile.getConsensus() ) );
+    }
+
+    @Test
+    public void testLargeAlignmentIsCountedAsOneThreadWould() {
+        Random random = new Random(17);
+        String alphabet = "-ACGT1";
+        char[][] sequences = new char[64][];
+        for ( int row = 0; row < sequences.length; ++row ) {
+            sequences[row] = new char[ 20000 - random.nextInt(100) ];
+            for ( int column = 0; column < sequences[row].length; ++column )
+                sequences[row][column]
+                    = alphabet.charAt( random.nextInt(alphabet.length()) );
+        }
+
+        ConsensusProfile parallel = new ConsensusProfile( sequences ),
+                         serial   = new ConsensusProfile( new char[0][] );
+        for ( char[] sequence : sequences )
+            serial.addSequence( sequence );
+
+        assertEquals( new String( serial.getConsensus() ),
+                      new String( parallel.getConsensus() ) );
+        assertEquals( new String( serial.getMajorityConsensus() ),
+                      new String( parallel.getMajorityConsensus() ) );
+        for ( int column = 0; column < serial.getColumns(); ++column )
+            assertEquals( serial.getCount(column, '1'),
+                          parallel.getCount(column, '1') );
+    }
+
+    private static ConsensusProfile profile( String... sequences ) {
+        char[][] rows = new char[ sequences.length ][];
+        for ( int i = 0; i < sequences.length; ++i )
+            rows[i] = sequences[i].toCharArray();
+        return new ConsensusProfile( rows );
+    }
+}
@@ -9,20 +9,14 @@
 
 package net.bioclipse.biojava.ui.editors;
 
-import java.io.FileNotFoundException;
 import java.util.ArrayList;
-import java.util.Collection;
-import java.util.HashMap;
-import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Map;
 
 import net.bioclipse.biojava.business.Activator;
 import net.bioclipse.biojava.business.IBiojavaManager;
 import net.bioclipse.core.domain.ISequence;
 import net.bioclipse.ui.editors.ColorManager;
 
-import org.eclipse.core.resources.IFile;
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.swt.SWT;
 import org.eclipse.swt.custom.ScrolledComposite;
@@ -32,10 +26,10 @@ import org.eclipse.swt.events.MouseMoveListener;
 import org.eclipse.swt.events.PaintEvent;
 import org.eclipse.swt.events.PaintListener;
 import org.eclipse.swt.graphics.Color;
-import org.eclipse.swt.graphics.Font;
 import org.eclipse.swt.graphics.GC;
 import org.eclipse.swt.graphics.Point;
 import org.eclipse.swt.graphics.RGB;
+import org.eclipse.swt.graphics.Rectangle;
 import org.eclipse.swt.layout.FillLayout;
 import org.eclipse.swt.layout.GridData;
 import org.eclipse.swt.layout.GridLayout;
@@ -52,7 +46,8 @@ public class Aligner extends EditorPart {
 
     private int squareSize = 20;
     private final static int MINIMUM_SQUARE_SIZE_FOR_TEXT_IN_PIXELS = 8,
-                             NAME_CANVAS_WIDTH_IN_SQUARES = 8;
+                             NAME_CANVAS_WIDTH_IN_SQUARES = 8,
+                             WRAP_COLUMNS = 30;
     private int canvasWidthInSquares, numberOfSequences;
 
     static final Display display = Display.getCurrent();
@@ -91,9 +86,13 @@ public class Aligner extends EditorPart {
                 0x77775F
         } );
 
-    //          seqname, sequence
-    private Map<String,  String> sequences;
-    private int consensusRow;
+    private final AlignmentModel model;
+    private final AlignmentModel.Listener modelListener
+        = new AlignmentModel.Listener() {
+            public void alignmentChanged( AlignmentModel model ) {
+                updateFromModel();
+            }
+        };
 
     private static Point np() { return new Point(0, 0); }
 
@@ -119,9 +118,23 @@ public class Aligner extends EditorPart {
     private Canvas sequenceCanvas;
     private PaintListener sequenceCanvasPaintListener;
     private ScrolledComposite sc;
+    private TileCache tiles;
+    private final GlyphAtlas glyphs;
 
     private boolean wrapMode = false;
 
+    /**
+     * @param model  the sequences to show, shared with the other views of
+     *               the editor
+     * @param glyphs the squares and fonts to paint with, owned by the
+     *               editor
+     */
+    public Aligner( AlignmentModel model, GlyphAtlas glyphs ) {
+        this.model = model;
+        this.glyphs = glyphs;
+        updateFromModel();
+    }
+
     @Override
     public void doSave( IProgressMonitor monitor ) {
     }
@@ -142,97 +155,58 @@ public class Aligner extends EditorPart {
         setInput(input);
     }
 
-    @Override
-    public void setInput( IEditorInput input ) {
-        super.setInput(input);
+    private void updateFromModel() {
+        char[][] previous = fastas;
+        int previousWidth = canvasWidthInSquares;
+        numberOfSequences = model.getRowCount();
+        canvasWidthInSquares = model.getWidth();
+        fastas = model.getRows();
 
-        // Turn the editor input into an IFile.
-        IFile file = (IFile) input.getAdapter( IFile.class );
-        if (file == null)
-            return;
-
-        List<ISequence> sequences;
-        try {
-            sequences = biojava.sequencesFromFile(file);
-        } catch (FileNotFoundException e1) {
-            return; // No exception handling at all! We just give up! Gasp!
-        }
-        this.setSequences(sequences);
-    }
-
-    public void setSequences(List<ISequence> seqs) {
-        sequences = new LinkedHashMap<String, String>();
-
-        // Add the sequences one by one to the Map. Do minor cosmetics
-        // on the name by removing everything up to and including to
-        // the last '|', if any.
-        for (ISequence seq : seqs) {
-            String name = seq.getName().replaceFirst( ".*\\|", "" );
-            sequences.put( name, seq.getPlainSequence() );
-        }
-
-        // We only show a consensus sequence if there is more than one
-        // sequence already.
-        if (sequences.size() > 1) {
-            sequences.put(
-                "Consensus",
-                consensusSequence( sequences.values() )
-            );
-        }
-
-        numberOfSequences = sequences.size();
-        canvasWidthInSquares = maxLength( sequences.values() );
-
-        fastas = new char[ sequences.size() ][];
-
-        {
-            int i = 0;
-            for ( String sequence : sequences.values() )
-                fastas[i++] = sequence.toCharArray();
-        }
+        if (tiles != null)
+            invalidateChangedRows( previous, fastas,
+                                   previousWidth != canvasWidthInSquares );
 
         if (parent != null) {
+            setCanvasSizes();
             parent.layout();
             parent.redraw();
+            sequenceCanvas.redraw();
         }
     }
 
-    private static String consensusSequence( final Collection<String>
-                                                   sequences ) {
-
-        final StringBuilder consensus = new StringBuilder();
-        for ( int i = 0, n = maxLength(sequences); i < n; ++i ) {
-            consensus.append( consensusChar(sequences, i) );
+    // Drops the tiles showing residues that differ between the previous
+    // and the current rows. The model keeps the arrays of rows that did
+    // not change, so most rows are skipped at once.
+    private void invalidateChangedRows( char[][] previous, char[][] rows,
+                                        boolean widthChanged ) {
+        if ( previous == null || previous.length != rows.length
+             || widthChanged ) {
+            tiles.clear();
+            return;
         }
 
-        return consensus.toString();
-    }
-
-    private static int maxLength( final Collection<String> strings ) {
-
-        int maxLength = 0;
-        for ( String s : strings )
-            if ( maxLength < s.length() )
-                maxLength = s.length();
-
-        return maxLength;
+        for ( int row = 0; row < rows.length; ++row ) {
+            char[] before = previous[row], after = rows[row];
+            if ( before == after )
+                continue;
+
+            int common = Math.min( before.length, after.length ),
+                first  = 0,
+                last   = Math.max( before.length, after.length );
+            while ( first < common && before[first] == after[first] )
+                ++first;
+            if ( last == common )
+                while ( last > first && before[last-1] == after[last-1] )
+                    --last;
+            if ( first < last )
+                tiles.invalidate( first, row + 1, last, row + 2 );
+        }
     }
 
-    private static char consensusChar( final Collection<String> sequences,
-                                       final int index ) {
-
-        Map<Character, Boolean> columnChars
-            = new HashMap<Character, Boolean>();
-
-        for ( String seq : sequences )
-            columnChars.put( seq.length() > index
-                               ? seq.charAt(index)
-                               : '\0',
-                             true );
-
-        return columnChars.size() == 1
-               ? columnChars.keySet().iterator().next()
-               : Character.forDigit( Math.min(columnChars.size(), 9), 10 );
+    // The number of line groups in wrap mode, each showing WRAP_COLUMNS
+    // columns of all sequences.
+    private int wrapGroups() {
+        return (canvasWidthInSquares + WRAP_COLUMNS - 1) / WRAP_COLUMNS;
     }
 
     static private Color[] generateColorList( int[] rgbList ) {
@@ -307,10 +281,27 @@ public class Aligner extends EditorPart {
         return new int[] { xLeft, yTop, xRight, yBottom };
     }
 
+    // Redraws the area of the selection with the given boundaries, with a
+    // pixel to spare around its outline.
+    private void redrawSelection( int[] boundaries ) {
+        sequenceCanvas.redraw( boundaries[0] - 1,
+                               boundaries[1] - 1,
+                               boundaries[2] - boundaries[0] + 2,
+                               boundaries[3] - boundaries[1] + 2,
+                               false );
+    }
+
     @Override
     public void createPartControl( Composite parent ) {
 
         this.parent = parent;
+        model.addListener( modelListener );
+        tiles = new TileCache( parent.getDisplay(), new TileCache.Renderer() {
+            public void render( GC gc, int firstColumn, int firstRow,
+                                       int lastColumn,  int lastRow ) {
+                renderTile( gc, firstColumn, firstRow, lastColumn, lastRow );
+            }
+        });
 
         GridLayout layout = new GridLayout();
         layout.numColumns = 2;
@@ -342,17 +333,22 @@ public class Aligner extends EditorPart {
     public void setFocus() {
     }
 
+    @Override
+    public void dispose() {
+        model.removeListener( modelListener );
+        if (tiles != null)
+            tiles.clear();
+        super.dispose();
+    }
+
     private void setCanvasSizes() {
 
         int nameWidth = squareSize >= MINIMUM_SQUARE_SIZE_FOR_TEXT_IN_PIXELS
                         ? NAME_CANVAS_WIDTH_IN_SQUARES * squareSize : 0;
         if (wrapMode) {
             data.widthHint = 0;
-            final int columns = 30;
-            c.setSize( columns * squareSize + nameWidth,
-                       ( 1 + (numberOfSequences + 2)
-                             * (fastas[0].length / columns) )
-                       * squareSize );
+            c.setSize( WRAP_COLUMNS * squareSize + nameWidth,
+                       wrapGroups() * (numberOfSequences + 2) * squareSize );
         }
         else {
             data.widthHint = nameWidth;
@@ -380,11 +376,11 @@ public class Aligner extends EditorPart {
 
         List<ISequence> seqs = new ArrayList<ISequence>();
 
-        for (String name : sequences.keySet()){
-            if (!("Consensus".equals( name ))){
-                String plainSequence = sequences.get( name );
-                seqs.add(biojava.proteinFromPlainSequence(plainSequence, name));
-            }
+        List<String> names = model.getNames();
+        for (int i = 0; i < model.getSequenceCount(); i++){
+            String plainSequence = new String( fastas[i] );
+            seqs.add(biojava.proteinFromPlainSequence(plainSequence,
+                                                      names.get( i )));
         }
         return seqs;
     }
@@ -430,15 +426,13 @@ public class Aligner extends EditorPart {
                 gc.setTextAntialias( SWT.OFF );
                 gc.setBackground( buttonColor );
 
-                gc.setFont( new Font(gc.getDevice(),
-                                     "Arial",
-                                     (int)(.7 * squareSize),
-                                     SWT.NONE) );
+                gc.setFont( glyphs.getFont( gc.getDevice(),
+                                            (int)(.7 * squareSize) ) );
                 gc.setForeground( nameColor );
 
                 int index = 0;
-                for ( String name : sequences.keySet() ) {
-                    if ( index == consensusRow )
+                for ( String name : model.getNames() ) {
+                    if ( index == model.getSequenceCount() )
                         gc.setBackground( consensusColor );
                     gc.fillRectangle(0, (1 + index) * squareSize,
                                      8 * squareSize, squareSize);
@@ -457,155 +451,33 @@ public class Aligner extends EditorPart {
         sequenceCanvasPaintListener = new PaintListener() {
             public void paintControl(PaintEvent e) {
                 GC gc = e.gc;
-                gc.setTextAntialias( SWT.OFF );
 
-                gc.setForeground( textColor );
+                // Only copy the tiles under the damaged area inside the
+                // viewport, drawing those that are not cached yet.
+                Point origin = sc.getOrigin();
+                Rectangle client = sc.getClientArea();
+                int tileWidth  = TileCache.TILE_COLUMNS * squareSize,
+                    tileHeight = TileCache.TILE_ROWS    * squareSize,
+                    left       = Math.max( e.x, origin.x ),
+                    top        = Math.max( e.y, origin.y ),
+                    right      = Math.min( Math.min( e.x + e.width,
+                                                     origin.x + client.width ),
+                                           canvasWidthInSquares * squareSize ),
+                    bottom     = Math.min( Math.min( e.y + e.height,
+                                                     origin.y + client.height ),
+                                           (numberOfSequences + 1)
+                                           * squareSize );
+
+                for ( int y = top / tileHeight * tileHeight;
+                      y < bottom; y += tileHeight )
+                    for ( int x = left / tileWidth * tileWidth;
+                          x < right; x += tileWidth )
+                        gc.drawImage( tiles.get( squareSize,
+                                                 x / tileWidth,
+                                                 y / tileHeight ),
+                                      x, y );
 
-                int firstVisibleColumn
-                        = sc.getHorizontalBar().getSelection() / squareSize,
-                    lastVisibleColumn
-                        = firstVisibleColumn
-                          + sc.getBounds().width / squareSize
-                          + 2; // compensate for 2 possible round-downs
-
-                drawTickMarks(firstVisibleColumn, lastVisibleColumn, gc);
-                drawSequences(fastas,
-                              firstVisibleColumn, lastVisibleColumn,
-                              gc);
                 drawSelection( gc );
-                drawConsensusSequence(
-                    fastas[numberOfSequences-1],
-                    firstVisibleColumn, lastVisibleColumn, gc);
-            }
-
-            private void drawTickMarks(int firstVisibleColumn,
-                                       int lastVisibleColumn, GC gc) {
-
-                gc.setForeground( textColor );
-                gc.setBackground( backgroundColor );
-
-                for ( int column = firstVisibleColumn;
-                      column < lastVisibleColumn; ++column ) {
-
-                    if (column % 10 != 9) // It's an off-by one situation:
-                        continue;         // A zero-based 9 is a one-based 10
-
-                    int xCoord = column * squareSize + squareSize/2,
-                            y1 = (int)(squareSize * .7),
-                            y2 = (int)(squareSize * .9);
-
-                    gc.drawLine(xCoord, y1, xCoord, y2);
-                }
-
-                if ( squareSize
-                        >= MINIMUM_SQUARE_SIZE_FOR_TEXT_IN_PIXELS * 2 ) {
-
-                    gc.setFont( new Font(gc.getDevice(),
-                               "Arial",
-                               (int)(.35 * squareSize),
-                               SWT.NONE) );
-
-                    for ( int column = firstVisibleColumn;
-                          column < lastVisibleColumn; ++column ) {
-
-                        if (column % 10 != 9)  // Same off-by-one again
-                            continue;
-
-                        int xCoord = column * squareSize + squareSize/2;
-
-                        String text = "" + (column + 1);
-                        Point extent = gc.stringExtent(text);
-                        gc.drawString( text,
-                                       xCoord - extent.x/2,
-                                       (int)(squareSize * .6) - extent.y );
-                    }
-                }
-            }
-
-            private void drawSequences( final char[][] fasta,
-                                        int firstVisibleColumn,
-                                        int lastVisibleColumn, GC gc ) {
-
-                if ( squareSize >= MINIMUM_SQUARE_SIZE_FOR_TEXT_IN_PIXELS ) {
-                    gc.setFont( new Font(gc.getDevice(),
-                                         "Arial",
-                                         (int)(.7 * squareSize),
-                                         SWT.NONE) );
-                }
-
-                int n = numberOfSequences == 1 ? 1 : numberOfSequences - 1;
-                for ( int column = firstVisibleColumn;
-                      column < lastVisibleColumn; ++column ) {
-
-                    int xCoord = column * squareSize;
-
-                    for ( int row = 0; row < n; ++row ) {
-
-                        char c = fasta[row].length > column
-                                 ? fasta[row][column] : ' ';
-                        String cc = c + "";
-
-                        gc.setBackground(
-                                "HKR".contains( cc ) ? basicAAColor
-                             :   "DE".contains( cc ) ? acidicAAColor
-                             : "TQSN".contains( cc ) ? polarAAColor
-                             :  "FYW".contains( cc ) ? nonpolarAAColor
-                             :   "GP".contains( cc ) ? smallAAColor
-                             :    'C' == c           ? cysteineColor
-                             :    'a' == c           ? adenineColor
-                             :    'c' == c           ? cytosineColor
-                             :    'g' == c           ? guanineColor
-                             :    't' == c           ? thymineColor
-                                                     : normalAAColor );
-
-                        int yCoord = (1 + row) * squareSize;
-
-                        gc.fillRectangle(xCoord, yCoord,
-                                         squareSize, squareSize);
-
-                        if ( squareSize
-                                  >= MINIMUM_SQUARE_SIZE_FOR_TEXT_IN_PIXELS ) {
-                            String text = cc.toUpperCase();
-                            Point extent = gc.stringExtent(text);
-                            gc.drawString( text,
-                                           xCoord + squareSize/2 - extent.x/2,
-                                           yCoord + squareSize/2 - extent.y/2 );
-                        }
-                    }
-                }
-            }
-
-            private void drawConsensusSequence( final char[] sequence,
-                                                int firstVisibleColumn,
-                                                int lastVisibleColumn, GC gc ) {
-
-                if ( numberOfSequences < 2 )
-                    return;
-
-                int yCoord = numberOfSequences * squareSize;
-
-                for ( int column = firstVisibleColumn;
-                      column < lastVisibleColumn; ++column ) {
-
-                    char c = sequence.length > column ? sequence[column] : ' ';
-                    int consensusDegree = Character.isDigit(c) ? c - '0' : 1;
-
-                    gc.setBackground(consensusColors[ consensusDegree-1 ]);
-
-                    int xCoord = column * squareSize;
-
-                    gc.fillRectangle(xCoord, yCoord, squareSize, squareSize);
-
-                    if ( Character.isUpperCase( c )
-                            && squareSize
-                                 >= MINIMUM_SQUARE_SIZE_FOR_TEXT_IN_PIXELS ) {
-                        String text = "" + c;
-                        Point extent = gc.stringExtent(text);
-                        gc.drawString( text,
-                                       xCoord + squareSize/2 - extent.x/2,
-                                       yCoord + squareSize/2 - extent.y/2 );
-                    }
-                }
             }
 
             private void drawSelection( GC gc ) {
@@ -710,6 +582,8 @@ public class Aligner extends EditorPart {
 
                 // e.stateMask contains info on shift keys
                 if (currentlySelecting) {
+                  if (selectionVisible)
+                      redrawSelection( boundaries() );
                   selectionEnd.x = e.x;
                   selectionEnd.y = e.y;
 
@@ -736,25 +610,137 @@ public class Aligner extends EditorPart {
                       c.setLocation( -viewPortLeft, -viewPortTop );
                   }
 
-                  sequenceCanvas.redraw();
-
                   selectionBounds();
+                  redrawSelection( boundaries() );
                 }
 
                 if (currentlyDraggingSelection) {
+                    redrawSelection( boundaries() );
                     dragEnd.x = e.x;
                     dragEnd.y = e.y;
-
-                    sequenceCanvas.redraw();
+                    redrawSelection( boundaries() );
                 }
             }
 
         });
     }
 
+    // Draws one tile of the sequence canvas: the tick marks in the first
+    // row, then the sequences, then the consensus sequence.
+    private void renderTile( GC gc, int firstColumn, int firstRow,
+                                    int lastColumn,  int lastRow ) {
+
+        int xOrigin = firstColumn * squareSize,
+            yOrigin = firstRow    * squareSize;
+
+        gc.setBackground( backgroundColor );
+        gc.fillRectangle( 0, 0, (lastColumn - firstColumn) * squareSize,
+                                (lastRow    - firstRow)    * squareSize );
+        gc.setTextAntialias( SWT.OFF );
+
+        lastColumn = Math.min( lastColumn, canvasWidthInSquares );
+
+        if (firstRow == 0)
+            drawTickMarks( firstColumn, lastColumn, xOrigin, gc );
+        drawSequences( fastas, firstColumn, lastColumn, firstRow, lastRow,
+                       xOrigin, yOrigin, gc );
+        drawConsensusSequence( fastas[numberOfSequences-1],
+                               firstColumn, lastColumn, firstRow, lastRow,
+                               xOrigin, yOrigin, gc );
+    }
+
+    private void drawTickMarks( int firstColumn, int lastColumn,
+                                int xOrigin, GC gc ) {
+
+        gc.setForeground( textColor );
+        gc.setBackground( backgroundColor );
+
+        for ( int column = firstColumn; column < lastColumn; ++column ) {
+
+            if (column % 10 != 9) // It's an off-by one situation:
+                continue;         // A zero-based 9 is a one-based 10
+
+            int xCoord = column * squareSize + squareSize/2 - xOrigin,
+                    y1 = (int)(squareSize * .7),
+                    y2 = (int)(squareSize * .9);
+
+            gc.drawLine(xCoord, y1, xCoord, y2);
+        }
+
+        if ( squareSize >= MINIMUM_SQUARE_SIZE_FOR_TEXT_IN_PIXELS * 2 ) {
+
+            gc.setFont( glyphs.getFont( gc.getDevice(),
+                                        (int)(.35 * squareSize) ) );
+
+            for ( int column = firstColumn; column < lastColumn; ++column ) {
+
+                if (column % 10 != 9)  // Same off-by-one again
+                    continue;
+
+                int xCoord = column * squareSize + squareSize/2 - xOrigin;
+
+                String text = "" + (column + 1);
+                Point extent = gc.stringExtent(text);
+                gc.drawString( text,
+                               xCoord - extent.x/2,
+                               (int)(squareSize * .6) - extent.y );
+            }
+        }
+    }
+
+    private void drawSequences( final char[][] fasta,
+                                int firstColumn, int lastColumn,
+                                int firstRow,    int lastRow,
+                                int xOrigin,     int yOrigin, GC gc ) {
+
+        // The sequences start on the second row of the canvas, below the
+        // tick marks.
+        int n = numberOfSequences == 1 ? 1 : numberOfSequences - 1,
+            top    = Math.max( firstRow - 1, 0 ),
+            bottom = Math.min( lastRow - 1, n );
+        for ( int row = top; row < bottom; ++row ) {
+
+            int yCoord = (1 + row) * squareSize - yOrigin;
+
+            for ( int column = firstColumn; column < lastColumn; ++column ) {
+
+                char c = fasta[row].length > column
+                         ? fasta[row][column] : ' ';
+
+                glyphs.drawResidue( gc, c, squareSize,
+                                    column * squareSize - xOrigin, yCoord );
+            }
+        }
+    }
+
+    private void drawConsensusSequence( final char[] sequence,
+                                        int firstColumn, int lastColumn,
+                                        int firstRow,    int lastRow,
+                                        int xOrigin,     int yOrigin,
+                                        GC gc ) {
+
+        // The consensus is on the row below the last sequence.
+        if ( numberOfSequences < 2
+             || numberOfSequences < firstRow || numberOfSequences >= lastRow )
+            return;
+
+        int yCoord = numberOfSequences * squareSize - yOrigin;
+
+        for ( int column = firstColumn; column < lastColumn; ++column ) {
+
+            char c = sequence.length > column ? sequence[column] : ' ';
+
+            glyphs.drawConsensus( gc, c, squareSize,
+                                  column * squareSize - xOrigin, yCoord );
+        }
+    }
+
     private void equipCanvasesForWrapMode() {
-        final int columns = 30;
+        final int columns = WRAP_COLUMNS;
 
+        // Each line group has a row of tick marks, a row per sequence, the
+        // consensus row and an empty row. Only the groups and rows inside
+        // both the viewport and the damaged area are painted.
         sequenceCanvasPaintListener = new PaintListener() {
             public void paintControl(PaintEvent e) {
                 GC gc = e.gc;
@@ -763,55 +749,76 @@ public class Aligner extends EditorPart {
                 int offset = 0;
                 if ( squareSize >= MINIMUM_SQUARE_SIZE_FOR_TEXT_IN_PIXELS ) {
                     offset = NAME_CANVAS_WIDTH_IN_SQUARES * squareSize;
-
-                    gc.setFont( new Font(gc.getDevice(),
-                                         "Arial",
-                                         (int)(.7 * squareSize),
-                                         SWT.NONE) );
                 }
 
-                drawNames(gc);
-                drawTickMarks(offset, gc);
-                drawSequences(fastas, offset, gc);
-                drawConsensusSequence(fastas[numberOfSequences-1],
-                                      offset, gc);
+                Point origin = sc.getOrigin();
+                int top    = Math.max( e.y, origin.y ),
+                    bottom = Math.min( e.y + e.height,
+                                       origin.y + sc.getClientArea().height ),
+                    groupHeight = (numberOfSequences + 2) * squareSize;
+                if ( top >= bottom )
+                    return;
+
+                Point groups = WrapLayout.visibleGroups( top, bottom,
+                                                         groupHeight,
+                                                         wrapGroups() );
+                for ( int group = groups.x; group < groups.y; ++group ) {
+                    Point rows = WrapLayout.visibleRows(
+                                     top, bottom, group * groupHeight,
+                                     numberOfSequences + 2, squareSize );
+                    int firstRow = rows.x,
+                        lastRow  = rows.y;
+
+                    drawNames(group, firstRow, lastRow, gc);
+                    if (firstRow == 0)
+                        drawTickMarks(group, offset, gc);
+                    drawSequences(fastas, group, firstRow, lastRow,
+                                  offset, gc);
+                    drawConsensusSequence(fastas[numberOfSequences-1],
+                                          group, firstRow, lastRow,
+                                          offset, gc);
+                }
             }
 
-            private void drawNames(GC gc) {
-                gc.setBackground( buttonColor );
+            private void drawNames( int group, int firstRow, int lastRow,
+                                    GC gc ) {
                 gc.setForeground( nameColor );
 
-                gc.setFont( new Font(gc.getDevice(),
-                                     "Arial",
-                                     (int)(.7 * squareSize),
-                                     SWT.NONE) );
+                gc.setFont( glyphs.getFont( gc.getDevice(),
+                                            (int)(.7 * squareSize) ) );
 
-                int index = 0;
-                for ( String name : sequences.keySet() ) {
-                    if ( index == consensusRow )
-                        gc.setBackground( consensusColor );
-                    int groups = fastas[0].length / columns;
-                    for (int group = 0; group < groups; group++) {
-                        Point extent = gc.stringExtent(name);
-                        int y = (1 + index + (sequences.size() + 2) * group)
-                                * squareSize;
-                        gc.fillRectangle(0, y, 8 * squareSize, squareSize);
-                        gc.drawString(
-                            name,
-                            5,
-                            y  + squareSize/2 - extent.y/2
-                        );
-                    }
-                    ++index;
+                List<String> names = model.getNames();
+                int first = Math.max( 0, firstRow - 1 ),
+                    last  = Math.min( names.size(), lastRow - 1 );
+                for ( int index = first; index < last; ++index ) {
+                    String name = names.get( index );
+                    gc.setBackground( index >= model.getSequenceCount()
+                                      ? consensusColor : buttonColor );
+                    Point extent = gc.stringExtent(name);
+                    int y = (1 + index + (numberOfSequences + 2) * group)
+                            * squareSize;
+                    gc.fillRectangle(0, y, 8 * squareSize, squareSize);
+                    gc.drawString(
+                        name,
+                        5,
+                        y  + squareSize/2 - extent.y/2
+                    );
                 }
             }
 
-            private void drawTickMarks(int offset, GC gc) {
+            private void drawTickMarks(int group, int offset, GC gc) {
 
                 gc.setForeground( textColor );
                 gc.setBackground( backgroundColor );
 
-                for (int column = 9; column < fastas[0].length; column += 10) {
+                // Tick marks are on every tenth column, counting from one,
+                // so start at the first such column of the group.
+                int first = group * columns,
+                    last  = Math.min( canvasWidthInSquares,
+                                      first + columns );
+                first += (9 - first % 10 + 10) % 10;
+
+                for (int column = first; column < last; column += 10) {
 
                     int xCoord = offset
                                  + (column % columns)
@@ -828,14 +835,10 @@ public class Aligner extends EditorPart {
                 if ( squareSize
                      >= MINIMUM_SQUARE_SIZE_FOR_TEXT_IN_PIXELS * 2 ) {
 
-                    gc.setFont( new Font(gc.getDevice(),
-                                "Arial",
-                                (int)(.35 * squareSize),
-                                SWT.NONE) );
+                    gc.setFont( glyphs.getFont( gc.getDevice(),
+                                                (int)(.35 * squareSize) ) );
 
-                    for ( int column = 9;
-                          column < fastas[0].length;
-                          column += 10 ) {
+                    for ( int column = first; column < last; column += 10 ) {
 
                         int xCoord
                                  = offset
@@ -855,97 +858,62 @@ public class Aligner extends EditorPart {
             }
 
             private void drawSequences( final char[][] fasta,
+                                        int group,
+                                        int firstRow, int lastRow,
                                         int offset,
                                         GC gc ) {
 
-                gc.setForeground( textColor );
-                gc.setFont( new Font(gc.getDevice(),
-                                     "Arial",
-                                     (int)(.7 * squareSize),
-                                     SWT.NONE) );
+                // The sequences start on the second row of the group,
+                // below the tick marks.
+                int n = numberOfSequences == 1 ? 1 : numberOfSequences - 1,
+                    top    = Math.max( 0, firstRow - 1 ),
+                    bottom = Math.min( n, lastRow - 1 ),
+                    first  = group * columns,
+                    last   = Math.min( canvasWidthInSquares, first + columns );
 
-                int n = numberOfSequences == 1 ? 1 : numberOfSequences - 1;
-                for ( int column = 0; column < fasta[0].length; ++column ) {
+                for ( int row = top; row < bottom; ++row ) {
 
-                    int xCoord = (column % columns) * squareSize;
+                    int yCoord
+                        = (1 + row + (numberOfSequences + 2) * group)
+                          * squareSize;
 
-                    for ( int row = 0; row < n; ++row ) {
+                    for ( int column = first; column < last; ++column ) {
 
                         char c = fasta[row].length > column
                                  ? fasta[row][column] : ' ';
-                        String cc = c + "";
-
-                        gc.setBackground(
-                             "HKR".contains( cc ) ? basicAAColor
-                          :   "DE".contains( cc ) ? acidicAAColor
-                          : "TQSN".contains( cc ) ? polarAAColor
-                          :  "FYW".contains( cc ) ? nonpolarAAColor
-                          :   "GP".contains( cc ) ? smallAAColor
-                          :    'C' == c           ? cysteineColor
-                          :    'a' == c           ? adenineColor
-                          :    'c' == c           ? cytosineColor
-                          :    'g' == c           ? guanineColor
-                          :    't' == c           ? thymineColor
-                                                  : normalAAColor );
-
-                        int yCoord
-                            = (1 + row
-                               + (numberOfSequences + 2)
-                                 * (column / columns))
-                              * squareSize;
-
-                        gc.fillRectangle(offset + xCoord, yCoord,
-                                         squareSize, squareSize);
-
-                        if ( squareSize
-                                >= MINIMUM_SQUARE_SIZE_FOR_TEXT_IN_PIXELS ) {
-                            String text = cc.toUpperCase();
-                            Point extent = gc.stringExtent(text);
-                            gc.drawString(
-                                text,
-                                offset + xCoord + squareSize/2 - extent.x/2,
-                                yCoord + squareSize/2 - extent.y/2
-                            );
-                        }
+
+                        int xCoord = (column % columns) * squareSize;
+
+                        glyphs.drawResidue( gc, c, squareSize,
+                                            offset + xCoord, yCoord );
                     }
                 }
             }
 
             private void drawConsensusSequence( final char[] sequence,
+                                                int group,
+                                                int firstRow, int lastRow,
                                                 int offset,
                                                 GC gc ) {
 
-                if ( numberOfSequences < 2 )
+                // The consensus is on the row below the last sequence.
+                if ( numberOfSequences < 2
+                     || numberOfSequences < firstRow
+                     || numberOfSequences >= lastRow )
                     return;
 
-                for ( int column = 0; column < sequence.length; ++column ) {
+                int yCoord = (numberOfSequences
+                              + (numberOfSequences + 2) * group)
+                             * squareSize,
+                    first  = group * columns,
+                    last   = Math.min( sequence.length, first + columns );
 
-                    char c = sequence.length > column ? sequence[column] : ' ';
-                    int consensusDegree = Character.isDigit(c) ? c - '0' : 1;
-
-                    gc.setBackground(consensusColors[ consensusDegree-1 ]);
+                for ( int column = first; column < last; ++column ) {
 
                     int xCoord = (column % columns) * squareSize;
-                    int yCoord
-                        = (numberOfSequences
-                           + (numberOfSequences + 2)
-                             * (column / columns))
-                           * squareSize;
-
-                    gc.fillRectangle(offset + xCoord, yCoord,
-                                     squareSize, squareSize);
-
-                    if ( Character.isUpperCase( c )
-                         && squareSize
-                            >= MINIMUM_SQUARE_SIZE_FOR_TEXT_IN_PIXELS ) {
-                        String text = "" + c;
-                        Point extent = gc.stringExtent(text);
-                        gc.drawString(
-                            text,
-                            offset + xCoord + squareSize/2 - extent.x/2,
-                            yCoord + squareSize/2 - extent.y/2
-                        );
-                    }
+
+                    glyphs.drawConsensus( gc, sequence[column], squareSize,
+                                          offset + xCoord, yCoord );
                 }
             }
         };
@@ -0,0 +1,174 @@
+/* ***************************************************************************
+ * Copyright (c) 2008 Bioclipse Project
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ *****************************************************************************/
+
+package net.bioclipse.biojava.ui.editors;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import net.bioclipse.core.domain.ISequence;
+
+/**
+ * The sequences shown by a {@link SequenceEditor}, kept once for all the
+ * views of the editor. It holds the residues of each sequence, their
+ * {@link ConsensusProfile} and the consensus row, and tells its listeners
+ * when the sequences change.
+ * <p>
+ * The rows of the model are the sequences in order, followed by the
+ * consensus when there is more than one sequence.
+ */
+public class AlignmentModel {
+
+    /** The name of the consensus row. */
+    public static final String CONSENSUS = "Consensus";
+
+    /**
+     * Is told when the sequences of a model change.
+     */
+    public interface Listener {
+        void alignmentChanged( AlignmentModel model );
+    }
+
+    private List<String> names = Collections.emptyList();
+    private char[][] rows = new char[0][];
+    private int sequenceCount, width;
+    private ConsensusProfile profile;
+
+    private final List<Listener> listeners
+        = new CopyOnWriteArrayList<Listener>();
+
+    public void addListener( Listener listener ) {
+        listeners.add( listener );
+    }
+
+    public void removeListener( Listener listener ) {
+        listeners.remove( listener );
+    }
+
+    /**
+     * Replaces the sequences of the model and tells the listeners. When
+     * the same sequences come back changed, as after aligning them, only
+     * the changed ones are recounted in the profile.
+     */
+    public void setSequences( List<ISequence> seqs ) {
+        Map<String, String> sequences = new LinkedHashMap<String, String>();
+
+        // Add the sequences one by one to the Map. Do minor cosmetics
+        // on the name by removing everything up to and including to
+        // the last '|', if any.
+        for (ISequence seq : seqs) {
+            String name = seq.getName().replaceFirst( ".*\\|", "" );
+            sequences.put( name, seq.getPlainSequence() );
+        }
+
+        List<String> newNames = new ArrayList<String>( sequences.keySet() );
+        char[][] residues = new char[ sequences.size() ][];
+        {
+            int i = 0;
+            for ( String sequence : sequences.values() )
+                residues[i++] = sequence.toCharArray();
+        }
+
+        if ( profile != null
+             && newNames.equals( names.subList(0, sequenceCount) ) ) {
+            // Unchanged sequences keep their arrays, so that views can
+            // tell what changed by comparing rows.
+            for ( int i = 0; i < residues.length; ++i )
+                if ( Arrays.equals( rows[i], residues[i] ) )
+                    residues[i] = rows[i];
+                else
+                    profile.replaceSequence( rows[i], residues[i] );
+        }
+        else {
+            profile = new ConsensusProfile( residues );
+        }
+
+        sequenceCount = residues.length;
+        width = 0;
+        for ( char[] row : residues )
+            width = Math.max( width, row.length );
+
+        // We only show a consensus sequence if there is more than one
+        // sequence already.
+        if ( sequenceCount > 1 ) {
+            newNames.add( CONSENSUS );
+            rows = new char[ sequenceCount + 1 ][];
+            System.arraycopy( residues, 0, rows, 0, sequenceCount );
+            char[] consensus = new char[width];
+            for ( int column = 0; column < width; ++column )
+                consensus[column] = profile.getConsensusChar( column );
+            rows[sequenceCount] = consensus;
+        }
+        else {
+            rows = residues;
+        }
+        names = Collections.unmodifiableList( newNames );
+
+        for ( Listener listener : listeners )
+            listener.alignmentChanged( this );
+    }
+
+    /**
+     * Returns the names of the rows, ending with {@link #CONSENSUS} if
+     * there is a consensus row.
+     */
+    public List<String> getNames() {
+        return names;
+    }
+
+    /**
+     * Returns the residues of all rows, the consensus last. The arrays are
+     * the model's own and must not be changed.
+     */
+    public char[][] getRows() {
+        return rows;
+    }
+
+    /**
+     * Returns the number of rows, counting the consensus.
+     */
+    public int getRowCount() {
+        return rows.length;
+    }
+
+    /**
+     * Returns the number of sequences, not counting the consensus.
+     */
+    public int getSequenceCount() {
+        return sequenceCount;
+    }
+
+    /**
+     * Returns the length of the longest sequence.
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * Returns whether the last row is a consensus row.
+     */
+    public boolean hasConsensus() {
+        return rows.length > sequenceCount;
+    }
+
+    /**
+     * Returns the residue counts of the columns, giving the consensus and
+     * the majority residue of each column, or <code>null</code> before any
+     * sequences are set.
+     */
+    public ConsensusProfile getProfile() {
+        return profile;
+    }
+}
@@ -0,0 +1,353 @@
+/* ***************************************************************************
+ * Copyright (c) 2008 Bioclipse Project
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ *****************************************************************************/
+
+package net.bioclipse.biojava.ui.editors;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Counts the residues in each column of an alignment, from which the
+ * consensus of a column is read in constant time. The counts are kept in
+ * one <code>int</code> array of {@link #ALPHABET_SIZE} counts per column,
+ * and are updated sequence by sequence when the alignment changes instead
+ * of being counted anew. The rare characters outside that alphabet, such
+ * as digits, are counted one by one in a map for the columns having them.
+ * <p>
+ * Sequences shorter than the alignment are padded, and the padding counts
+ * as one more type of residue in the columns it covers.
+ * <p>
+ * A profile is meant to be used from one thread, the display thread. Large
+ * alignments are counted on several threads when the profile is created.
+ */
+public class ConsensusProfile {
+
+    /**
+     * The residues counted in the array, gaps first. Other characters are
+     * counted in {@link #others}.
+     */
+    private static final String SYMBOLS
+        = "-.*ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz?";
+
+    /** The number of counts kept in the array per column. */
+    public static final int ALPHABET_SIZE = SYMBOLS.length();
+
+    private static final int FIRST_RESIDUE = 2,
+                             OTHER         = -1;
+    private static final byte[] INDEX = new byte[128];
+
+    static {
+        for ( int c = 0; c < INDEX.length; ++c )
+            INDEX[c] = (byte) OTHER;
+        for ( int i = 0; i < ALPHABET_SIZE; ++i )
+            INDEX[ SYMBOLS.charAt(i) ] = (byte) i;
+    }
+
+    /** Alignments with fewer residues than this are counted on one thread. */
+    private static final long PARALLEL_THRESHOLD = 1 << 20;
+
+    private int rows, columns;
+    private int[] counts;   // ALPHABET_SIZE counts per column
+    private int[] filled;   // the number of residues in each column
+    private int[] types;    // the number of distinct residues in each column
+
+    /**
+     * The counts of the characters outside {@link #SYMBOLS}, by column.
+     * Each column is counted by one thread only, so the maps of the
+     * columns need no locking.
+     */
+    private final Map<Integer, Map<Character, Integer>> others
+        = new ConcurrentHashMap<Integer, Map<Character, Integer>>();
+
+    /**
+     * Counts the residues of the sequences.
+     *
+     * @param sequences the aligned sequences, one per row
+     */
+    public ConsensusProfile( char[][] sequences ) {
+        rows = sequences.length;
+        for ( char[] sequence : sequences )
+            columns = Math.max( columns, sequence.length );
+        counts = new int[ columns * ALPHABET_SIZE ];
+        filled = new int[ columns ];
+        types  = new int[ columns ];
+
+        countInParallel( sequences );
+    }
+
+    private void countInParallel( final char[][] sequences ) {
+        int threads = (long) rows * columns < PARALLEL_THRESHOLD
+                      ? 1
+                      : Math.min( Runtime.getRuntime().availableProcessors(),
+                                  columns );
+        if (threads <= 1) {
+            count( sequences, 0, columns );
+            return;
+        }
+
+        // Each thread counts a stripe of columns, so no two threads ever
+        // write the same counts.
+        Thread[] stripes = new Thread[threads];
+        int width = (columns + threads - 1) / threads;
+        for ( int i = 0; i < threads; ++i ) {
+            final int from = Math.min( i * width, columns ),
+                      to   = Math.min( from + width, columns );
+            stripes[i] = new Thread( "Consensus profile" ) {
+                public void run() {
+                    count( sequences, from, to );
+                }
+            };
+            stripes[i].start();
+        }
+
+        boolean interrupted = false;
+        for ( Thread stripe : stripes ) {
+            while ( stripe.isAlive() ) {
+                try {
+                    stripe.join();
+                } catch ( InterruptedException e ) {
+                    interrupted = true;
+                }
+            }
+        }
+        if (interrupted)
+            Thread.currentThread().interrupt();
+    }
+
+    private void count( char[][] sequences, int from, int to ) {
+        for ( char[] sequence : sequences )
+            for ( int column = from, end = Math.min( to, sequence.length );
+                  column < end; ++column )
+                add( column, sequence[column] );
+    }
+
+    private static int index( char c ) {
+        return c < INDEX.length ? INDEX[c] : OTHER;
+    }
+
+    private void add( int column, char c ) {
+        int i = index(c);
+        if ( i == OTHER ? addOther( column, c ) == 1
+                        : counts[ column * ALPHABET_SIZE + i ]++ == 0 )
+            ++types[column];
+        ++filled[column];
+    }
+
+    private void remove( int column, char c ) {
+        int i = index(c);
+        if ( i == OTHER ? removeOther( column, c ) == 0
+                        : --counts[ column * ALPHABET_SIZE + i ] == 0 )
+            --types[column];
+        --filled[column];
+    }
+
+    private int addOther( int column, char c ) {
+        Map<Character, Integer> counted = others.get( column );
+        if (counted == null) {
+            counted = new HashMap<Character, Integer>();
+            others.put( column, counted );
+        }
+        Integer count = counted.get( c );
+        int n = count == null ? 1 : count + 1;
+        counted.put( c, n );
+        return n;
+    }
+
+    private int removeOther( int column, char c ) {
+        Map<Character, Integer> counted = others.get( column );
+        int n = counted.get( c ) - 1;
+        if ( n > 0 )
+            counted.put( c, n );
+        else {
+            counted.remove( c );
+            if ( counted.isEmpty() )
+                others.remove( column );
+        }
+        return n;
+    }
+
+    private int otherCount( int column, char c ) {
+        Map<Character, Integer> counted = others.get( column );
+        Integer count = counted == null ? null : counted.get( c );
+        return count == null ? 0 : count;
+    }
+
+    private void ensureColumns( int length ) {
+        if ( length <= columns )
+            return;
+
+        int[] newCounts = new int[ length * ALPHABET_SIZE ],
+              newFilled = new int[ length ],
+              newTypes  = new int[ length ];
+        System.arraycopy( counts, 0, newCounts, 0, counts.length );
+        System.arraycopy( filled, 0, newFilled, 0, columns );
+        System.arraycopy( types,  0, newTypes,  0, columns );
+        counts  = newCounts;
+        filled  = newFilled;
+        types   = newTypes;
+        columns = length;
+    }
+
+    /**
+     * Adds the residues of one more sequence.
+     */
+    public void addSequence( char[] sequence ) {
+        ensureColumns( sequence.length );
+        ++rows;
+        for ( int column = 0; column < sequence.length; ++column )
+            add( column, sequence[column] );
+    }
+
+    /**
+     * Removes the residues of a sequence added before. The columns of the
+     * profile are kept even if no sequence reaches them any more.
+     */
+    public void removeSequence( char[] sequence ) {
+        --rows;
+        for ( int column = 0; column < sequence.length; ++column )
+            remove( column, sequence[column] );
+    }
+
+    /**
+     * Replaces a sequence with a new version of it, recounting only the
+     * columns where the two differ.
+     */
+    public void replaceSequence( char[] oldSequence, char[] newSequence ) {
+        ensureColumns( newSequence.length );
+        int n = Math.max( oldSequence.length, newSequence.length );
+        for ( int column = 0; column < n; ++column ) {
+            boolean inOld = column < oldSequence.length,
+                    inNew = column < newSequence.length;
+            if ( inOld && inNew
+                 && oldSequence[column] == newSequence[column] )
+                continue;
+            if (inOld)
+                remove( column, oldSequence[column] );
+            if (inNew)
+                add( column, newSequence[column] );
+        }
+    }
+
+    /**
+     * Returns the number of sequences counted.
+     */
+    public int getRows() {
+        return rows;
+    }
+
+    /**
+     * Returns the length of the longest sequence counted.
+     */
+    public int getColumns() {
+        return columns;
+    }
+
+    /**
+     * Returns the number of sequences with the given residue in a column.
+     */
+    public int getCount( int column, char residue ) {
+        int i = index(residue);
+        return i == OTHER ? otherCount( column, residue )
+                          : counts[ column * ALPHABET_SIZE + i ];
+    }
+
+    /**
+     * Returns the number of distinct residues in a column, counting the
+     * padding of shorter sequences as one.
+     */
+    public int getDistinctCount( int column ) {
+        return types[column] + (filled[column] < rows ? 1 : 0);
+    }
+
+    /**
+     * Returns the glyph for a column in the consensus row: the residue if
+     * all sequences agree, and otherwise the number of distinct residues,
+     * up to 9.
+     */
+    public char getConsensusChar( int column ) {
+        int distinct = getDistinctCount( column );
+        if ( distinct != 1 )
+            return Character.forDigit( Math.min(distinct, 9), 10 );
+        if ( filled[column] < rows )
+            return '\0';
+        return mostFrequent( column, true );
+    }
+
+    /**
+     * Returns the glyphs of the consensus row.
+     *
+     * @see #getConsensusChar(int)
+     */
+    public char[] getConsensus() {
+        char[] consensus = new char[columns];
+        for ( int column = 0; column < columns; ++column )
+            consensus[column] = getConsensusChar( column );
+        return consensus;
+    }
+
+    /**
+     * Returns the most frequent residue of a column, not counting gaps
+     * ('-' and '.'), or '-' if the column has nothing else. Ties go to the
+     * residue first in the alphabet, and then to the lowest character.
+     */
+    public char getMajority( int column ) {
+        return mostFrequent( column, false );
+    }
+
+    /**
+     * Returns the fraction of the sequences having the majority residue in
+     * a column.
+     *
+     * @see #getMajority(int)
+     */
+    public double getFrequency( int column ) {
+        if ( rows == 0 )
+            return 0;
+        return getCount( column, getMajority(column) ) / (double) rows;
+    }
+
+    /**
+     * Returns the majority residue of every column.
+     *
+     * @see #getMajority(int)
+     */
+    public char[] getMajorityConsensus() {
+        char[] consensus = new char[columns];
+        for ( int column = 0; column < columns; ++column )
+            consensus[column] = getMajority( column );
+        return consensus;
+    }
+
+    private char mostFrequent( int column, boolean countGaps ) {
+        int offset = column * ALPHABET_SIZE,
+            first  = countGaps ? 0 : FIRST_RESIDUE,
+            best   = first;
+        for ( int i = first + 1; i < ALPHABET_SIZE; ++i )
+            if ( counts[offset + i] > counts[offset + best] )
+                best = i;
+        char majority = SYMBOLS.charAt( best );
+        int count = counts[offset + best];
+
+        Map<Character, Integer> counted = others.get( column );
+        if (counted != null) {
+            boolean other = false;
+            for ( Map.Entry<Character, Integer> e : counted.entrySet() ) {
+                if ( e.getValue() > count
+                     || e.getValue() == count && other
+                        && e.getKey() < majority ) {
+                    majority = e.getKey();
+                    count = e.getValue();
+                    other = true;
+                }
+            }
+        }
+        return count > 0 ? majority : '-';
+    }
+}
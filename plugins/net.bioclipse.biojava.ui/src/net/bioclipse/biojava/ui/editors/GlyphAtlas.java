@@ -0,0 +1,186 @@
+/* ***************************************************************************
+ * Copyright (c) 2008 Bioclipse Project
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ *****************************************************************************/
+
+package net.bioclipse.biojava.ui.editors;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.eclipse.swt.SWT;
+import org.eclipse.swt.graphics.Color;
+import org.eclipse.swt.graphics.Device;
+import org.eclipse.swt.graphics.Font;
+import org.eclipse.swt.graphics.GC;
+import org.eclipse.swt.graphics.Image;
+import org.eclipse.swt.graphics.Point;
+
+/**
+ * Pre-drawn squares of residues and consensus glyphs, each with its letter
+ * on its color, so that a square is painted with one copy from an image
+ * instead of a fill and a text drawing. There is one image per square
+ * size, holding a row of residue squares and a row of consensus squares
+ * for the characters up to 127.
+ * <p>
+ * The atlas also keeps the fonts used by the views of the sequence editor,
+ * so that they are made once instead of on every paint. It is owned by the
+ * {@link SequenceEditor} and disposed with it, and must be used from the
+ * display thread.
+ */
+public class GlyphAtlas {
+
+    /** Squares smaller than this get no letters. */
+    public final static int MINIMUM_SQUARE_SIZE_FOR_TEXT_IN_PIXELS = 8;
+
+    private static final int GLYPHS = 128,
+                             MAX_SQUARE_SIZES = 4,
+                             MAX_FONTS = 8;
+
+    private final Map<Integer, Image> atlases
+        = new LinkedHashMap<Integer, Image>( 8, .75f, true ) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(
+                                  Map.Entry<Integer, Image> eldest ) {
+                if ( size() <= MAX_SQUARE_SIZES )
+                    return false;
+                eldest.getValue().dispose();
+                return true;
+            }
+        };
+
+    private final Map<Integer, Font> fonts
+        = new LinkedHashMap<Integer, Font>( 8, .75f, true ) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(
+                                  Map.Entry<Integer, Font> eldest ) {
+                if ( size() <= MAX_FONTS )
+                    return false;
+                eldest.getValue().dispose();
+                return true;
+            }
+        };
+
+    /**
+     * Returns the font of the given height used by the sequence views.
+     * The font belongs to the atlas and must not be disposed.
+     */
+    public Font getFont( Device device, int height ) {
+        Font font = fonts.get( height );
+        if (font == null) {
+            font = new Font( device, "Arial", height, SWT.NONE );
+            fonts.put( height, font );
+        }
+        return font;
+    }
+
+    /**
+     * Paints the square of a residue with its top left corner at
+     * <code>x</code>, <code>y</code>.
+     */
+    public void drawResidue( GC gc, char c, int squareSize, int x, int y ) {
+        draw( gc, c, 0, squareSize, x, y );
+    }
+
+    /**
+     * Paints the square of a consensus glyph, a residue or the number of
+     * distinct residues in the column, with its top left corner at
+     * <code>x</code>, <code>y</code>.
+     */
+    public void drawConsensus( GC gc, char c, int squareSize, int x, int y ) {
+        draw( gc, c, 1, squareSize, x, y );
+    }
+
+    private void draw( GC gc, char c, int row,
+                       int squareSize, int x, int y ) {
+
+        int glyph = c < GLYPHS ? c : ' ';
+        gc.drawImage( atlas( gc.getDevice(), squareSize ),
+                      glyph * squareSize, row * squareSize,
+                      squareSize, squareSize,
+                      x, y, squareSize, squareSize );
+    }
+
+    private Image atlas( Device device, int squareSize ) {
+        Image atlas = atlases.get( squareSize );
+        if (atlas != null)
+            return atlas;
+
+        atlas = new Image( device, GLYPHS * squareSize, 2 * squareSize );
+        GC gc = new GC( atlas );
+        try {
+            gc.setTextAntialias( SWT.OFF );
+            gc.setFont( getFont( device, (int)(.7 * squareSize) ) );
+            gc.setForeground( Aligner.textColor );
+            boolean text
+                = squareSize >= MINIMUM_SQUARE_SIZE_FOR_TEXT_IN_PIXELS;
+
+            for ( char c = 0; c < GLYPHS; ++c ) {
+                int x = c * squareSize;
+
+                gc.setBackground( residueColor(c) );
+                gc.fillRectangle( x, 0, squareSize, squareSize );
+                if ( text && c > ' ' )
+                    drawCentered( gc, String.valueOf(c).toUpperCase(),
+                                  x, 0, squareSize );
+
+                int consensusDegree = Character.isDigit(c) ? c - '0' : 1;
+                consensusDegree = Math.max( 1, consensusDegree );
+                gc.setBackground(
+                    Aligner.consensusColors[ consensusDegree-1 ] );
+                gc.fillRectangle( x, squareSize, squareSize, squareSize );
+                if ( text && Character.isUpperCase(c) )
+                    drawCentered( gc, String.valueOf(c),
+                                  x, squareSize, squareSize );
+            }
+        } finally {
+            gc.dispose();
+        }
+
+        atlases.put( squareSize, atlas );
+        return atlas;
+    }
+
+    private static void drawCentered( GC gc, String text,
+                                      int x, int y, int squareSize ) {
+        Point extent = gc.stringExtent(text);
+        gc.drawString( text,
+                       x + squareSize/2 - extent.x/2,
+                       y + squareSize/2 - extent.y/2 );
+    }
+
+    private static Color residueColor( char c ) {
+        String cc = c + "";
+        return   "HKR".contains( cc ) ? Aligner.basicAAColor
+             :    "DE".contains( cc ) ? Aligner.acidicAAColor
+             :  "TQSN".contains( cc ) ? Aligner.polarAAColor
+             :   "FYW".contains( cc ) ? Aligner.nonpolarAAColor
+             :    "GP".contains( cc ) ? Aligner.smallAAColor
+             :     'C' == c           ? Aligner.cysteineColor
+             :     'a' == c           ? Aligner.adenineColor
+             :     'c' == c           ? Aligner.cytosineColor
+             :     'g' == c           ? Aligner.guanineColor
+             :     't' == c           ? Aligner.thymineColor
+                                      : Aligner.normalAAColor;
+    }
+
+    /**
+     * Disposes the images and fonts of the atlas.
+     */
+    public void dispose() {
+        for ( Image atlas : atlases.values() )
+            atlas.dispose();
+        atlases.clear();
+        for ( Font font : fonts.values() )
+            font.dispose();
+        fonts.clear();
+    }
+}
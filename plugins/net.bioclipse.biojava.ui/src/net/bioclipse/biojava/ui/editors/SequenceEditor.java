@@ -9,6 +9,7 @@
 
 package net.bioclipse.biojava.ui.editors;
 
+import java.io.FileNotFoundException;
 import java.util.List;
 
 import net.bioclipse.biojava.business.Activator;
@@ -22,7 +23,9 @@ import org.apache.log4j.Logger;
 import org.eclipse.core.resources.IFile;
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.jface.dialogs.MessageDialog;
+import org.eclipse.ui.IEditorInput;
 import org.eclipse.ui.IEditorPart;
+import org.eclipse.ui.IEditorSite;
 import org.eclipse.ui.PartInitException;
 import org.eclipse.ui.editors.text.TextEditor;
 import org.eclipse.ui.part.FileEditorInput;
@@ -36,16 +39,40 @@ public class SequenceEditor extends MultiPageEditorPart {
     public static final String SEQUENCE_EDITOR_ID
       = "net.bioclipse.biojava.ui.editors.SequenceEditor";
 
+    private final AlignmentModel model = new AlignmentModel();
+    private final GlyphAtlas glyphs = new GlyphAtlas();
     private Aligner aligner;
     private SequenceOutlinePage outlinePage;
     private boolean dirty;
 
+    @Override
+    public void init( IEditorSite site, IEditorInput input )
+        throws PartInitException {
+
+        super.init( site, input );
+
+        // Read the sequences once; the aligner and the outline both show
+        // them from the model.
+        IFile file = (IFile) input.getAdapter( IFile.class );
+        if (file == null)
+            return;
+
+        try {
+            model.setSequences( Activator.getDefault()
+                                         .getJavaBiojavaManager()
+                                         .sequencesFromFile(file) );
+        } catch ( FileNotFoundException e ) {
+            LogUtils.handleException( e, logger,
+                                 net.bioclipse.biojava.ui.Activator.PLUGIN_ID );
+        }
+    }
+
     @Override
     protected void createPages() {
         setPartName( getEditorInput().getName() );
         try {
-            int pageIndex1 = this.addPage( aligner = new Aligner(),
-                                           getEditorInput() ),
+            aligner = new Aligner( model, glyphs );
+            int pageIndex1 = this.addPage( aligner, getEditorInput() ),
                 pageIndex2 = this.addPage( new TextEditor(),
                                            getEditorInput() );
             setPageText(pageIndex1, "Sequences");
@@ -116,12 +143,32 @@ public class SequenceEditor extends MultiPageEditorPart {
         aligner.zoomOut();
     }
 
+    /**
+     * Returns the sequences shown by the editor, shared by its views.
+     */
+    public AlignmentModel getAlignmentModel() {
+        return model;
+    }
+
+    /**
+     * Returns the squares and fonts the views of the editor paint with.
+     */
+    public GlyphAtlas getGlyphAtlas() {
+        return glyphs;
+    }
+
+    @Override
+    public void dispose() {
+        super.dispose();
+        glyphs.dispose();
+    }
+
     public java.util.List<ISequence> getSequences() {
         return aligner.getSequences();
     }
 
     public void setSequences(List<ISequence> sequences) {
-        aligner.setSequences(sequences);
+        model.setSequences(sequences);
         dirty = true;
         firePropertyChange( IEditorPart.PROP_DIRTY );
     }
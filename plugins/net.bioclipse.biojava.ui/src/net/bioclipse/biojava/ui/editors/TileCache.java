@@ -0,0 +1,178 @@
+/* ***************************************************************************
+ * Copyright (c) 2008 Bioclipse Project
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ *****************************************************************************/
+
+package net.bioclipse.biojava.ui.editors;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.eclipse.swt.graphics.GC;
+import org.eclipse.swt.graphics.Image;
+import org.eclipse.swt.widgets.Display;
+
+/**
+ * Off-screen images of blocks of {@link #TILE_COLUMNS} columns by
+ * {@link #TILE_ROWS} rows of an alignment, so that painting a canvas only
+ * copies images that are already drawn. Tiles are kept per square size, and
+ * the least recently used tiles are disposed when the tiles together grow
+ * beyond a number of pixels, {@link #DEFAULT_MAX_PIXELS} by default.
+ * <p>
+ * Must be used from the display thread.
+ */
+class TileCache {
+
+    /** The number of columns and rows in a tile. */
+    static final int TILE_COLUMNS = 32,
+                     TILE_ROWS    = 16;
+
+    /** The default largest number of pixels kept in all tiles together. */
+    static final long DEFAULT_MAX_PIXELS = 16L * 1024 * 1024;
+
+    /**
+     * Draws the squares of a tile.
+     */
+    interface Renderer {
+        /**
+         * Draws the squares from <code>firstColumn</code> and
+         * <code>firstRow</code> up to but not including
+         * <code>lastColumn</code> and <code>lastRow</code>, at the square
+         * size the tile is asked for. The square of <code>firstColumn</code>
+         * and <code>firstRow</code> goes in the top left corner of the GC.
+         */
+        void render( GC gc, int firstColumn, int firstRow,
+                            int lastColumn,  int lastRow );
+    }
+
+    private static class Key {
+
+        final int squareSize, column, row;
+
+        Key( int squareSize, int column, int row ) {
+            this.squareSize = squareSize;
+            this.column     = column;
+            this.row        = row;
+        }
+
+        @Override
+        public boolean equals( Object o ) {
+            if (!(o instanceof Key))
+                return false;
+            Key k = (Key) o;
+            return squareSize == k.squareSize
+                   && column == k.column && row == k.row;
+        }
+
+        @Override
+        public int hashCode() {
+            return (squareSize * 31 + column) * 31 + row;
+        }
+    }
+
+    private final Display display;
+    private final Renderer renderer;
+    private final long maxPixels;
+    private final Map<Key, Image> tiles
+        = new LinkedHashMap<Key, Image>( 16, .75f, true );
+    private long pixels;
+
+    TileCache( Display display, Renderer renderer ) {
+        this( display, renderer, DEFAULT_MAX_PIXELS );
+    }
+
+    /**
+     * @param maxPixels the largest number of pixels kept in all tiles
+     *                  together, though the tile drawn last is always kept
+     */
+    TileCache( Display display, Renderer renderer, long maxPixels ) {
+        this.display   = display;
+        this.renderer  = renderer;
+        this.maxPixels = maxPixels;
+    }
+
+    /**
+     * Returns the image of a tile, drawing it if it is not cached.
+     *
+     * @param column the index of the tile among the tiles of a row
+     * @param row    the index of the tile among the tiles of a column
+     */
+    Image get( int squareSize, int column, int row ) {
+        Key key = new Key( squareSize, column, row );
+        Image tile = tiles.get( key );
+        if (tile != null)
+            return tile;
+
+        int width  = TILE_COLUMNS * squareSize,
+            height = TILE_ROWS    * squareSize;
+        tile = new Image( display, width, height );
+        GC gc = new GC( tile );
+        try {
+            renderer.render( gc, column * TILE_COLUMNS, row * TILE_ROWS,
+                             (column + 1) * TILE_COLUMNS,
+                             (row + 1) * TILE_ROWS );
+        } finally {
+            gc.dispose();
+        }
+
+        tiles.put( key, tile );
+        pixels += (long) width * height;
+        evict();
+        return tile;
+    }
+
+    private void evict() {
+        Iterator<Map.Entry<Key, Image>> eldest = tiles.entrySet().iterator();
+        // Never evict the tile just drawn, which is the last one.
+        while ( pixels > maxPixels && tiles.size() > 1 ) {
+            Map.Entry<Key, Image> entry = eldest.next();
+            remove( entry.getKey(), entry.getValue() );
+            eldest.remove();
+        }
+    }
+
+    private void remove( Key key, Image tile ) {
+        pixels -= (long) TILE_COLUMNS * key.squareSize
+                  * TILE_ROWS * key.squareSize;
+        tile.dispose();
+    }
+
+    /**
+     * Disposes the tiles, at all square sizes, holding any of the squares
+     * from <code>firstColumn</code> and <code>firstRow</code> up to but not
+     * including <code>lastColumn</code> and <code>lastRow</code>.
+     */
+    void invalidate( int firstColumn, int firstRow,
+                     int lastColumn,  int lastRow ) {
+
+        int left   = firstColumn / TILE_COLUMNS,
+            top    = firstRow    / TILE_ROWS,
+            right  = (lastColumn - 1) / TILE_COLUMNS,
+            bottom = (lastRow    - 1) / TILE_ROWS;
+
+        for ( Iterator<Map.Entry<Key, Image>> i = tiles.entrySet().iterator();
+              i.hasNext(); ) {
+            Map.Entry<Key, Image> entry = i.next();
+            Key key = entry.getKey();
+            if ( left <= key.column && key.column <= right
+                 && top <= key.row && key.row <= bottom ) {
+                remove( key, entry.getValue() );
+                i.remove();
+            }
+        }
+    }
+
+    /**
+     * Disposes all tiles.
+     */
+    void clear() {
+        for ( Map.Entry<Key, Image> entry : tiles.entrySet() )
+            remove( entry.getKey(), entry.getValue() );
+        tiles.clear();
+    }
+}
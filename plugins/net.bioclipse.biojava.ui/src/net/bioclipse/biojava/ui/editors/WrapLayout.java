@@ -0,0 +1,54 @@
+/* ***************************************************************************
+ * Copyright (c) 2008 Bioclipse Project
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ *****************************************************************************/
+
+package net.bioclipse.biojava.ui.editors;
+
+import org.eclipse.swt.graphics.Point;
+
+/**
+ * Tells which line groups of the wrap mode of the {@link Aligner}, and
+ * which of their rows, lie in a band of pixel rows of the canvas. Each
+ * range is returned as a {@link Point} holding its first index as x and
+ * one past its last index as y.
+ */
+class WrapLayout {
+
+    private WrapLayout() {
+    }
+
+    /**
+     * Returns the line groups between the pixel rows <code>top</code> and
+     * <code>bottom</code>, exclusive.
+     *
+     * @param groupHeight the height in pixels of a line group
+     * @param groups      the number of line groups
+     */
+    static Point visibleGroups( int top, int bottom,
+                                int groupHeight, int groups ) {
+        return new Point( top / groupHeight,
+                          Math.min( groups,
+                                    (bottom - 1) / groupHeight + 1 ) );
+    }
+
+    /**
+     * Returns the rows of a line group between the pixel rows
+     * <code>top</code> and <code>bottom</code>, exclusive.
+     *
+     * @param groupTop   the pixel row the line group starts at
+     * @param groupRows  the number of rows in a line group
+     * @param squareSize the height in pixels of a row
+     */
+    static Point visibleRows( int top, int bottom, int groupTop,
+                              int groupRows, int squareSize ) {
+        return new Point( Math.max( 0, (top - groupTop) / squareSize ),
+                          Math.min( groupRows,
+                                    (bottom - groupTop + squareSize - 1)
+                                    / squareSize ) );
+    }
+}
@@ -1,19 +1,9 @@
 package net.bioclipse.biojava.ui.views.outline;
 
-import java.io.FileNotFoundException;
-import java.util.Collection;
-import java.util.HashMap;
-import java.util.LinkedHashMap;
-import java.util.List;
-import java.util.Map;
-
-import net.bioclipse.biojava.business.Activator;
-import net.bioclipse.biojava.business.IBiojavaManager;
-import net.bioclipse.biojava.ui.editors.Aligner;
+import net.bioclipse.biojava.ui.editors.AlignmentModel;
+import net.bioclipse.biojava.ui.editors.GlyphAtlas;
 import net.bioclipse.biojava.ui.editors.SequenceEditor;
-import net.bioclipse.core.domain.ISequence;
 
-import org.eclipse.core.resources.IFile;
 import org.eclipse.core.runtime.IAdaptable;
 import org.eclipse.jface.viewers.ISelection;
 import org.eclipse.jface.viewers.ISelectionChangedListener;
@@ -22,7 +12,6 @@ import org.eclipse.swt.events.PaintEvent;
 import org.eclipse.swt.events.PaintListener;
 import org.eclipse.swt.events.SelectionEvent;
 import org.eclipse.swt.events.SelectionListener;
-import org.eclipse.swt.graphics.Font;
 import org.eclipse.swt.graphics.GC;
 import org.eclipse.swt.widgets.Canvas;
 import org.eclipse.swt.widgets.Composite;
@@ -39,103 +28,42 @@ public class SequenceOutlinePage extends Page
                                             ISelectionListener, IAdaptable {
 
     private int squareSize = 8;
-    private final static int MINIMUM_SQUARE_SIZE_FOR_TEXT_IN_PIXELS = 8;
     private int canvasWidthInSquares, numberOfSequences;
 
     private Canvas sequenceCanvas;
     
-    //          seqname, sequence
-    private Map<String,  String> sequences;
+    private final AlignmentModel model;
+    private final GlyphAtlas glyphs;
+    private final AlignmentModel.Listener modelListener
+        = new AlignmentModel.Listener() {
+            public void alignmentChanged( AlignmentModel model ) {
+                updateFromModel();
+                if (sequenceCanvas != null) {
+                    sequenceCanvas.setSize(
+                        canvasWidthInSquares * squareSize,
+                        numberOfSequences    * squareSize
+                    );
+                    sequenceCanvas.getHorizontalBar()
+                                  .setMaximum( canvasWidthInSquares );
+                    sequenceCanvas.redraw();
+                }
+            }
+        };
     private char fastas[][];
 
-    private IBiojavaManager biojava
-      = Activator.getDefault().getJavaBiojavaManager();
-
     public SequenceOutlinePage(IEditorInput input, SequenceEditor editor) {
         super();
 
-        setInput(input);
-    }
-    
-    public void setInput( IEditorInput input ) {
-        // Turn the editor input into an IFile.
-        IFile file = (IFile) input.getAdapter( IFile.class );
-        if (file == null)
-            return;
-
-        List<ISequence> sequences;
-        try {
-            sequences = biojava.sequencesFromFile(file);
-        } catch (FileNotFoundException e1) {
-            return; // No exception handling at all! We just give up! Gasp!
-        }
-        this.setSequences(sequences);
-    }
-
-    public void setSequences(List<ISequence> seqs) {
-        sequences = new LinkedHashMap<String, String>();
-
-        // Add the sequences one by one to the Map. Do minor cosmetics
-        // on the name by removing everything up to and including to
-        // the last '|', if any.
-        for (ISequence seq : seqs) {
-            String name = seq.getName().replaceFirst( ".*\\|", "" );
-            sequences.put( name, seq.getPlainSequence() );
-        }
-
-        // We only show a consensus sequence if there is more than one
-        // sequence already.
-        if (sequences.size() > 1) {
-            sequences.put("Consensus", consensusSequence(sequences.values()));
-        }
-
-        numberOfSequences = sequences.size();
-        canvasWidthInSquares = maxLength( sequences.values() );
-
-        fastas = new char[ sequences.size() ][];
-
-        {
-            int i = 0;
-            for ( String sequence : sequences.values() )
-                fastas[i++] = sequence.toCharArray();
-        }
+        model = editor.getAlignmentModel();
+        glyphs = editor.getGlyphAtlas();
+        updateFromModel();
+        model.addListener( modelListener );
     }
 
-    private static String consensusSequence( final Collection<String>
-                                             sequences ) {
-
-        final StringBuilder consensus = new StringBuilder();
-        for ( int i = 0, n = maxLength(sequences); i < n; ++i )
-            consensus.append( consensusChar(sequences, i) );
-
-        return consensus.toString();
-    }
-
-    private static int maxLength( final Collection<String> strings ) {
-
-        int maxLength = 0;
-        for ( String s : strings )
-            if ( maxLength < s.length() )
-                maxLength = s.length();
-
-        return maxLength;
-    }
-
-    private static char consensusChar( final Collection<String> sequences,
-                                       final int index ) {
-        
-        Map<Character, Boolean> columnChars
-            = new HashMap<Character, Boolean>();
-
-        for ( String seq : sequences )
-            columnChars.put( seq.length() > index
-                               ? seq.charAt(index)
-                               : '\0',
-                             true );
-
-        return columnChars.size() == 1
-               ? columnChars.keySet().iterator().next()
-               : Character.forDigit( Math.min(columnChars.size(), 9), 10 );
+    private void updateFromModel() {
+        numberOfSequences = model.getRowCount();
+        canvasWidthInSquares = model.getWidth();
+        fastas = model.getRows();
     }
 
     public void createControl(Composite parent) {
@@ -156,36 +84,24 @@ public class SequenceOutlinePage extends Page
                 sequenceCanvas.redraw();
             }
         });
-        
-
-        final char fasta[][] = new char[ sequences.size() ][];
 
-        {
-            int i = 0;
-            for ( String sequence : sequences.values() )
-                fasta[i++] = sequence.toCharArray();
-        }
 
         sequenceCanvas.addPaintListener( new PaintListener() {
             public void paintControl(PaintEvent e) {
                 GC gc = e.gc;
-                if ( squareSize >= MINIMUM_SQUARE_SIZE_FOR_TEXT_IN_PIXELS ) {
-                    gc.setTextAntialias( SWT.ON );
-                    gc.setFont( new Font(gc.getDevice(),
-                                         "Arial",
-                                         (int)(.7 * squareSize),
-                                         SWT.NONE) );
-                    gc.setForeground( Aligner.textColor );
-                }
 
                 int firstVisibleColumn
                         = sequenceCanvas.getHorizontalBar().getSelection(),
                     lastVisibleColumn
-                        = sequences.values().iterator().next().length();
+                        = Math.min( fastas[0].length,
+                                    firstVisibleColumn
+                                    + sequenceCanvas.getClientArea().width
+                                      / squareSize + 1 );
 
-                drawSequences(fasta, firstVisibleColumn, lastVisibleColumn, gc);
+                drawSequences(fastas, firstVisibleColumn, lastVisibleColumn,
+                              gc);
                 drawConsensusSequence(
-                    fasta[numberOfSequences-1],
+                    fastas[numberOfSequences-1],
                     firstVisibleColumn, lastVisibleColumn, gc);
             }
 
@@ -200,26 +116,9 @@ public class SequenceOutlinePage extends Page
                         
                         char c = fasta[row].length > column
                                  ? fasta[row][column] : ' ';
-                        String cc = c + "";
-
-                        gc.setBackground(
-                             "HKR".contains( cc ) ? Aligner.basicAAColor
-                          :   "DE".contains( cc ) ? Aligner.acidicAAColor
-                          : "TQSN".contains( cc ) ? Aligner.polarAAColor
-                          :  "FYW".contains( cc ) ? Aligner.nonpolarAAColor
-                          :   "GP".contains( cc ) ? Aligner.smallAAColor
-                          :    'C' == c           ? Aligner.cysteineColor
-                                                  : Aligner.normalAAColor );
-
-                        int yCoord = row * squareSize;
-
-                        gc.fillRectangle(xCoord, yCoord,
-                                         squareSize, squareSize);
-
-                        if ( Character.isUpperCase( c )
-                             && squareSize
-                                  >= MINIMUM_SQUARE_SIZE_FOR_TEXT_IN_PIXELS )
-                            gc.drawText( "" + c, xCoord + 4, yCoord + 2 );
+
+                        glyphs.drawResidue( gc, c, squareSize,
+                                            xCoord, row * squareSize );
                     }
                     xCoord += squareSize;
                 }
@@ -235,17 +134,8 @@ public class SequenceOutlinePage extends Page
                       column < lastVisibleColumn; ++column ) {
 
                     char c = sequence.length > column ? sequence[column] : ' ';
-                    int consensusDegree = Character.isDigit(c) ? c - '0' : 1;
-
-                    gc.setBackground(
-                        Aligner.consensusColors[ consensusDegree-1 ]);
-
-                    gc.fillRectangle(xCoord, yCoord, squareSize, squareSize);
 
-                    if ( Character.isUpperCase( c )
-                         && squareSize
-                              >= MINIMUM_SQUARE_SIZE_FOR_TEXT_IN_PIXELS )
-                        gc.drawText( "" + c, xCoord + 4, yCoord + 2 );
+                    glyphs.drawConsensus( gc, c, squareSize, xCoord, yCoord );
 
                     xCoord += squareSize;
                 }
@@ -270,6 +160,12 @@ public class SequenceOutlinePage extends Page
     public void setFocus() {
     }
 
+    @Override
+    public void dispose() {
+        model.removeListener( modelListener );
+        super.dispose();
+    }
+
     public void addSelectionChangedListener(
         ISelectionChangedListener listener) {
     }
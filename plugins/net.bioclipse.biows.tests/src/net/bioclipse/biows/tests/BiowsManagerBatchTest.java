@@ -0,0 +1,258 @@
+/* *****************************************************************************
+ * Copyright (c) 2009 The Bioclipse Project and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * <http://www.eclipse.org/legal/epl-v10.html>
+ *
+ * Contact: http://www.bioclipse.net/
+ ******************************************************************************/
+package net.bioclipse.biows.tests;
+
+import static org.junit.Assert.*;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.bioclipse.bioinformatics.util.OperationMetrics;
+import net.bioclipse.biows.business.BiowsManager;
+import net.bioclipse.biows.business.DbfetchBatch;
+import net.bioclipse.core.business.BioclipseException;
+import net.bioclipse.core.domain.IDNA;
+import net.bioclipse.core.domain.IProtein;
+import net.bioclipse.webservices.business.IWebservicesManager;
+
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.junit.Test;
+
+/**
+ * Runs the batch queries of the {@link BiowsManager} against a stub of the
+ * webservices manager, so no network is needed.
+ */
+public class BiowsManagerBatchTest {
+
+    private final StubWebservices stub = new StubWebservices();
+    private final BiowsManager biows = new BiowsManager( stub.proxy() );
+
+    @Test
+    public void testIdsArePacked() throws BioclipseException {
+        List<String> ids = ids("P", 450);
+        List<IProtein> proteins
+            = biows.queryUniProtKBBatch(ids).getSequences();
+
+        assertEquals( 3, stub.queries.size() );
+        assertEquals( 450, proteins.size() );
+        for ( int i = 0; i < ids.size(); ++i )
+            assertEquals( ids.get(i), proteins.get(i).getName() );
+        assertTrue( stub.maxRunning.get() <= BiowsManager.MAX_REQUESTS );
+    }
+
+    @Test
+    public void testSequencesArriveByRequest() throws BioclipseException {
+        DbfetchBatch<IDNA> batch = biows.queryEMBLBatch( ids("J", 401) );
+
+        assertEquals( 3, batch.size() );
+        int count = 0;
+        while ( batch.hasNext() )
+            count += batch.next().size();
+        assertEquals( 401, count );
+    }
+
+    @Test
+    public void testBlankIdsAreSkipped() throws BioclipseException {
+        List<String> ids = new ArrayList<String>();
+        ids.add("NM_1");
+        ids.add(" ");
+        ids.add(" NM_2 ");
+        List<IDNA> dna = biows.queryRefseqBatch(ids).getSequences();
+
+        assertEquals( "NM_1,NM_2", stub.queries.get(0) );
+        assertEquals( 2, dna.size() );
+    }
+
+    @Test(expected = BioclipseException.class)
+    public void testFailedRequest() throws BioclipseException {
+        List<String> ids = ids("P", 10);
+        ids.add("fail");
+        biows.queryUniProtKBBatch(ids).getSequences();
+    }
+
+    @Test
+    public void testCancelledBatchFailsWithBioclipseException() {
+        stub.delay = 500;
+        DbfetchBatch<IDNA> batch = biows.queryEMBLBatch( ids("J", 10) );
+        batch.cancel();
+        try {
+            batch.next();
+            fail("A cancelled request has no sequences");
+        } catch (BioclipseException e) {
+            // expected
+        }
+        try {
+            batch.getSequences();
+            fail("A cancelled request has no sequences");
+        } catch (BioclipseException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testRepeatedBatchIsCached() throws BioclipseException {
+        biows.queryUniProtKBBatch( ids("P", 250) ).getSequences();
+        List<IProtein> proteins
+            = biows.queryUniProtKBBatch( ids("P", 250) ).getSequences();
+
+        assertEquals( 2, stub.queries.size() );
+        assertEquals( 250, proteins.size() );
+    }
+
+    @Test
+    public void testDownloadsAreMeasured() throws BioclipseException {
+        String entry = biows.download("embl", "J00231");
+        biows.download("embl", "J00231");
+        try {
+            biows.download("embl", "fail");
+        } catch (BioclipseException e) {
+            // expected
+        }
+
+        OperationMetrics metrics = biows.getMetrics();
+        assertEquals( 2, metrics.get("download").getCount() );
+        assertEquals( 1, metrics.get("download").getFailures() );
+        assertEquals( entry.length(), metrics.get("download").getBytes() );
+        assertEquals( 1, metrics.get("cache-hit").getCount() );
+        assertEquals( 0, metrics.get("parse").getCount() );
+    }
+
+    @Test
+    public void testOfflineUsesOnlyCache() throws BioclipseException {
+        biows.download("embl", "J00231");
+        biows.setOffline(true);
+
+        assertNotNull( biows.download("embl", "J00231") );
+        try {
+            biows.download("embl", "HSFOS");
+            fail("An entry that is not cached cannot be used offline");
+        } catch (BioclipseException e) {
+            // expected
+        }
+        assertEquals( 1, stub.queries.size() );
+    }
+
+    @Test
+    public void testOnlyMissingIdsAreFetched() throws BioclipseException {
+        biows.queryEMBLBatch( ids("J", 3) ).getSequences();
+        List<String> ids = ids("J", 5);
+        ids.add( 0, "HSFOS" );
+        List<IDNA> dna = biows.queryEMBLBatch(ids).getSequences();
+
+        assertEquals( 2, stub.queries.size() );
+        assertEquals( "HSFOS,J3,J4", stub.queries.get(1) );
+        assertEquals( 6, dna.size() );
+        for ( int i = 0; i < ids.size(); ++i )
+            assertEquals( ids.get(i), dna.get(i).getName() );
+    }
+
+    @Test
+    public void testRecordsAreCachedById() throws BioclipseException {
+        stub.header = "sp|%s|PROT_HUMAN Protein";
+        biows.queryUniProtKBBatch( ids("P", 3) ).getSequences();
+        biows.queryUniProtKB("P1");
+
+        assertEquals( 1, stub.queries.size() );
+        assertEquals( 1, biows.getMetrics().get("cache-hit").getCount() );
+    }
+
+    @Test
+    public void testConcurrentQueriesShareOneDownload() throws Exception {
+        stub.delay = 200;
+        final List<List<IProtein>> results
+            = new CopyOnWriteArrayList<List<IProtein>>();
+        List<Thread> threads = new ArrayList<Thread>();
+        for ( int i = 0; i < 8; ++i ) {
+            Thread thread = new Thread() {
+                public void run() {
+                    try {
+                        results.add( biows.queryUniProtKB("P06213") );
+                    } catch (BioclipseException e) {
+                        fail( e.getMessage() );
+                    }
+                }
+            };
+            threads.add(thread);
+            thread.start();
+        }
+        for ( Thread thread : threads )
+            thread.join();
+
+        assertEquals( 1, stub.queries.size() );
+        assertEquals( 8, results.size() );
+        for ( List<IProtein> proteins : results )
+            assertEquals( "P06213", proteins.get(0).getName() );
+    }
+
+    private static List<String> ids(String prefix, int count) {
+        List<String> ids = new ArrayList<String>();
+        for ( int i = 0; i < count; ++i )
+            ids.add( prefix + i );
+        return ids;
+    }
+
+    /**
+     * Answers <code>downloadDbEntry</code> with one FASTA record per id,
+     * named by <code>header</code>, and fails for the id "fail".
+     */
+    private static class StubWebservices implements InvocationHandler {
+
+        final List<String> queries = new CopyOnWriteArrayList<String>();
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger maxRunning = new AtomicInteger();
+        volatile long delay = 20;
+        volatile String header = "%s";
+
+        IWebservicesManager proxy() {
+            return (IWebservicesManager) Proxy.newProxyInstance(
+                IWebservicesManager.class.getClassLoader(),
+                new Class<?>[] { IWebservicesManager.class },
+                this );
+        }
+
+        public Object invoke(Object proxy, Method method, Object[] args)
+            throws Throwable {
+
+            if ( !method.getName().equals("downloadDbEntry") )
+                throw new UnsupportedOperationException( method.getName() );
+            String query = (String) args[1];
+            queries.add(query);
+            int now = running.incrementAndGet();
+            for ( int max = maxRunning.get(); now > max;
+                  max = maxRunning.get() )
+                maxRunning.compareAndSet(max, now);
+            try {
+                Thread.sleep(delay);
+                StringBuilder fasta = new StringBuilder();
+                for ( String id : query.split(",") ) {
+                    if ( id.equals("fail") )
+                        throw new CoreException( new Status(
+                            IStatus.ERROR, "net.bioclipse.biows.tests",
+                            "No entry " + id ) );
+                    fasta.append('>')
+                         .append( String.format(header, id) ).append('\n')
+                         .append( args[0].equals("uniprotkb") ? "MKVLA"
+                                                              : "acgta" )
+                         .append('\n');
+                }
+                return fasta.toString();
+            } finally {
+                running.decrementAndGet();
+            }
+        }
+    }
+}
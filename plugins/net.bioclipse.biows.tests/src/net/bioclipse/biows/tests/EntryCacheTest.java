@@ -0,0 +1,126 @@
+/* *****************************************************************************
+ * Copyright (c) 2009 The Bioclipse Project and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * <http://www.eclipse.org/legal/epl-v10.html>
+ *
+ * Contact: http://www.bioclipse.net/
+ ******************************************************************************/
+package net.bioclipse.biows.tests;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+
+import net.bioclipse.biows.business.EntryCache;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class EntryCacheTest {
+
+    private static final long DAY = 24L * 60 * 60 * 1000;
+
+    private File directory;
+
+    @Before
+    public void createDirectory() throws IOException {
+        directory = File.createTempFile("biows", "cache");
+        assertTrue( directory.delete() );
+    }
+
+    @After
+    public void deleteDirectory() {
+        File[] files = directory.listFiles();
+        if (files != null)
+            for (File file : files)
+                file.delete();
+        directory.delete();
+    }
+
+    @Test
+    public void testKeyedByDatabaseIdAndFormat() {
+        EntryCache cache = new EntryCache(null, 4, 0, DAY);
+        cache.put( "uniprotkb", "P06213", "fasta", ">a\nMKV\n" );
+
+        assertEquals( ">a\nMKV\n",
+                      cache.get("UniProtKB", " P06213", "FASTA")
+                           .getContent() );
+        assertNull( cache.get("embl", "P06213", "fasta") );
+        assertNull( cache.get("uniprotkb", "P06213", "embl") );
+    }
+
+    @Test
+    public void testLeastRecentlyUsedIsEvictedFromMemory() {
+        EntryCache cache = new EntryCache(null, 2, 0, DAY);
+        cache.put( "embl", "a", "fasta", "1" );
+        cache.put( "embl", "b", "fasta", "2" );
+        cache.get( "embl", "a", "fasta" );
+        cache.put( "embl", "c", "fasta", "3" );
+
+        assertNotNull( cache.get("embl", "a", "fasta") );
+        assertNull( cache.get("embl", "b", "fasta") );
+    }
+
+    @Test
+    public void testMemorySizeIsBounded() {
+        EntryCache cache = new EntryCache(null, 4, 10, 0, DAY);
+        cache.put( "embl", "a", "fasta", "1234" );
+        cache.put( "embl", "b", "fasta", "1234" );
+        cache.put( "embl", "c", "fasta", "1234" );
+
+        assertNull( cache.get("embl", "a", "fasta") );
+        assertNotNull( cache.get("embl", "b", "fasta") );
+        assertEquals( 8, cache.getMemorySize() );
+
+        cache.put( "embl", "d", "fasta", "12345678901" );
+        assertNotNull( cache.get("embl", "d", "fasta") );
+        assertEquals( 11, cache.getMemorySize() );
+    }
+
+    @Test
+    public void testEntriesSurviveOnDisk() {
+        new EntryCache(directory, 2, 1024, DAY)
+            .put( "embl", "a", "fasta", ">a\nacgt\n" );
+
+        EntryCache cache = new EntryCache(directory, 2, 1024, DAY);
+        EntryCache.Entry entry = cache.get("embl", "a", "fasta");
+        assertEquals( ">a\nacgt\n", entry.getContent() );
+        assertFalse( entry.isStale() );
+        assertEquals( 8, cache.getDiskSize() );
+
+        cache.clear();
+        assertNull( new EntryCache(directory, 2, 1024, DAY)
+                        .get("embl", "a", "fasta") );
+    }
+
+    @Test
+    public void testDiskSizeIsBounded() {
+        EntryCache cache = new EntryCache(directory, 1, 25, DAY);
+        cache.put( "embl", "a", "fasta", "0123456789" );
+        cache.put( "embl", "b", "fasta", "0123456789" );
+        cache.put( "embl", "c", "fasta", "0123456789" );
+
+        assertEquals( 20, cache.getDiskSize() );
+        assertNull( cache.get("embl", "a", "fasta") );
+        assertNotNull( cache.get("embl", "b", "fasta") );
+        assertNotNull( cache.get("embl", "c", "fasta") );
+    }
+
+    @Test
+    public void testOldEntriesAreStale() {
+        new EntryCache(directory, 2, 1024, DAY)
+            .put( "embl", "a", "fasta", ">a\nacgt\n" );
+        File[] files = directory.listFiles();
+        assertEquals( 1, files.length );
+        assertTrue( files[0].setLastModified(
+                        System.currentTimeMillis() - 2 * DAY ) );
+
+        EntryCache.Entry entry = new EntryCache(directory, 2, 1024, DAY)
+                                     .get("embl", "a", "fasta");
+        assertTrue( entry.isStale() );
+    }
+}
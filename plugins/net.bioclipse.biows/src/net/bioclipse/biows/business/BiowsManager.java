@@ -10,15 +10,34 @@
  ******************************************************************************/
 package net.bioclipse.biows.business;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import org.apache.log4j.Logger;
+import org.biojava.bio.seq.DNATools;
+import org.biojava.bio.seq.ProteinTools;
+import org.biojava.bio.symbol.Alphabet;
 import org.eclipse.core.runtime.CoreException;
 
+import net.bioclipse.bioinformatics.util.OperationMetrics;
+import net.bioclipse.biojava.business.DaemonThreadFactory;
+import net.bioclipse.biojava.business.FastaParser;
 import net.bioclipse.biojava.business.IBiojavaManager;
 import net.bioclipse.core.business.BioclipseException;
 import net.bioclipse.core.domain.IDNA;
 import net.bioclipse.core.domain.IProtein;
+import net.bioclipse.core.domain.ISequence;
+import net.bioclipse.core.domain.RecordableList;
 import net.bioclipse.managers.business.IBioclipseManager;
 import net.bioclipse.webservices.Activator;
 import net.bioclipse.webservices.business.IWebservicesManager;
@@ -31,6 +50,20 @@ import net.bioclipse.webservices.business.IWebservicesManager;
  * Website: http://www.ebi.ac.uk/Tools/webservices/services/dbfetch
  * WSDL: http://www.ebi.ac.uk/Tools/webservices/wsdl/WSDbfetch.wsdl
  * 
+ * Many ids can be fetched as a {@link DbfetchBatch}: the ids are packed
+ * into requests of up to {@link #IDS_PER_REQUEST} ids each, of which at
+ * most {@link #MAX_REQUESTS} run at a time. Ids already cached are not
+ * downloaded again, and each record of a request is cached under its own
+ * id.
+ * 
+ * Downloads are kept in an {@link EntryCache} in the state location of the
+ * plug-in. A cached entry is used until it is stale, and a stale entry is
+ * used if downloading it again fails. When offline, only cached entries
+ * are used. Concurrent downloads and queries of the same entry share one
+ * call to EBI.
+ * 
+ * Downloads, parses and cache hits are counted in {@link OperationMetrics}.
+ * 
  * @author ola
  *
  */
@@ -38,60 +71,464 @@ public class BiowsManager implements IBioclipseManager {
 
     private static final Logger logger = Logger.getLogger(BiowsManager.class);
 
+    /** The largest number of ids dbfetch takes in one request. */
+    public static final int IDS_PER_REQUEST = 200;
+
+    /** The number of requests of a batch that run at a time. */
+    public static final int MAX_REQUESTS = 4;
+
+    private static final String FORMAT = "fasta";
+
+    private final IWebservicesManager webservices;
+    private ExecutorService executor;
+    private EntryCache cache;
+    private volatile boolean offline;
+    private final OperationMetrics metrics = new OperationMetrics();
+    private final SingleFlight<String> downloads = new SingleFlight<String>();
+    private final SingleFlight<List<? extends ISequence>> queries
+        = new SingleFlight<List<? extends ISequence>>();
+
+    /**
+     * Creates a manager downloading through the webservices manager.
+     */
+    public BiowsManager() {
+        this(null);
+    }
+
+    /**
+     * Creates a manager downloading through the given webservices manager,
+     * such as a local stub, and caching entries in memory only.
+     */
+    public BiowsManager(IWebservicesManager webservices) {
+        this.webservices = webservices;
+        if (webservices != null)
+            cache = new EntryCache( null, EntryCache.DEFAULT_CAPACITY, 0,
+                                    EntryCache.DEFAULT_TIME_TO_LIVE );
+    }
+
     public String getManagerName() {
         return "biows";
     }
     
     public List<IDNA> queryEMBL(String seqid) throws BioclipseException{
 
-        IBiojavaManager biojava = net.bioclipse.biojava.business.Activator
-                                     .getDefault().getJavaBiojavaManager();
+        return query( "embl", seqid, IDNA.class );
 
-        String fasta=download( "embl", seqid );
+    }
 
-        return biojava.DNAsFromString( fasta );
+    public List<IProtein> queryUniProtKB(String seqid) throws BioclipseException{
+
+        return query( "uniprotkb", seqid, IProtein.class );
 
     }
 
-    public List<IProtein> queryUniProtKB(String seqid) throws BioclipseException{
+    public List<IDNA> queryRefseq(String seqid) throws BioclipseException{
+
+        return query( "refseq", seqid, IDNA.class );
+
+    }
+
+    /**
+     * Downloads and parses the sequences of an id. Concurrent queries for
+     * the same id share one download and one parse, and each gets its own
+     * list of the sequences.
+     */
+    private <T extends ISequence> List<T> query( final String database,
+                                                 final String seqid,
+                                                 Class<T> type )
+                                                 throws BioclipseException {
 
-        IBiojavaManager biojava = net.bioclipse.biojava.business.Activator
-                                     .getDefault().getJavaBiojavaManager();
+        List<? extends ISequence> sequences = share( queries,
+            flightKey(database, seqid),
+            new Callable<List<? extends ISequence>>() {
+                public List<? extends ISequence> call()
+                    throws BioclipseException {
 
-        String fasta=download( "uniprotkb", seqid );
+                    IBiojavaManager biojava
+                        = net.bioclipse.biojava.business.Activator
+                              .getDefault().getJavaBiojavaManager();
 
-        return biojava.proteinsFromString( fasta );
+                    String fasta=download( database, seqid );
 
+                    long start = metrics.start();
+                    List<? extends ISequence> parsed
+                        = "uniprotkb".equals(database)
+                          ? biojava.proteinsFromString( fasta )
+                          : biojava.DNAsFromString( fasta );
+                    metrics.record( "parse", start,
+                                    fasta == null ? 0 : fasta.length() );
+                    return parsed;
+                }
+            } );
+
+        List<T> result = new RecordableList<T>();
+        for ( ISequence sequence : sequences )
+            result.add( type.cast(sequence) );
+        return result;
     }
 
-    public List<IDNA> queryRefseq(String seqid) throws BioclipseException{
+    public DbfetchBatch<IDNA> queryEMBLBatch(List<String> seqids) {
+        return fetch( "embl", seqids, DNATools.getDNA(), IDNA.class );
+    }
+
+    public DbfetchBatch<IProtein> queryUniProtKBBatch(List<String> seqids) {
+        return fetch( "uniprotkb", seqids, ProteinTools.getTAlphabet(),
+                      IProtein.class );
+    }
 
-        IBiojavaManager biojava = net.bioclipse.biojava.business.Activator
-                                     .getDefault().getJavaBiojavaManager();
+    public DbfetchBatch<IDNA> queryRefseqBatch(List<String> seqids) {
+        return fetch( "refseq", seqids, DNATools.getDNA(), IDNA.class );
+    }
 
-        String fasta=download( "refseq", seqid );
+    /**
+     * Packs the ids into requests and starts them. Only the ids that are
+     * not cached count towards the {@link #IDS_PER_REQUEST} ids of a
+     * request; the cached ids between them go with the same request, so
+     * that the sequences come out in the order of the ids.
+     */
+    private <T extends ISequence> DbfetchBatch<T> fetch(
+                                            final String database,
+                                            List<String> seqids,
+                                            final Alphabet alphabet,
+                                            final Class<T> type ) {
 
-        return biojava.DNAsFromString( fasta );
+        List<Callable<List<T>>> requests = new ArrayList<Callable<List<T>>>();
+        List<String> ids = new ArrayList<String>();
+        Set<String> missing = new LinkedHashSet<String>();
+        Map<String, EntryCache.Entry> cached
+            = new HashMap<String, EntryCache.Entry>();
+        for ( String seqid : seqids ) {
+            if ( seqid == null || seqid.trim().length() == 0 )
+                continue;
+            String id = seqid.trim();
+            ids.add(id);
+            long start = metrics.start();
+            EntryCache.Entry entry = cache().get( database, id, FORMAT );
+            if (entry != null)
+                cached.put( id, entry );
+            if ( entry != null && (offline || !entry.isStale()) ) {
+                metrics.record( "cache-hit", start,
+                                entry.getContent().length() );
+                continue;
+            }
+            if ( missing.add(id) && missing.size() == IDS_PER_REQUEST ) {
+                requests.add( request( database, ids, missing, cached,
+                                       alphabet, type ) );
+                ids = new ArrayList<String>();
+                missing = new LinkedHashSet<String>();
+                cached = new HashMap<String, EntryCache.Entry>();
+            }
+        }
+        if ( !ids.isEmpty() )
+            requests.add( request( database, ids, missing, cached,
+                                   alphabet, type ) );
 
+        return new DbfetchBatch<T>( executor(), requests );
     }
 
+    /**
+     * Returns a request downloading the missing ids, and parsing the FASTA
+     * of all its ids, downloaded or cached, straight into sequences.
+     */
+    private <T extends ISequence> Callable<List<T>> request(
+                                final String database,
+                                final List<String> ids,
+                                final Set<String> missing,
+                                final Map<String, EntryCache.Entry> cached,
+                                final Alphabet alphabet,
+                                final Class<T> type ) {
+        return new Callable<List<T>>() {
+            public List<T> call() throws BioclipseException {
+                List<String> unmatched = new ArrayList<String>();
+                Map<String, String> records
+                    = downloadRecords( database, missing, cached, unmatched );
+
+                StringBuilder fasta = new StringBuilder();
+                for ( String id : ids ) {
+                    String record = missing.contains(id)
+                                    ? records.get(id)
+                                    : cached.get(id).getContent();
+                    if (record != null)
+                        fasta.append(record);
+                }
+                for ( String record : unmatched )
+                    fasta.append(record);
+
+                List<T> sequences = new ArrayList<T>();
+                if ( fasta.length() == 0 )
+                    return sequences;
+                long start = metrics.start();
+                try {
+                    for ( ISequence sequence : FastaParser.parse(
+                              ByteBuffer.wrap(
+                                  fasta.toString().getBytes("UTF-8") ),
+                              alphabet ) ) {
+                        if ( !type.isInstance(sequence) )
+                            throw new BioclipseException(
+                                "Unexpected sequence type from " + database
+                                + ": " + sequence.getName() );
+                        sequences.add( type.cast(sequence) );
+                    }
+                } catch (IOException e) {
+                    metrics.failed( "parse", start );
+                    throw new BioclipseException( "Could not parse FASTA "
+                        + "from EBI WS: " + e.getMessage() );
+                }
+                metrics.record( "parse", start, fasta.length() );
+                return sequences;
+            }
+        };
+    }
 
+    /**
+     * Downloads some entries in one call and caches each record of the
+     * FASTA under the id it was asked for. Records whose header does not
+     * name one of the ids are not cached, and are added to
+     * <code>unmatched</code>. When the download fails, the stale entries
+     * are used if there is one for every id.
+     *
+     * @return the records of the ids, by id
+     */
+    private Map<String, String> downloadRecords(
+                                     final String database,
+                                     Set<String> ids,
+                                     Map<String, EntryCache.Entry> stale,
+                                     List<String> unmatched )
+                                     throws BioclipseException {
+
+        Map<String, String> records = new HashMap<String, String>();
+        if ( ids.isEmpty() )
+            return records;
+        if (offline)
+            throw new BioclipseException("Working offline and "
+                                         + ids.size() + " " + database
+                                         + " entries are not cached");
+
+        StringBuilder joined = new StringBuilder();
+        for ( String id : ids ) {
+            if ( joined.length() > 0 )
+                joined.append(',');
+            joined.append(id);
+        }
+        final String query = joined.toString();
+
+        String fasta;
+        try {
+            fasta = share( downloads, flightKey(database, query),
+                           new Callable<String>() {
+                public String call() throws CoreException {
+                    return downloadDbEntry( database, query );
+                }
+            } );
+        } catch (BioclipseException e) {
+            for ( String id : ids )
+                if ( stale.get(id) == null )
+                    throw e;
+            logger.warn("Using stale " + database + " entries " + query
+                        + ": " + e.getMessage());
+            for ( String id : ids )
+                records.put( id, stale.get(id).getContent() );
+            return records;
+        }
+        if (fasta == null)
+            return records;
+
+        Map<String, String> byName = new HashMap<String, String>();
+        for ( String id : ids )
+            byName.put( id.toLowerCase(), id );
+        for ( String record : records(fasta) ) {
+            String id = idOf( record, byName );
+            if ( id == null || records.containsKey(id) ) {
+                unmatched.add(record);
+                continue;
+            }
+            records.put( id, record );
+            cache().put( database, id, FORMAT, record );
+        }
+        return records;
+    }
 
-    public String download(String database, String seqid) 
+    /**
+     * Splits FASTA into its records, each ending with a line break.
+     */
+    private static List<String> records(String fasta) {
+        List<String> records = new ArrayList<String>();
+        int start = fasta.indexOf('>');
+        while (start >= 0) {
+            int next = fasta.indexOf( "\n>", start );
+            String record = fasta.substring( start, next < 0 ? fasta.length()
+                                                             : next + 1 );
+            records.add( record.endsWith("\n") ? record : record + '\n' );
+            start = next < 0 ? -1 : next + 1;
+        }
+        return records;
+    }
+
+    /**
+     * Returns the id a FASTA record is for: the first word of its header,
+     * or a part of it between '|' or ':', compared without case and
+     * version, such as "sp|P06213|INSR_HUMAN" or "EM_STD:J00231.1".
+     *
+     * @param ids the ids asked for, by their lower case
+     * @return the id, or <code>null</code> if the header names none of them
+     */
+    private static String idOf(String record, Map<String, String> ids) {
+        int end = 1;
+        while ( end < record.length()
+                && !Character.isWhitespace( record.charAt(end) ) )
+            ++end;
+        String name = record.substring(1, end).toLowerCase();
+        if ( ids.containsKey(name) )
+            return ids.get(name);
+        for ( String part : name.split("[|:]") ) {
+            if ( ids.containsKey(part) )
+                return ids.get(part);
+            String unversioned = part.replaceFirst("\\.\\d+$", "");
+            if ( ids.containsKey(unversioned) )
+                return ids.get(unversioned);
+        }
+        return null;
+    }
+
+    /**
+     * Returns the pool the requests of batches run on. Its threads are
+     * daemons so that an idle pool never keeps the application alive.
+     */
+    private synchronized ExecutorService executor() {
+        if (executor == null)
+            executor = Executors.newFixedThreadPool(
+                MAX_REQUESTS, new DaemonThreadFactory("BiowsManager") );
+        return executor;
+    }
+
+    private IWebservicesManager webservices() {
+        return webservices != null ? webservices
+                                   : Activator.getDefault()
+                                              .getJavaWebservicesManager();
+    }
+
+    public String download(final String database, final String seqid) 
                                                       throws BioclipseException{
 
-        IWebservicesManager ws = Activator.getDefault()
-                                .getJavaWebservicesManager();
+        long start = metrics.start();
+        final EntryCache.Entry cached = cache().get( database, seqid, FORMAT );
+        if ( cached != null && (offline || !cached.isStale()) ) {
+            metrics.record( "cache-hit", start, cached.getContent().length() );
+            return cached.getContent();
+        }
+        if (offline)
+            throw new BioclipseException("Working offline and " + database
+                                         + " entry " + seqid
+                                         + " is not cached");
+
+        return share( downloads, flightKey(database, seqid),
+                      new Callable<String>() {
+            public String call() throws BioclipseException {
+                return fetchEntry( database, seqid, cached );
+            }
+        } );
+    }
+
+    /**
+     * Downloads an entry and caches it, falling back on the stale entry,
+     * if any, when the download fails.
+     */
+    private String fetchEntry( String database,
+                               String seqid,
+                               EntryCache.Entry stale )
+                               throws BioclipseException {
+
         try {
-            String dl=ws.downloadDbEntry( database, seqid, "fasta" );
-            logger.debug("Biows (" + database+"," + seqid 
-                         + ",fasta) returned:\n"+dl);
+            String dl=downloadDbEntry( database, seqid );
+            if (dl != null)
+                cache().put( database, seqid, FORMAT, dl );
             return dl;
         } catch ( CoreException e ) {
+            if (stale != null) {
+                logger.warn("Using stale " + database + " entry " + seqid
+                            + ": " + e.getMessage());
+                return stale.getContent();
+            }
             throw new BioclipseException("Error downloading from EBI WS: " 
                                          + e.getMessage());
         }
     }
 
+    /**
+     * Downloads the FASTA of some comma separated ids from EBI.
+     */
+    private String downloadDbEntry( String database, String ids )
+                                    throws CoreException {
+
+        IWebservicesManager ws = webservices();
+        long start = metrics.start();
+        try {
+            String dl=ws.downloadDbEntry( database, ids, FORMAT );
+            metrics.record( "download", start, dl == null ? 0 : dl.length() );
+            if (logger.isDebugEnabled())
+                logger.debug("Biows (" + database+"," + ids 
+                             + ",fasta) returned "
+                             + (dl == null ? 0 : dl.length()) + " chars");
+            return dl;
+        } catch ( CoreException e ) {
+            metrics.failed( "download", start );
+            throw e;
+        }
+    }
+
+    /**
+     * Runs a call, or shares the result of the same call already running.
+     */
+    private static <V> V share( SingleFlight<V> flights,
+                                String key,
+                                Callable<V> call )
+                                throws BioclipseException {
+        try {
+            return flights.run(key, call);
+        } catch (BioclipseException e) {
+            throw e;
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (InterruptedException e) {
+            throw new BioclipseException("Interrupted while waiting for "
+                                         + key);
+        } catch (Exception e) {
+            throw new BioclipseException("Error downloading from EBI WS: "
+                                         + e.getMessage());
+        }
+    }
+
+    private static String flightKey(String database, String seqid) {
+        return database.toLowerCase() + ':' + seqid.trim();
+    }
 
+    public void setOffline(boolean offline) {
+        this.offline = offline;
+    }
+
+    public boolean isOffline() {
+        return offline;
+    }
+
+    public void clearCache() {
+        cache().clear();
+    }
+
+    public OperationMetrics getMetrics() {
+        return metrics;
+    }
+
+    private synchronized EntryCache cache() {
+        if (cache == null) {
+            net.bioclipse.biows.Activator plugin
+                = net.bioclipse.biows.Activator.getDefault();
+            File directory = plugin == null ? null
+                : new File( plugin.getStateLocation().toFile(), "entries" );
+            cache = new EntryCache( directory,
+                                    EntryCache.DEFAULT_CAPACITY,
+                                    EntryCache.DEFAULT_MAX_DISK_SIZE,
+                                    EntryCache.DEFAULT_TIME_TO_LIVE );
+        }
+        return cache;
+    }
 }
@@ -0,0 +1,122 @@
+/* *****************************************************************************
+ * Copyright (c) 2009 The Bioclipse Project and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * <http://www.eclipse.org/legal/epl-v10.html>
+ *
+ * Contact: http://www.bioclipse.net/
+ ******************************************************************************/
+package net.bioclipse.biows.business;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+
+import net.bioclipse.core.business.BioclipseException;
+import net.bioclipse.core.domain.ISequence;
+
+/**
+ * The sequences of a number of ids, fetched from dbfetch with several ids
+ * per request and several requests at a time. The sequences can be taken
+ * request by request as they arrive, with {@link #hasNext()} and
+ * {@link #next()}, or all at once in the order of their ids, with
+ * {@link #getSequences()}.
+ */
+public class DbfetchBatch<T extends ISequence> {
+
+    private final List<Future<List<T>>> requests;
+    private final CompletionService<List<T>> completed;
+    private int taken;
+
+    /**
+     * Starts the requests on <code>executor</code>.
+     */
+    DbfetchBatch(Executor executor, List<Callable<List<T>>> requests) {
+        this.completed = new ExecutorCompletionService<List<T>>(executor);
+        this.requests = new ArrayList<Future<List<T>>>( requests.size() );
+        for ( Callable<List<T>> request : requests )
+            this.requests.add( completed.submit(request) );
+    }
+
+    /**
+     * Returns the number of requests of the batch.
+     */
+    public int size() {
+        return requests.size();
+    }
+
+    /**
+     * Returns whether there are requests whose sequences have not been
+     * taken with {@link #next()}.
+     */
+    public synchronized boolean hasNext() {
+        return taken < requests.size();
+    }
+
+    /**
+     * Waits for the next request to complete and returns its sequences.
+     *
+     * @throws NoSuchElementException if all requests have been taken
+     * @throws BioclipseException if the request failed
+     */
+    public synchronized List<T> next() throws BioclipseException {
+        if ( !hasNext() )
+            throw new NoSuchElementException();
+        Future<List<T>> request;
+        try {
+            request = completed.take();
+        } catch (InterruptedException e) {
+            throw new BioclipseException("Interrupted while fetching "
+                                         + "sequences");
+        }
+        ++taken;
+        return sequencesOf(request);
+    }
+
+    /**
+     * Waits for all requests to complete and returns their sequences, in
+     * the order of their ids.
+     *
+     * @throws BioclipseException if a request failed
+     */
+    public List<T> getSequences() throws BioclipseException {
+        List<T> sequences = new ArrayList<T>();
+        for ( Future<List<T>> request : requests )
+            sequences.addAll( sequencesOf(request) );
+        return sequences;
+    }
+
+    /**
+     * Cancels the requests that have not completed.
+     */
+    public void cancel() {
+        for ( Future<List<T>> request : requests )
+            request.cancel(true);
+    }
+
+    private List<T> sequencesOf(Future<List<T>> request)
+        throws BioclipseException {
+
+        try {
+            return request.get();
+        } catch (InterruptedException e) {
+            throw new BioclipseException("Interrupted while fetching "
+                                         + "sequences");
+        } catch (CancellationException e) {
+            throw new BioclipseException("Fetching sequences was cancelled");
+        } catch (ExecutionException e) {
+            if ( e.getCause() instanceof BioclipseException )
+                throw (BioclipseException) e.getCause();
+            throw new BioclipseException( "Error downloading from EBI WS: "
+                                          + e.getCause().getMessage() );
+        }
+    }
+}
@@ -0,0 +1,382 @@
+/* *****************************************************************************
+ * Copyright (c) 2009 The Bioclipse Project and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * <http://www.eclipse.org/legal/epl-v10.html>
+ *
+ * Contact: http://www.bioclipse.net/
+ ******************************************************************************/
+package net.bioclipse.biows.business;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Keeps downloaded database entries by database, id and format. The most
+ * recently used entries are kept in memory, up to a number of entries and
+ * a total length, and all entries are kept on
+ * disk if a directory is given, one file per entry, up to a total size
+ * beyond which the entries downloaded first are removed. An entry older
+ * than the time to live is still returned, but is stale: it should be
+ * downloaded again when possible. No lock is held while files are read
+ * or written. The cache is best effort: an entry that cannot be read from
+ * or written to disk is only logged.
+ */
+public class EntryCache {
+
+    /** The default number of entries kept in memory. */
+    public static final int DEFAULT_CAPACITY = 256;
+
+    /** The default largest total length of the entries kept in memory. */
+    public static final long DEFAULT_MAX_MEMORY_SIZE = 4L * 1024 * 1024;
+
+    /** The default largest total size in bytes of the entries on disk. */
+    public static final long DEFAULT_MAX_DISK_SIZE = 64L * 1024 * 1024;
+
+    /** The default time in milliseconds an entry is fresh: a week. */
+    public static final long DEFAULT_TIME_TO_LIVE = 7L * 24 * 60 * 60 * 1000;
+
+    private static final String SUFFIX = ".entry";
+
+    private static final String ENCODING = "UTF-8";
+
+    private static final Logger logger = Logger.getLogger(EntryCache.class);
+
+    /**
+     * An entry and the time it was downloaded.
+     */
+    public class Entry {
+
+        private final String content;
+        private final long downloaded;
+
+        Entry(String content, long downloaded) {
+            this.content = content;
+            this.downloaded = downloaded;
+        }
+
+        public String getContent() {
+            return content;
+        }
+
+        /**
+         * Returns whether the entry is older than the time to live.
+         */
+        public boolean isStale() {
+            return System.currentTimeMillis() - downloaded > timeToLive;
+        }
+    }
+
+    private final File directory;
+    private final int capacity;
+    private final long maxMemorySize;
+    private final long maxDiskSize;
+    private final long timeToLive;
+    /** The entries in memory, least recently used first. */
+    private final Map<String, Entry> memory
+        = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+    private long memorySize;
+    /** The sizes of the files on disk, those downloaded first first. */
+    private final Map<String, Long> disk = new LinkedHashMap<String, Long>();
+    private long diskSize;
+
+    /**
+     * Creates a cache keeping up to {@link #DEFAULT_MAX_MEMORY_SIZE}
+     * characters of entries in memory.
+     *
+     * @param directory   the directory to keep entries in, or
+     *                    <code>null</code> to keep them in memory only
+     * @param capacity    the number of entries kept in memory
+     * @param maxDiskSize the largest total size in bytes of the entries on
+     *                    disk
+     * @param timeToLive  the time in milliseconds an entry is fresh
+     */
+    public EntryCache( File directory,
+                       int capacity,
+                       long maxDiskSize,
+                       long timeToLive ) {
+        this( directory, capacity, DEFAULT_MAX_MEMORY_SIZE, maxDiskSize,
+              timeToLive );
+    }
+
+    /**
+     * @param directory     the directory to keep entries in, or
+     *                      <code>null</code> to keep them in memory only
+     * @param capacity      the number of entries kept in memory
+     * @param maxMemorySize the largest total length in characters of the
+     *                      entries kept in memory, though the most recently
+     *                      used entry is always kept
+     * @param maxDiskSize   the largest total size in bytes of the entries on
+     *                      disk
+     * @param timeToLive    the time in milliseconds an entry is fresh
+     */
+    public EntryCache( File directory,
+                       int capacity,
+                       long maxMemorySize,
+                       long maxDiskSize,
+                       long timeToLive ) {
+        this.directory = directory;
+        this.capacity = capacity;
+        this.maxMemorySize = maxMemorySize;
+        this.maxDiskSize = maxDiskSize;
+        this.timeToLive = timeToLive;
+        if (directory != null) {
+            if ( !directory.isDirectory() && !directory.mkdirs() )
+                logger.warn( "Could not create entry cache directory "
+                             + directory );
+            index();
+        }
+    }
+
+    /**
+     * Returns the entry kept for an id, fresh or stale, or
+     * <code>null</code> if there is none.
+     */
+    public Entry get(String database, String id, String format) {
+        String key = key(database, id, format);
+        synchronized (memory) {
+            Entry entry = memory.get(key);
+            if (entry != null)
+                return entry;
+        }
+        if (directory == null)
+            return null;
+        synchronized (disk) {
+            if ( !disk.containsKey(key) )
+                return null;
+        }
+        // Read without holding a lock, so that other lookups can go on
+        File file = file(key);
+        String content = read(file);
+        if (content == null)
+            return null;
+        Entry entry = new Entry( content, file.lastModified() );
+        synchronized (memory) {
+            remember(key, entry);
+        }
+        return entry;
+    }
+
+    /**
+     * Keeps an entry, downloaded now.
+     */
+    public void put( String database,
+                     String id,
+                     String format,
+                     String content ) {
+        String key = key(database, id, format);
+        synchronized (memory) {
+            remember( key, new Entry( content, System.currentTimeMillis() ) );
+        }
+        if ( directory == null || !write( file(key), content ) )
+            return;
+        long size = file(key).length();
+        List<String> evicted = new ArrayList<String>();
+        synchronized (disk) {
+            remove(key);
+            disk.put(key, size);
+            diskSize += size;
+            for ( Iterator<Map.Entry<String, Long>> oldest
+                      = disk.entrySet().iterator();
+                  diskSize > maxDiskSize && oldest.hasNext(); ) {
+                Map.Entry<String, Long> eldest = oldest.next();
+                oldest.remove();
+                diskSize -= eldest.getValue();
+                evicted.add( eldest.getKey() );
+            }
+        }
+        for (String old : evicted) {
+            synchronized (memory) {
+                forget(old);
+            }
+            delete( file(old) );
+        }
+    }
+
+    /**
+     * Removes all entries, from memory and from disk.
+     */
+    public void clear() {
+        synchronized (memory) {
+            memory.clear();
+            memorySize = 0;
+        }
+        List<String> removed;
+        synchronized (disk) {
+            removed = new ArrayList<String>( disk.keySet() );
+            disk.clear();
+            diskSize = 0;
+        }
+        for (String key : removed)
+            delete( file(key) );
+    }
+
+    /**
+     * Returns the total length in characters of the entries in memory.
+     */
+    public long getMemorySize() {
+        synchronized (memory) {
+            return memorySize;
+        }
+    }
+
+    /**
+     * Returns the total size in bytes of the entries on disk.
+     */
+    public long getDiskSize() {
+        synchronized (disk) {
+            return diskSize;
+        }
+    }
+
+    /**
+     * Returns the key of an entry: the SHA-1 of its database, id and format
+     * as a hex string, so that it can be used as a file name.
+     */
+    static String key(String database, String id, String format) {
+        String input = database.toLowerCase() + '\n' + id.trim() + '\n'
+                       + format.toLowerCase();
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1")
+                                .digest( input.getBytes(ENCODING) );
+            StringBuilder hex = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                hex.append( Character.forDigit(b >> 4 & 0xf, 16) )
+                   .append( Character.forDigit(b & 0xf, 16) );
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Reads the sizes of the entries already on disk, oldest first.
+     */
+    private void index() {
+        File[] files = directory.listFiles();
+        if (files == null)
+            return;
+        Arrays.sort( files, new Comparator<File>() {
+            public int compare(File a, File b) {
+                long x = a.lastModified(), y = b.lastModified();
+                return x < y ? -1 : x > y ? 1 : 0;
+            }
+        });
+        for (File file : files) {
+            String name = file.getName();
+            if ( name.endsWith(SUFFIX) ) {
+                disk.put( name.substring( 0, name.length() - SUFFIX.length() ),
+                          file.length() );
+                diskSize += file.length();
+            }
+        }
+    }
+
+    /**
+     * Keeps an entry in memory, and drops the least recently used entries
+     * while there are too many or they are too long. Called holding the
+     * memory lock.
+     */
+    private void remember(String key, Entry entry) {
+        forget(key);
+        memory.put(key, entry);
+        memorySize += entry.getContent().length();
+        for ( Iterator<Entry> eldest = memory.values().iterator();
+              memory.size() > capacity
+              || memorySize > maxMemorySize && memory.size() > 1; ) {
+            memorySize -= eldest.next().getContent().length();
+            eldest.remove();
+        }
+    }
+
+    private void forget(String key) {
+        Entry entry = memory.remove(key);
+        if (entry != null)
+            memorySize -= entry.getContent().length();
+    }
+
+    private void remove(String key) {
+        Long size = disk.remove(key);
+        if (size != null)
+            diskSize -= size;
+    }
+
+    private File file(String key) {
+        return new File(directory, key + SUFFIX);
+    }
+
+    private static void delete(File file) {
+        if ( file.exists() && !file.delete() )
+            logger.warn( "Could not delete " + file );
+    }
+
+    private static String read(File file) {
+        try {
+            InputStream in = new FileInputStream(file);
+            try {
+                byte[] content = new byte[(int) file.length()];
+                int read = 0;
+                while (read < content.length) {
+                    int n = in.read(content, read, content.length - read);
+                    if (n < 0)
+                        return null;
+                    read += n;
+                }
+                return new String(content, ENCODING);
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            logger.warn( "Could not read cached entry " + file, e );
+            return null;
+        }
+    }
+
+    /**
+     * Writes to a temporary file first, so that an entry that is only
+     * partly written is never read.
+     */
+    private static boolean write(File file, String content) {
+        File temp = new File( file.getParentFile(),
+                              file.getName() + ".tmp"
+                              + Thread.currentThread().getId() );
+        try {
+            OutputStream out = new FileOutputStream(temp);
+            try {
+                out.write( content.getBytes(ENCODING) );
+            } finally {
+                out.close();
+            }
+            if ( !temp.renameTo(file) ) {
+                file.delete();
+                if ( !temp.renameTo(file) )
+                    throw new IOException( "Could not rename " + temp );
+            }
+            return true;
+        } catch (IOException e) {
+            logger.warn( "Could not cache entry in " + file, e );
+            temp.delete();
+            return false;
+        }
+    }
+}
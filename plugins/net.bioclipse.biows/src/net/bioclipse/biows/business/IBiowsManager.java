@@ -12,6 +12,7 @@ package net.bioclipse.biows.business;
 
 import java.util.List;
 
+import net.bioclipse.bioinformatics.util.OperationMetrics;
 import net.bioclipse.core.PublishedClass;
 import net.bioclipse.core.PublishedMethod;
 import net.bioclipse.core.Recorded;
@@ -57,6 +58,46 @@ public interface IBiowsManager extends IBioclipseManager {
                         "(e.g. P06213). ")
     public List<IProtein> queryUniProtKB(String seqid) throws BioclipseException;
 
+    @PublishedMethod(params="List<String> seqids",
+                     methodSummary="Starts downloading DNA sequences in " +
+                        "FASTA format from the EMBL nucleotide sequence " +
+                        "database at EBI, many ids per request. Returns a " +
+                        "batch giving the sequences as they arrive.")
+    public DbfetchBatch<IDNA> queryEMBLBatch(List<String> seqids);
+
+    @PublishedMethod(params="List<String> seqids",
+                     methodSummary="Starts downloading protein sequences " +
+                        "in FASTA format from the Uniprot KnowledgeBase at " +
+                        "EBI, many ids per request. Returns a batch giving " +
+                        "the sequences as they arrive.")
+    public DbfetchBatch<IProtein> queryUniProtKBBatch(List<String> seqids);
+
+    @PublishedMethod(params="List<String> seqids",
+                     methodSummary="Starts downloading DNA sequences in " +
+                        "FASTA format from the refseq database at EBI, " +
+                        "many ids per request. Returns a batch giving the " +
+                        "sequences as they arrive.")
+    public DbfetchBatch<IDNA> queryRefseqBatch(List<String> seqids);
+
+    @PublishedMethod(params="boolean offline",
+                     methodSummary="Sets whether to work offline, using " +
+                        "only entries downloaded before and kept in the " +
+                        "local cache.")
+    public void setOffline(boolean offline);
+
+    @PublishedMethod(methodSummary="Returns whether working offline, " +
+                        "using only entries in the local cache.")
+    public boolean isOffline();
+
+    @PublishedMethod(methodSummary="Removes all downloaded entries from " +
+                        "the local cache.")
+    public void clearCache();
+
+    @PublishedMethod(methodSummary="Returns counters, latencies and " +
+                        "payload sizes of the downloads from EBI, of " +
+                        "parsing them and of the cache hits.")
+    public OperationMetrics getMetrics();
+
 
 
 
@@ -0,0 +1,64 @@
+/* *****************************************************************************
+ * Copyright (c) 2009 The Bioclipse Project and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * <http://www.eclipse.org/legal/epl-v10.html>
+ *
+ * Contact: http://www.bioclipse.net/
+ ******************************************************************************/
+package net.bioclipse.biows.business;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Lets concurrent callers asking for the same key share one call. The first
+ * caller runs the call on its own thread, and callers coming while it runs
+ * wait for its result instead of running the call again. Once the call is
+ * done, the next caller runs it anew.
+ */
+class SingleFlight<V> {
+
+    private final ConcurrentMap<String, FutureTask<V>> calls
+        = new ConcurrentHashMap<String, FutureTask<V>>();
+
+    /**
+     * Runs a call, or waits for the call already running for the key.
+     *
+     * @return the result of the call
+     * @throws Exception the exception thrown by the call
+     */
+    V run(String key, Callable<V> call) throws Exception {
+        FutureTask<V> task = new FutureTask<V>(call);
+        FutureTask<V> running = calls.putIfAbsent(key, task);
+        if (running == null) {
+            running = task;
+            try {
+                task.run();
+            } finally {
+                calls.remove(key, task);
+            }
+        }
+        try {
+            return running.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception)
+                throw (Exception) cause;
+            if (cause instanceof Error)
+                throw (Error) cause;
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    /**
+     * Returns the number of calls running.
+     */
+    int getRunning() {
+        return calls.size();
+    }
+}